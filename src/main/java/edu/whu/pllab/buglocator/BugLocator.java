@@ -15,6 +15,7 @@ import edu.whu.pllab.buglocator.common.BugReportRepository;
 import edu.whu.pllab.buglocator.common.SourceCodeRepository;
 import edu.whu.pllab.buglocator.evaluation.Evaluator;
 import edu.whu.pllab.buglocator.evaluation.ExperimentResult;
+import edu.whu.pllab.buglocator.index.MethodVectorStore;
 import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore;
 import edu.whu.pllab.buglocator.rankingmodel.RankingModelGenerator;
 import edu.whu.pllab.buglocator.rankingmodel.SVMRank;
@@ -58,7 +59,9 @@ public class BugLocator {
 				SourceCodeRepository codeRepo = new SourceCodeRepository(preCommitIDList.get(i));
 				SourceCodeTfidfVectorizer codeVectorizer = new SourceCodeTfidfVectorizer(codeRepo.getSourceCodeMap());
 				codeVectorizer.train();
-				codeVectorizer.calculateTokensWeight(codeRepo.getSourceCodeMap());
+				// keep method vectors off heap
+				MethodVectorStore methodStore = new MethodVectorStore(new File(property.getWorkingDir()));
+				codeVectorizer.calculateTokensWeight(codeRepo.getSourceCodeMap(), methodStore);
 				
 				// train tfidf model using training bug reports
 				BugReportTfidfVectorizer brVectorizer = new BugReportTfidfVectorizer(trainingBugReports);
@@ -70,22 +73,28 @@ public class BugLocator {
 				// initialize rankModelGenerator
 				RankingModelGenerator generator = new RankingModelGenerator();
 				generator.setSourceCodeMap(codeRepo.getSourceCodeMap());
+				generator.setMethodVectorStore(methodStore);
 				// generate training data
 				generator.setTrainingBugReportsMap(trainingBugReports);
 				generator.generate(true);
 				generator.writeRankingFeatures(property.getTrainingFeaturesPath());
 				generator.saveParameters(new File(property.getFeaturesExtremumPath()));
+				// method vectors of the i-th version are no longer needed
+				methodStore.close();
 				
 				// reset source code repository to the i+1-th version, retrain tfidf model
 				codeRepo = new SourceCodeRepository(preCommitIDList.get(i + 1));
 				codeVectorizer = new SourceCodeTfidfVectorizer(codeRepo.getSourceCodeMap());
 				codeVectorizer.train();
-				codeVectorizer.calculateTokensWeight(codeRepo.getSourceCodeMap());
+				methodStore = new MethodVectorStore(new File(property.getWorkingDir()));
+				codeVectorizer.calculateTokensWeight(codeRepo.getSourceCodeMap(), methodStore);
 				// generate test data
 				generator.setSourceCodeMap(codeRepo.getSourceCodeMap());
+				generator.setMethodVectorStore(methodStore);
 				generator.setTestBugReportsMap(testBugReports);
 				generator.generate(false);
 				generator.writeRankingFeatures(property.getTestFeaturesPath());
+				methodStore.close();
 				
 				// svm rank training and predicting
 				SVMRank.train(200);
@@ -0,0 +1,215 @@
+package edu.whu.pllab.buglocator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.whu.pllab.buglocator.common.BugReport;
+import edu.whu.pllab.buglocator.common.BugReportCorpus;
+import edu.whu.pllab.buglocator.common.BugReportRepository;
+import edu.whu.pllab.buglocator.common.SourceCodeRepository;
+import edu.whu.pllab.buglocator.evaluation.TopKCollector;
+import edu.whu.pllab.buglocator.index.InvertedIndex;
+import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
+import edu.whu.pllab.buglocator.vectorizer.BugReportTfidfVectorizer;
+import edu.whu.pllab.buglocator.vectorizer.SourceCodeTfidfVectorizer;
+
+/**
+ * Resident localization server. Source code repository, tfidf model and inverted index are loaded once,
+ * then bug reports are localized against the warm index over local HTTP:
+ * <pre>
+ * POST http://localhost:port/localize?k=10
+ * summary=...&description=...
+ * </pre>
+ * Response is a plain text line "rank\tpath\tscore" for each of the top k files ranked by VSM similarity.
+ * Queries are answered concurrently, the index is read only after loading.
+ */
+public class LocalizationServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(LocalizationServer.class);
+
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_TOP_K = 10;
+
+	private SourceCodeRepository codeRepo;
+	private SourceCodeTfidfVectorizer codeVectorizer;
+	private InvertedIndex index;
+
+	private HttpServer server;
+	private Stage executor;
+
+	/** load source code repository of current property at HEAD version, train tfidf model and build index */
+	public LocalizationServer() {
+		this(new SourceCodeRepository());
+	}
+
+	public LocalizationServer(SourceCodeRepository codeRepo) {
+		this.codeRepo = codeRepo;
+		codeVectorizer = new SourceCodeTfidfVectorizer(codeRepo.getSourceCodeMap());
+		codeVectorizer.train();
+		codeVectorizer.calculateTokensWeight(codeRepo.getSourceCodeMap());
+		logger.info("Building inverted index of " + codeRepo.getSourceCodeMap().size() + " source code files...");
+		index = new InvertedIndex(codeRepo.getSourceCodeMap());
+	}
+
+	/**
+	 * localize given bug report, the bug report corpus is built from summary and description if not set or
+	 * empty
+	 * @return top k files in descending order of VSM similarity
+	 */
+	public List<IntegratedScore> localize(BugReport bugReport, int k) {
+		if (bugReport.getBugReportCorpus() == null || bugReport.getBugReportCorpus().getContent().isEmpty()) {
+			String summaryPart = BugReportRepository.cleanText(bugReport.getSummary());
+			String descriptionPart = BugReportRepository.cleanText(bugReport.getDescription());
+			BugReportCorpus bugReportCorpus = new BugReportCorpus(summaryPart, descriptionPart);
+			bugReportCorpus.setContent(summaryPart + " " + descriptionPart);
+			bugReport.setBugReportCorpus(bugReportCorpus);
+		}
+		BugReportTfidfVectorizer brTfidfVectorizer = new BugReportTfidfVectorizer(codeVectorizer.getTfidf());
+		brTfidfVectorizer.calculateTokensWeight(bugReport);
+
+		// top k by MaxScore pruning, files which can not enter the top k are not fully scored
+		TopKCollector collector = index.topVsm(bugReport, k);
+		List<IntegratedScore> integratedScoreList = new ArrayList<IntegratedScore>();
+		int[] topIds = collector.topIds();
+		double[] topScores = collector.topScores();
+		for (int i = 0; i < topIds.length; i++) {
+			IntegratedScore score = new IntegratedScore(index.getDocument(topIds[i]).getPath(), false, null);
+			score.setIntegratedScore(topScores[i]);
+			score.rank = i;
+			integratedScoreList.add(score);
+		}
+		return integratedScoreList;
+	}
+
+	/** start serving on given port of loopback address */
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/localize", new LocalizeHandler());
+		executor = Scheduler.newStage("Localization request");
+		server.setExecutor(executor);
+		server.start();
+		logger.info("Localization server of " + codeRepo.getSourceCodeMap().size() + " files listening on port "
+				+ server.getAddress().getPort() + "...");
+	}
+
+	/** stop serving, waiting at most given seconds for running queries */
+	public void stop(int delay) {
+		if (server == null)
+			return;
+		server.stop(delay);
+		executor.shutdown();
+		server = null;
+	}
+
+	public SourceCodeRepository getCodeRepo() {
+		return codeRepo;
+	}
+
+	public InvertedIndex getIndex() {
+		return index;
+	}
+
+	/** handler of localize requests, parameters are read from both query string and form body */
+	private class LocalizeHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				HashMap<String, String> params = new HashMap<String, String>();
+				parseParams(exchange.getRequestURI().getRawQuery(), params);
+				parseParams(new String(readFully(exchange.getRequestBody()), StandardCharsets.UTF_8), params);
+				String summary = params.containsKey("summary") ? params.get("summary") : "";
+				String description = params.containsKey("description") ? params.get("description") : "";
+				int k = params.containsKey("k") ? Integer.parseInt(params.get("k")) : Math.min(DEFAULT_TOP_K, index.size());
+				if (k < 0 || k > index.size()) {
+					send(exchange, 400, "Invalid parameter: k should be in [0, " + index.size() + "]\n");
+					return;
+				}
+
+				BugReport bugReport = new BugReport();
+				bugReport.setSummary(summary);
+				bugReport.setDescription(description);
+				StringBuilder builder = new StringBuilder();
+				for (IntegratedScore score : localize(bugReport, k))
+					builder.append(score.rank + "\t" + score.getPath() + "\t" + score.getIntegratedScore() + "\n");
+				send(exchange, 200, builder.toString());
+			} catch (NumberFormatException e) {
+				send(exchange, 400, "Invalid parameter: " + e.getMessage() + "\n");
+			} catch (Exception e) {
+				// respond to a failed query, so the client is not left waiting. Errors are not caught, the server
+				// state may be corrupted by them
+				e.printStackTrace();
+				send(exchange, 500, e.toString() + "\n");
+			}
+		}
+
+		private void send(HttpExchange exchange, int status, String response) throws IOException {
+			byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	/** parse url encoded parameters "name=value&..." into params */
+	private static void parseParams(String encoded, HashMap<String, String> params)
+			throws UnsupportedEncodingException {
+		if (encoded == null || encoded.isEmpty())
+			return;
+		for (String pair : encoded.split("&")) {
+			int index = pair.indexOf('=');
+			if (index <= 0)
+				continue;
+			params.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+					URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int length;
+		while ((length = in.read(buffer)) != -1)
+			out.write(buffer, 0, length);
+		return out.toByteArray();
+	}
+
+	/** usage: LocalizationServer [product] [port] */
+	public static void main(String[] args) throws Exception {
+		String product = args.length > 0 ? args[0] : "ASPECTJ";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+		Property property = Property.loadInstance(product);
+		property.printValues();
+
+		final LocalizationServer localizationServer = new LocalizationServer();
+		localizationServer.start(port);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				localizationServer.stop(1);
+			}
+		});
+	}
+
+}
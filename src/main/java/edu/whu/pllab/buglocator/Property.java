@@ -7,11 +7,14 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Properties;
 
+import edu.whu.pllab.buglocator.common.TermDictionary;
+
 public class Property {
 	
 	
 	protected final static String BR_TFIDF_PATH = "bugReport.tfidf";
 	protected final static String CODE_TFIDF_PATH = "sourceCode.tfidf";
+	protected final static String TERM_DICTIONARY_PATH = "sourceCode.tfidf.terms";
 	protected final static String BR_PARAGRAPH_VECTOR_PATH = "bugReport.v";
 	protected final static String CODE_PARAGRAPH_VECTOR_PATH = "sourceCode.v";
 	protected final static String CODE_CHANGE_HISTORY_PATH = "sourceCode.history";
@@ -20,6 +23,10 @@ public class Property {
 	protected final static String SVM_RANK_MODEL_PATH = "model.dat";
 	protected final static String PREDICTIONS_PATH = "predictions";
 	protected final static String CODE_REPO_XML_PATH = "codeRepository.xml";
+	protected final static String CODE_REPO_BINARY_PATH = "codeRepository.bin";
+	protected final static String PARSE_CACHE_PATH = "parseCache.bin";
+	protected final static String STEM_CACHE_PATH = "stemCache.bin";
+	protected final static String CHANGE_HISTORY_STORE_PATH = "changeHistory.bin";
 	protected final static String FEATURES_EXTREMUM_PATH = "features.params";
 	
 	public final static int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
@@ -27,6 +34,10 @@ public class Property {
 	public final static String SVM_RANK_LEARN_TOOL_PATH = Property.readProperty("SVM_RANK_LEARN_TOOL_PATH");
 	public final static String SVM_RANK_CLASSIFY_TOOL_PATH = Property.readProperty("SVM_RANK_CLASSIFY_TOOL_PATH");
 	public static boolean USE_STRUCTURED_INFORMATION = Boolean.parseBoolean(Property.readProperty("USE_STRUCTURED_INFORMATION"));
+	/** parse source code files by streaming lexer instead of JDT AST when structured information is not used */
+	public static boolean USE_LIGHTWEIGHT_LEXER = Boolean.parseBoolean(Property.readProperty("USE_LIGHTWEIGHT_LEXER"));
+	/** mine change history of source code files from all git commits instead of bug fixing commits */
+	public static boolean MINE_CHANGE_HISTORY_FROM_GIT = Boolean.parseBoolean(Property.readProperty("MINE_CHANGE_HISTORY_FROM_GIT"));
 
 	private static Property p = null;
 	
@@ -37,6 +48,7 @@ public class Property {
 	protected String workingDir;
 	protected String brTfidfModelPath;
 	protected String codeTfidfModelPath;
+	protected String termDictionaryPath;
 	protected String brParagraphVectorPath;
 	protected String codeParagraphVectorPath;
 	protected String codeChangeHistoryPath;
@@ -45,6 +57,10 @@ public class Property {
 	protected String svmRankModelPath;
 	protected String predictionsPath;
 	protected String codeRepositoryXMLPath;
+	protected String codeRepositoryBinaryPath;
+	protected String parseCachePath;
+	protected String stemCachePath;
+	protected String changeHistoryStorePath;
 	protected String featuresExtremumPath;
 	protected String evaluateLogPath;
 	
@@ -97,6 +113,7 @@ public class Property {
 		String workingDir = Property.readProperty(targetProduct + "_" + "WORK_DIR");
 		String brTfidfModelPath = new File(workingDir, BR_TFIDF_PATH).getAbsolutePath();
 		String codeTfidfModelPath = new File(workingDir, CODE_TFIDF_PATH).getAbsolutePath();
+		String termDictionaryPath = new File(workingDir, TERM_DICTIONARY_PATH).getAbsolutePath();
 		String brParagraphVectorPath = new File(workingDir, BR_PARAGRAPH_VECTOR_PATH).getAbsolutePath();
 		String codeParagraphVectorPath = new File(workingDir, CODE_PARAGRAPH_VECTOR_PATH).getAbsolutePath();
 		String codeChangeHistoryPath = new File(workingDir, CODE_CHANGE_HISTORY_PATH).getAbsolutePath();
@@ -105,6 +122,10 @@ public class Property {
 		String svmRankModelPath = new File(workingDir, SVM_RANK_MODEL_PATH).getAbsolutePath();
 		String predictionsPath = new File(workingDir, PREDICTIONS_PATH).getAbsolutePath();
 		String codeRepositoryXMLPath = new File(workingDir, CODE_REPO_XML_PATH).getAbsolutePath();
+		String codeRepositoryBinaryPath = new File(workingDir, CODE_REPO_BINARY_PATH).getAbsolutePath();
+		String parseCachePath = new File(workingDir, PARSE_CACHE_PATH).getAbsolutePath();
+		String stemCachePath = new File(workingDir, STEM_CACHE_PATH).getAbsolutePath();
+		String changeHistoryStorePath = new File(workingDir, CHANGE_HISTORY_STORE_PATH).getAbsolutePath();
 		String featuresExtremumPath = new File(workingDir, FEATURES_EXTREMUM_PATH).getAbsolutePath();
 		// append time string to evaluateLogPath
 		String timeStr = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
@@ -122,9 +143,12 @@ public class Property {
 		}
 		// set properties values
 		p.setValues(product, bugFilePath, sourceCodeDir, wordVectorPath, workingDir, brTfidfModelPath,
-				codeTfidfModelPath, brParagraphVectorPath, codeParagraphVectorPath, codeChangeHistoryPath,
+				codeTfidfModelPath, termDictionaryPath, brParagraphVectorPath, codeParagraphVectorPath, codeChangeHistoryPath,
 				trainingFeaturesPath, testFeaturesPath, svmRankModelPath, predictionsPath, codeRepositoryXMLPath,
-				featuresExtremumPath, evaluateLogPath, splitNum);
+				codeRepositoryBinaryPath, parseCachePath, stemCachePath, changeHistoryStorePath, featuresExtremumPath,
+				evaluateLogPath, splitNum);
+		// start a new term dictionary for target product, term ids of the previous product are not reused
+		TermDictionary.loadInstance(termDictionaryPath);
 		return p;
 	}
 	
@@ -133,9 +157,10 @@ public class Property {
 	 * set values for Property
 	 */
 	public void setValues(String product, String bugFilePath, String sourceCodeDir, String wordVectorPath,
-			String workingDir, String brTfidfModelPath, String codeTfidfModelPath, String brParagraphVectorPath,
+			String workingDir, String brTfidfModelPath, String codeTfidfModelPath, String termDictionaryPath, String brParagraphVectorPath,
 			String codeParagraphVectorPath, String codeChangeHistoryPath, String trainingFeaturesPath,
 			String testFeaturesPath, String svmRankModelPath, String predictionsPath, String codeRepositoryXMLPath, 
+			String codeRepositoryBinaryPath, String parseCachePath, String stemCachePath, String changeHistoryStorePath,
 			String featuresExtremumPath, String evaluateLogPath, int splitNum) {
 		setProduct(product);
 		setBugFilePath(bugFilePath);
@@ -144,6 +169,7 @@ public class Property {
 		setWorkingDir(workingDir);
 		setBrTfidfModelPath(brTfidfModelPath);
 		setCodeTfidfModelPath(codeTfidfModelPath);
+		setTermDictionaryPath(termDictionaryPath);
 		setBrParagraphVectorPath(brParagraphVectorPath);
 		setCodeParagraphVectorPath(codeParagraphVectorPath);
 		setCodeChangeHistoryPath(codeChangeHistoryPath);
@@ -152,6 +178,10 @@ public class Property {
 		setSVMRankModelPath(svmRankModelPath);
 		setPredictionsPath(predictionsPath);
 		setCodeRepositoryXMLPath(codeRepositoryXMLPath);
+		setCodeRepositoryBinaryPath(codeRepositoryBinaryPath);
+		setParseCachePath(parseCachePath);
+		setStemCachePath(stemCachePath);
+		setChangeHistoryStorePath(changeHistoryStorePath);
 		setFeaturesExtremumPath(featuresExtremumPath);
 		setEvaluateLogPath(evaluateLogPath);
 		setSplitNum(splitNum);
@@ -170,6 +200,8 @@ public class Property {
 	public void printValues() {
 		System.out.printf("Properties:\n");
 		System.out.printf("USE_STRUCTURED_INFORMATION: %s\n", Property.USE_STRUCTURED_INFORMATION);
+		System.out.printf("USE_LIGHTWEIGHT_LEXER: %s\n", Property.USE_LIGHTWEIGHT_LEXER);
+		System.out.printf("MINE_CHANGE_HISTORY_FROM_GIT: %s\n", Property.MINE_CHANGE_HISTORY_FROM_GIT);
 		System.out.printf("THREAD_COUNT: %d\n", Property.THREAD_COUNT);
 		System.out.printf("StopwordsPath: %s\n", Property.STOPWORDS_PATH);
 		System.out.printf("SVMRankToolPath: %s\n", Property.SVM_RANK_LEARN_TOOL_PATH);
@@ -181,6 +213,7 @@ public class Property {
 		System.out.printf("WorkingDir: %s\n", getWorkingDir());
 		System.out.printf("BrTfidfModelPath: %s\n", getBrTfidfModelPath());
 		System.out.printf("CodeTfidfModelPath: %s\n", getCodeTfidfModelPath());
+		System.out.printf("TermDictionaryPath: %s\n", getTermDictionaryPath());
 		System.out.printf("BrParagraphVectorPath: %s\n", getBrParagraphVectorPath());
 		System.out.printf("CodeParagraphVectorPath: %s\n", getCodeParagraphVectorPath());
 		System.out.printf("TrainingFeaturesPath: %s\n", getTrainingFeaturesPath());
@@ -246,6 +279,14 @@ public class Property {
 	public void setCodeTfidfModelPath(String codeTfidfModelPath) {
 		this.codeTfidfModelPath = codeTfidfModelPath;
 	}
+
+	public String getTermDictionaryPath() {
+		return termDictionaryPath;
+	}
+
+	public void setTermDictionaryPath(String termDictionaryPath) {
+		this.termDictionaryPath = termDictionaryPath;
+	}
 	
 	public String getBrParagraphVectorPath() {
 		return brParagraphVectorPath;
@@ -310,6 +351,38 @@ public class Property {
 		this.codeRepositoryXMLPath = codeRepositoryXMLPath;
 	}
 
+	public String getCodeRepositoryBinaryPath() {
+		return codeRepositoryBinaryPath;
+	}
+
+	public void setCodeRepositoryBinaryPath(String codeRepositoryBinaryPath) {
+		this.codeRepositoryBinaryPath = codeRepositoryBinaryPath;
+	}
+
+	public String getParseCachePath() {
+		return parseCachePath;
+	}
+
+	public void setParseCachePath(String parseCachePath) {
+		this.parseCachePath = parseCachePath;
+	}
+
+	public String getStemCachePath() {
+		return stemCachePath;
+	}
+
+	public void setStemCachePath(String stemCachePath) {
+		this.stemCachePath = stemCachePath;
+	}
+
+	public String getChangeHistoryStorePath() {
+		return changeHistoryStorePath;
+	}
+
+	public void setChangeHistoryStorePath(String changeHistoryStorePath) {
+		this.changeHistoryStorePath = changeHistoryStorePath;
+	}
+
 	public String getFeaturesExtremumPath() {
 		return featuresExtremumPath;
 	}
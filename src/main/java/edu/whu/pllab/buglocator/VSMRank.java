@@ -6,19 +6,15 @@ import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
-
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.ResetCommand.ResetType;
-import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 
 import edu.whu.pllab.buglocator.common.BugReport;
 import edu.whu.pllab.buglocator.common.BugReportRepository;
 import edu.whu.pllab.buglocator.common.SourceCode;
 import edu.whu.pllab.buglocator.common.SourceCodeRepository;
 import edu.whu.pllab.buglocator.evaluation.Evaluator;
+import edu.whu.pllab.buglocator.index.LazyTfidfScorer;
 import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore;
+import edu.whu.pllab.buglocator.similarity.ShardedScorer;
 import edu.whu.pllab.buglocator.similarity.Similarity;
 import edu.whu.pllab.buglocator.vectorizer.BugReportTfidfVectorizer;
 import edu.whu.pllab.buglocator.vectorizer.SourceCodeTfidfVectorizer;
@@ -49,22 +45,14 @@ public class VSMRank {
 			
 			String earliestCommitID = bugReportsList.get(0).getCommitID();
 			
-			// reset source code repository to the earliestCommitID~ version, and train tfidf model
-			// reset to given commitID version
-			try {
-				// initialize git repository
-				Repository repo = FileRepositoryBuilder.create(new File(property.getSourceCodeDir(), ".git"));
-				Git git = new Git(repo);
-				git.reset().setMode(ResetType.HARD).setRef(earliestCommitID + "~").call();
-				git.close();
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			SourceCodeRepository codeRepo = new SourceCodeRepository(); 
-//			SourceCodeRepository codeRepo = new SourceCodeRepository(earliestCommitID + "~");
+			// load source code repository of the earliestCommitID~ version from git object database, and train
+			// tfidf model
+			SourceCodeRepository codeRepo = new SourceCodeRepository(earliestCommitID + "~");
 			SourceCodeTfidfVectorizer codeTfidfVectorizer = new SourceCodeTfidfVectorizer(codeRepo.getSourceCodeMap());
 			codeTfidfVectorizer.train();
-			codeTfidfVectorizer.calculateTokensWeight(codeRepo.getSourceCodeMap());
+			// keep tf vectors only, idf values are applied at query time
+			codeTfidfVectorizer.calculateTfVectors(codeRepo.getSourceCodeMap());
+			LazyTfidfScorer scorer = new LazyTfidfScorer(codeTfidfVectorizer);
 			
 			// all results using to evaluate
 			HashMap<BugReport, List<IntegratedScore>> integratedScoresMap = new HashMap<BugReport, List<IntegratedScore>>();
@@ -78,15 +66,16 @@ public class VSMRank {
 					codeRepo.checkout(commitID + "~");
 					// update tfidf model
 					codeTfidfVectorizer.update(codeRepo.getAddedFiles(), codeRepo.getModifiedFiles(), codeRepo.getDeletedFiles());
-					// re-calculate code tokens weight 
-					codeTfidfVectorizer.calculateTokensWeight(codeRepo.getSourceCodeMap());
+					// re-calculate tf vectors of changed files only
+					codeTfidfVectorizer.updateTfVectors(codeRepo.getAddedFiles(), codeRepo.getModifiedFiles(),
+							codeRepo.getDeletedFiles());
 				}
 				
 				// calculate bug report tokens weight
 				BugReportTfidfVectorizer brTfidfVectorizer = new BugReportTfidfVectorizer(codeTfidfVectorizer.getTfidf());
 				brTfidfVectorizer.calculateTokensWeight(bugReport);
 				
-				List<IntegratedScore> integratedScores = calculateVSMSimilarity(bugReport, codeRepo.getSourceCodeMap());
+				List<IntegratedScore> integratedScores = calculateVSMSimilarity(bugReport, codeRepo.getSourceCodeMap(), scorer);
 				
 				boolean isValid = false;
 				for (int j = 0; j < integratedScores.size(); j++) {
@@ -119,19 +108,49 @@ public class VSMRank {
 		}
 	}
 	
-	public static List<IntegratedScore> calculateVSMSimilarity(BugReport bugReport,
+	/** calculate VSM similarity of all files, scored in parallel shards of files */
+	public static List<IntegratedScore> calculateVSMSimilarity(final BugReport bugReport,
 			HashMap<String, SourceCode> sourceCodeMap) {
+		final Similarity sim = new Similarity();
+		return rank(sourceCodeMap, new ShardedScorer.FileScorer() {
+			@Override
+			public double score(SourceCode code) {
+				double similarity = sim.similarity(bugReport, code, Similarity.VSM);
+//				for (Method method : code.getMethodList()) {
+//					double methodSimilarity = Similarity.similarity(bugReport, method, Similarity.VSM);
+//					if (methodSimilarity > similarity)
+//						similarity = methodSimilarity;
+//				}
+				return similarity;
+			}
+		});
+	}
+	
+	/** calculate VSM similarity with idf values applied at query time */
+	public static List<IntegratedScore> calculateVSMSimilarity(BugReport bugReport,
+			HashMap<String, SourceCode> sourceCodeMap, LazyTfidfScorer scorer) {
+		return rank(sourceCodeMap, lazyVSMScorer(bugReport, scorer));
+	}
+	
+	private static ShardedScorer.FileScorer lazyVSMScorer(final BugReport bugReport, final LazyTfidfScorer scorer) {
+		return new ShardedScorer.FileScorer() {
+			@Override
+			public double score(SourceCode code) {
+				return scorer.vsmSimilarity(bugReport, code);
+			}
+		};
+	}
+	
+	/** score all files in parallel and sort them by score, ties in iteration order of sourceCodeMap */
+	private static List<IntegratedScore> rank(HashMap<String, SourceCode> sourceCodeMap,
+			ShardedScorer.FileScorer fileScorer) {
+		List<String> paths = new ArrayList<String>(sourceCodeMap.keySet());
+		List<SourceCode> sourceCodes = new ArrayList<SourceCode>(sourceCodeMap.values());
+		double[] scores = ShardedScorer.scores(sourceCodes, fileScorer);
 		List<IntegratedScore> integratedScoreList = new ArrayList<IntegratedScore>();
-		Similarity sim = new Similarity();
-		for (Entry<String, SourceCode> entry : sourceCodeMap.entrySet()) {
-			double similarity = sim.similarity(bugReport, entry.getValue(), Similarity.VSM);
-//			for (Method method : entry.getValue().getMethodList()) {
-//				double methodSimilarity = Similarity.similarity(bugReport, method, Similarity.VSM);
-//				if (methodSimilarity > similarity)
-//					similarity = methodSimilarity;
-//			}
-			IntegratedScore score = new IntegratedScore(entry.getKey(), false, null);
-			score.setIntegratedScore(similarity);
+		for (int i = 0; i < scores.length; i++) {
+			IntegratedScore score = new IntegratedScore(paths.get(i), false, null);
+			score.setIntegratedScore(scores[i]);
 			integratedScoreList.add(score);
 		}
 		integratedScoreList.sort(new IntegratedScore.IntegratedScoreComparator());
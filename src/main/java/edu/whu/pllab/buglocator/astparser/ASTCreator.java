@@ -3,6 +3,9 @@ package edu.whu.pllab.buglocator.astparser;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
@@ -18,17 +21,34 @@ public class ASTCreator {
 		content = getFileContent(file);
 	}
 	
+	/**
+	 * @param bytes java file content, e.g. blob read from git object database
+	 */
+	public ASTCreator(byte[] bytes) {
+		content = readContent(new StringReader(new String(bytes, Charset.defaultCharset())));
+	}
+	
 	/**
 	 * get file content for given java file
 	 * @param input file
 	 * @return file content
 	 */
 	public String getFileContent(File file) {
+		try {
+			return readContent(new FileReader(file));
+		} catch (Exception ex) {
+			ex.printStackTrace();
+		}
+		return "";
+	}
+	
+	/** read content with line separators replaced by "\r\n" */
+	private String readContent(Reader input) {
 		String content = "";
 		try {
 			StringBuffer contentBuffer = new StringBuffer();
 			String line = null;
-			BufferedReader reader = new BufferedReader(new FileReader(file));
+			BufferedReader reader = new BufferedReader(input);
 			while ((line = reader.readLine()) != null)
 				contentBuffer.append((new StringBuilder(String.valueOf(line)))
 						.append("\r\n").toString());
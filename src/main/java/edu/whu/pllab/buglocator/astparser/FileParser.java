@@ -2,7 +2,6 @@ package edu.whu.pllab.buglocator.astparser;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.eclipse.jdt.core.dom.ASTVisitor;
@@ -22,21 +21,32 @@ import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
 import edu.whu.pllab.buglocator.common.Method;
-import edu.whu.pllab.buglocator.utils.Splitter;
+import edu.whu.pllab.buglocator.utils.Analyzer;
 import edu.whu.pllab.buglocator.utils.Stemmer;
-import edu.whu.pllab.buglocator.utils.Stopword;
 
+/**
+ * Parser extracting class names, method names, variable names, identifiers, comments, imported classes and
+ * methods of a java file. All of them are collected by a single visit of the compilation unit, which also
+ * deletes package, import and package member annotation type declarations from the content.
+ */
 public class FileParser {
 
 	private CompilationUnit compilationUnit;
 	private String sourceString;
 	
+	private String packageName;
+	
 	private String allClassNames;
 	private String allMethodNames;
 	private String allVariableNames;
 	private String allComments;
 	private String allIdentifierNames;
 	private ArrayList<Method> allMethodList;
+	private ArrayList<String> importedClasses;
+	
+	/** split and stemmed content, and split and stemmed structured contents indexed by part type */
+	private String splitContent;
+	private String[] splitStructuredContents;
 	
 	public static final int CLASS_PART = 1;
 	public static final int METHOD_PART = 2;
@@ -45,20 +55,26 @@ public class FileParser {
 	public static final int IDENTIFIER_PART = 5;
 	
 	public FileParser(File file) {
-		allClassNames = null;
-		allMethodNames = null;
-		allVariableNames = null;
-		allComments = null;
-		allIdentifierNames = null;
-		allMethodList = null;
-		
-		ASTCreator creator = new ASTCreator(file);
+		this(new ASTCreator(file));
+	}
+	
+	/**
+	 * @param bytes java file content, e.g. blob read from git object database
+	 */
+	public FileParser(byte[] bytes) {
+		this(new ASTCreator(bytes));
+	}
+	
+	private FileParser(ASTCreator creator) {
 		compilationUnit = creator.getCompilationUnit();
 		sourceString = creator.getContent();
+		packageName = compilationUnit.getPackage() != null ?
+				compilationUnit.getPackage().getName().getFullyQualifiedName() : "";
+		splitStructuredContents = new String[IDENTIFIER_PART + 1];
 	}
 
 	public int getLinesOfCode() {
-		deleteNoNeededNode();
+		extract();
 		String lines[] = compilationUnit.toString().split("\n");
 		int len = 0;
 		String as[];
@@ -94,193 +110,171 @@ public class FileParser {
 	}
 	
 	public String getStructuredContent(int type) {
-		return splitContent(getStructuredContentWithFullyIdentifier(type));
+		if (type < 0 || type >= splitStructuredContents.length)
+			return splitContent("");
+		if (splitStructuredContents[type] == null)
+			splitStructuredContents[type] = splitContent(getStructuredContentWithFullyIdentifier(type));
+		return splitStructuredContents[type];
 	}
 	
 	/**
 	 * split and stem source code file content, remove stopwords
 	 */
-	public static String splitContent(String content) {
-		String tokensInContent[] = Splitter.splitSourceCode(content);
-		StringBuffer sourceCodeContentBuffer = new StringBuffer();
-		for (int i = 0; i < tokensInContent.length; i++) {
-			String token = Stemmer.stem(tokensInContent[i].toLowerCase());
-			if (Stopword.isEnglishStopword(token) || Stopword.isJavaKeyword(token) || Stopword.isProjectKeyword(token))
-				continue;
-			sourceCodeContentBuffer.append((new StringBuilder(String.valueOf(token))).append(" ").toString());
-		}
-		return sourceCodeContentBuffer.toString().trim();
+	public static String splitContent(CharSequence content) {
+		return Analyzer.getInstance(Analyzer.SOURCE_CODE).analyze(content);
 	}
 	
 	/**
-	 * get source code file content
+	 * get source code file content, without package, import and package member annotation type declarations
 	 */
 	public String getContent() {
-		return splitContent(deleteNoNeededNode());
+		if (splitContent == null) {
+			extract();
+			splitContent = splitContent(compilationUnit.toString());
+		}
+		return splitContent;
 	}
 	
 	/**
 	 * get package name
 	 */
 	public String getPackageName() {
-		return compilationUnit.getPackage() != null ?
-				compilationUnit.getPackage().getName().getFullyQualifiedName() : "";
+		return packageName;
 	}
 	
 	/**
 	 * get imported classes list 
 	 */
-    public ArrayList<String> getImportedClasses() {
-    	final ArrayList<String> importedClasses = new ArrayList<String>();
-    	
-    	compilationUnit.accept(new ASTVisitor() {
-            public boolean visit(ImportDeclaration node)
-            {
-            	importedClasses.add(node.getName().toString());
-                return super.visit(node);
-            }
-    	});
-    	
-    	return importedClasses;
-    }
-    
-    /** get allClassNames + " " + allMethodNames */
-    public String getClassNameAndMethodName() {
+	public ArrayList<String> getImportedClasses() {
+		extract();
+		return importedClasses;
+	}
+	
+	/** get allClassNames + " " + allMethodNames */
+	public String getClassNameAndMethodName() {
 		String content = (this.getAllClassNames() + " " + this
 				.getAllMethodNames()).toLowerCase();
 		return content;
 	}
 	
-    /**
-     * get all class names
-     */
+	/**
+	 * get all class names
+	 */
 	public String getAllClassNames() {
-		if (allClassNames != null) {
-			return allClassNames;
-		} else {
-			allClassNames = "";
-		   	compilationUnit.accept(new ASTVisitor() {
-	    		public boolean visit(TypeDeclaration type) {
-	    			allClassNames += type.getName() + " ";
-	    		    return super.visit(type);
-	    		}
-	    	});
-			allClassNames = allClassNames.trim();
-			return allClassNames;
-		}
+		extract();
+		return allClassNames;
 	}
 	
 	/**
-	 * get all method names, and save method to method list
+	 * get all method names
 	 */
 	public String getAllMethodNames() {
-		if (allMethodNames != null) {
-			return allMethodNames;
-		} else {
-			allMethodList = new ArrayList<Method>();
-	    	compilationUnit.accept(new ASTVisitor() {
-	    		public boolean visit(MethodDeclaration methodDecl) {
-					String methodName = methodDecl.getName().getFullyQualifiedName();
-					Type returnType = methodDecl.getReturnType2();
-					String returnTypeString = (returnType == null) ? "" : returnType.toString();
-					// get parameters
-					String parameters = "";
-					for (int l = 0; l < methodDecl.parameters().size(); l++) {
-						parameters += ((SingleVariableDeclaration) methodDecl.parameters().get(l)).getType().toString();
-						parameters += " ";
-					}
-					parameters = parameters.trim();
-					Method method = new Method(methodName, returnTypeString, parameters);
-					// split method content
-					method.setContent(splitContent(methodDecl.toString()) + " " + Stemmer.stem(methodName));
-					allMethodList.add(method);
-					return super.visit(methodDecl);
-	    		}
-	    	});
-			allMethodNames = "";
-			for (Iterator<Method> iterator = allMethodList.iterator(); iterator.hasNext();) {
-				String methodName = (String) iterator.next().getName();
-				allMethodNames = (new StringBuilder(String.valueOf(allMethodNames)))
-						.append(methodName).append(" ").toString();
-			}
-			allMethodNames = allMethodNames.trim();
-			return allMethodNames;
-		}
+		extract();
+		return allMethodNames;
 	}
 	
 	/**
 	 * get all method list
 	 */
 	public ArrayList<Method> getAllMethodList() {
-		if (allMethodList != null) {
-			return allMethodList;
-		} else {
-			getAllMethodNames();
-			return allMethodList;
-		}
+		extract();
+		return allMethodList;
 	}
 	
 	/**
-	 * get all variable names
+	 * get all variable names, names of single variable declarations followed by names of variable
+	 * declaration fragments
 	 */
 	public String getAllVariableNames() {
-		if (allVariableNames != null) {
-			return allVariableNames;
-		} else {
-	    	final ArrayList<String> structuredInfoList = new ArrayList<String>();
-	    	
-	    	compilationUnit.accept(new ASTVisitor() {
-	            public boolean visit(SingleVariableDeclaration node)
-	            {
-	            	structuredInfoList.add(node.getName().getIdentifier());
-	                return super.visit(node);
-	            }
-	    	});
-	    	
-	    	compilationUnit.accept(new ASTVisitor() {
-	            public boolean visit(VariableDeclarationFragment node)
-	            {
-	            	structuredInfoList.add(node.getName().getIdentifier());
-	                return super.visit(node);
-	            }
-	    	});
-	    	
-	    	allVariableNames = "";
-			for (Iterator<String> iterator = structuredInfoList.iterator(); iterator.hasNext();) {
-				String structuredInfoName = (String) iterator.next();
-				allVariableNames = (new StringBuilder(String.valueOf(allVariableNames)))
-						.append(structuredInfoName).append(" ").toString();
-			}
-		
-			allVariableNames = allVariableNames.trim(); 
-			return allVariableNames;	
-		}
+		extract();
+		return allVariableNames;
 	}
 	
 	public String getAllIdentifierNames() {
-		if (allIdentifierNames != null) {
-			return allIdentifierNames;
-		} else {
-			final ArrayList<String> identifierNameList = new ArrayList<String>();
+		extract();
+		return allIdentifierNames;
+	}
+	
+	/**
+	 * visit compilation unit once, collect names, methods and imported classes, and delete package, import
+	 * and package member annotation type declarations
+	 */
+	private void extract() {
+		if (allMethodList != null)
+			return;
+		final StringBuilder classNames = new StringBuilder();
+		final ArrayList<Method> methodList = new ArrayList<Method>();
+		final StringBuilder singleVariableNames = new StringBuilder();
+		final StringBuilder fragmentNames = new StringBuilder();
+		final StringBuilder identifierNames = new StringBuilder();
+		final ArrayList<String> imports = new ArrayList<String>();
+		
+		compilationUnit.accept(new ASTVisitor() {
+			public boolean visit(TypeDeclaration type) {
+				classNames.append(type.getName()).append(" ");
+				return super.visit(type);
+			}
+			
+			public boolean visit(MethodDeclaration methodDecl) {
+				String methodName = methodDecl.getName().getFullyQualifiedName();
+				Type returnType = methodDecl.getReturnType2();
+				String returnTypeString = (returnType == null) ? "" : returnType.toString();
+				// get parameters
+				StringBuilder parameters = new StringBuilder();
+				for (int l = 0; l < methodDecl.parameters().size(); l++) {
+					parameters.append(((SingleVariableDeclaration) methodDecl.parameters().get(l)).getType().toString());
+					parameters.append(" ");
+				}
+				Method method = new Method(methodName, returnTypeString, parameters.toString().trim());
+				// split method content
+				method.setContent(splitContent(methodDecl.toString()) + " " + Stemmer.stem(methodName));
+				methodList.add(method);
+				return super.visit(methodDecl);
+			}
+			
+			public boolean visit(SingleVariableDeclaration node) {
+				singleVariableNames.append(node.getName().getIdentifier()).append(" ");
+				return super.visit(node);
+			}
+			
+			public boolean visit(VariableDeclarationFragment node) {
+				fragmentNames.append(node.getName().getIdentifier()).append(" ");
+				return super.visit(node);
+			}
+			
+			public boolean visit(SimpleName node) {
+				identifierNames.append(node.getFullyQualifiedName()).append(" ");
+				return super.visit(node);
+			}
+			
+			// children of deleted declarations are still visited
+			public boolean visit(ImportDeclaration node) {
+				imports.add(node.getName().toString());
+				node.delete();
+				return super.visit(node);
+			}
 			
-	    	compilationUnit.accept(new ASTVisitor() {
-	            public boolean visit(SimpleName node)
-	            {
-	            	identifierNameList.add(node.getFullyQualifiedName());
-	                return super.visit(node);
-	            }
-	    	});
-	    	
-	    	allIdentifierNames = "";
-	    	for (Iterator<String> iterator = identifierNameList.iterator(); iterator.hasNext();) {
-				String identifierName = (String) iterator.next();
-				allIdentifierNames = (new StringBuilder(String.valueOf(allIdentifierNames)))
-						.append(identifierName).append(" ").toString();
+			public boolean visit(PackageDeclaration node) {
+				node.delete();
+				return super.visit(node);
 			}
+			
+			public boolean visit(AnnotationTypeDeclaration node) {
+				if (node.isPackageMemberTypeDeclaration())
+					node.delete();
+				return super.visit(node);
+			}
+		});
 		
-	    	allIdentifierNames = allIdentifierNames.trim(); 
-			return allIdentifierNames;	
-		}
+		allClassNames = classNames.toString().trim();
+		StringBuilder methodNames = new StringBuilder();
+		for (Method method : methodList)
+			methodNames.append(method.getName()).append(" ");
+		allMethodNames = methodNames.toString().trim();
+		allVariableNames = singleVariableNames.append(fragmentNames).toString().trim();
+		allIdentifierNames = identifierNames.toString().trim();
+		importedClasses = imports;
+		allMethodList = methodList;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -288,109 +282,84 @@ public class FileParser {
 		if (allComments != null) {
 			return allComments;
 		} else {
-			final ArrayList<String> structuredInfoList = new ArrayList<String>();
+			final StringBuilder structuredInfo = new StringBuilder();
+			ASTVisitor commentVisitor = new ASTVisitor() {
+				public boolean visit(Javadoc node) {
+					String javadocComment = node.toString();
+					
+					if (!javadocComment.toLowerCase().contains("copyright")) {
+						javadocComment = javadocComment.split("[/][*][*]")[1];
+						javadocComment = javadocComment.split("[*][/]")[0];
+						String[]  commentLines = javadocComment.split("\n");
+						
+						for (String line : commentLines) {
+							if (line.contains("@author") || line.contains("@version") || line.contains("@since") ) {
+								continue;
+							}
+							
+							line = replaceHtmlSpecicalCharacters(line);
+							// Split line with space and html tag
+							String[] words = line.split("([*\\s]|(?i)\\<[^\\>]*\\>)");
+							for (String word : words) {
+								if (word.length() > 0) {
+									if ( (word.equalsIgnoreCase("@param")) || (word.equalsIgnoreCase("@return")) || (word.equalsIgnoreCase("@exception")) ||
+											(word.equalsIgnoreCase("@see")) || (word.equalsIgnoreCase("@serial")) || (word.equalsIgnoreCase("@deprecated")) )  {
+										continue;
+									}
+									structuredInfo.append(word).append(" ");
+								}
+							}
+						}
+					}
+					return super.visit(node);
+				}
+				
+				public boolean visit(LineComment node) {
+					int beginIndex = node.getStartPosition();
+					int endIndex = beginIndex + node.getLength(); 
+					String lineComment = sourceString.substring(beginIndex + 2, endIndex).trim();
+					
+					if (!lineComment.toLowerCase().contains("copyright")) {
+						String[] words = lineComment.split("[\\s]");
+						for (String word : words) {
+							if (word.length() > 0) {
+								structuredInfo.append(word).append(" ");
+							}
+						}
+					}
+					return super.visit(node);
+				}
+				
+				public boolean visit(BlockComment node) {
+					int beginIndex = node.getStartPosition();
+					int endIndex = beginIndex + node.getLength(); 
+					String blockComment = sourceString.substring(beginIndex, endIndex);
+					
+					if (!blockComment.toLowerCase().contains("copyright")) {
+						String[] splitComment = blockComment.split("[/][*]");
+						if (splitComment.length == 2) { 
+							blockComment = splitComment[1];
+							
+							splitComment = blockComment.split("[*][/]");
+							if (splitComment.length == 1) {
+								blockComment = splitComment[0];
+								String[] words = blockComment.split("[*\\s]");
+								for (String word : words) {
+									if (word.length() > 0) {
+										structuredInfo.append(word).append(" ");
+									}
+								}
+							}
+						}
+					}
+					return super.visit(node);
+				}
+			};
+			// each comment is visited by one visitor handling all three comment types
+			for (Comment comment : (List<Comment>) compilationUnit.getCommentList())
+				comment.accept(commentVisitor);
 			
-		   	for (Comment comment : (List<Comment>) compilationUnit.getCommentList()) {
-	    		comment.accept(new ASTVisitor() {
-	                public boolean visit(Javadoc node)
-	                {
-//	                	System.out.printf("ClassNames: %s, comment text: %s\n", getAllClassNames(), node.toString());
-	                	String javadocComment = node.toString();
-	                	
-	                	if (!javadocComment.toLowerCase().contains("copyright")) {
-	                    	javadocComment = javadocComment.split("[/][*][*]")[1];
-	                    	javadocComment = javadocComment.split("[*][/]")[0];
-	                    	String[]  commentLines = javadocComment.split("\n");
-	                    	
-	                    	for (String line : commentLines) {
-	                    		if (line.contains("@author") || line.contains("@version") || line.contains("@since") ) {
-	                    			continue;
-	                    		}
-	                    		
-	                    		line = replaceHtmlSpecicalCharacters(line);
-	                    		// Split line with space and html tag
-	                        	String[] words = line.split("([*\\s]|(?i)\\<[^\\>]*\\>)");
-	                        	for (String word : words) {
-	                        		if (word.length() > 0) {
-	                        			if ( (word.equalsIgnoreCase("@param")) || (word.equalsIgnoreCase("@return")) || (word.equalsIgnoreCase("@exception")) ||
-	                        					(word.equalsIgnoreCase("@see")) || (word.equalsIgnoreCase("@serial")) || (word.equalsIgnoreCase("@deprecated")) )  {
-	                        				continue;
-	                        			}
-
-	                        			structuredInfoList.add(word);                		
-//	        	                		System.out.printf("ClassNames: %s, javadocComment text: %s\n", getAllClassNames(), word);
-	                        		}
-	                        	}
-	                    	}
-	                	}
-	                    return super.visit(node);
-	                }
-	        	});
-	        	
-	    		comment.accept(new ASTVisitor() {
-	                public boolean visit(LineComment node)
-	                {
-	                	int beginIndex = node.getStartPosition();
-	                	int endIndex = beginIndex + node.getLength(); 
-	                	String lineComment = sourceString.substring(beginIndex + 2, endIndex).trim();
-
-	                	if (!lineComment.toLowerCase().contains("copyright")) {
-		                	String[] words = lineComment.split("[\\s]");
-		                	for (String word : words) {
-		                		if (word.length() > 0) {
-		//	                		System.out.printf("ClassNames: %s, BlockComment text: %s\n", getAllClassNames(), word);
-		                			structuredInfoList.add(word);                		
-		                		}
-		                	}
-	                	}
-	                    return super.visit(node);
-	                }
-	        	});
-	        	
-	    		comment.accept(new ASTVisitor() {
-	                public boolean visit(BlockComment node)
-	                {
-	                	int beginIndex = node.getStartPosition();
-	                	int endIndex = beginIndex + node.getLength(); 
-	                	String blockComment = sourceString.substring(beginIndex, endIndex);
-	                	
-//	                	if (blockComment.contains("/**/")) {
-//	                		System.out.printf("original BlockComment text: %s\n", blockComment);
-//	                	}
-	                	
-	                   	if (!blockComment.toLowerCase().contains("copyright")) {
-		                	String[] splitComment = blockComment.split("[/][*]");
-		                	if (splitComment.length == 2) { 
-		                		blockComment = splitComment[1];
-		                		
-		                		splitComment = blockComment.split("[*][/]");
-		                		if (splitComment.length == 1) {
-		                			blockComment = splitComment[0];
-		
-		//                        	System.out.printf("ClassNames: %s, original BlockComment text: %s\n", getAllClassNames(), blockComment);
-		                        	String[] words = blockComment.split("[*\\s]");
-		                        	for (String word : words) {
-		                        		if (word.length() > 0) {
-		//        	                		System.out.printf("ClassNames: %s, BlockComment text: %s\n", getAllClassNames(), word);
-		                        			structuredInfoList.add(word);                		
-		                        		}
-		                        	}
-		                		}
-		                	}
-	                   	}
-	                    return super.visit(node);
-	                }
-	        	});
-			}
-	    
-			allComments = "";
-			for (Iterator<String> iterator = structuredInfoList.iterator(); iterator.hasNext();) {
-				String structuredInfoName = (String) iterator.next();
-				allComments = (new StringBuilder(String.valueOf(allComments)))
-						.append(structuredInfoName).append(" ").toString();
-			}
-		
-			allComments = allComments.trim();
+			allComments = structuredInfo.toString().trim();
 			return allComments;
 		}
 	}
@@ -404,36 +373,5 @@ public class FileParser {
 		
 		return line;
 	}
-
-
-	/**
-	 * delete PackageMemberType, Package and Import declaration
-	 * @return
-	 */
-	private String deleteNoNeededNode() {
-		compilationUnit.accept(new ASTVisitor() {
-			public boolean visit(AnnotationTypeDeclaration node) {
-				if (node.isPackageMemberTypeDeclaration())
-					node.delete();
-				return super.visit(node);
-			}
-		});
-		
-		compilationUnit.accept(new ASTVisitor() {
-			public boolean visit(PackageDeclaration node) {
-				node.delete();
-				return super.visit(node);
-			}
-		});
-		
-		compilationUnit.accept(new ASTVisitor() {
-			public boolean visit(ImportDeclaration node) {
-				node.delete();
-				return super.visit(node);
-			}
-		});
-		
-		return compilationUnit.toString();
-	}
 	
 }
@@ -0,0 +1,682 @@
+package edu.whu.pllab.buglocator.astparser;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.whu.pllab.buglocator.common.Method;
+import edu.whu.pllab.buglocator.utils.Stemmer;
+
+/**
+ * Streaming parser of java files for unstructured corpora. Tokens are read directly from the characters of
+ * the file and declarations are recognized by a shallow scan, without building a JDT AST, so only content,
+ * package name, imported classes, class names and methods are extracted, the same as the FileParser getters
+ * used when structured information is not used. Comments are dropped except javadoc of declarations, and
+ * package, import and package member annotation type declarations are excluded from content.
+ * parse() returns null if the file is not recognized, then FileParser should be used instead.
+ */
+public class LightweightFileParser {
+
+	private static final int IDENTIFIER = 1;
+	private static final int NUMBER = 2;
+	private static final int LITERAL = 3;
+	private static final int OPERATOR = 4;
+
+	private static final int CLASS_BODY = 1;
+	private static final int ENUM_BODY = 2;
+	private static final int ANNOTATION_BODY = 3;
+
+	private static final Set<String> MODIFIERS = new HashSet<String>(Arrays.asList("public", "protected",
+			"private", "static", "abstract", "final", "native", "synchronized", "transient", "volatile",
+			"strictfp", "default"));
+
+	private final String source;
+
+	/** kind, start and end offset of each token */
+	private int[] kinds;
+	private int[] starts;
+	private int[] ends;
+	private int tokenCount;
+
+	/** offsets of the javadoc comment right before each token, -1 if none */
+	private int[] docStarts;
+	private int[] docEnds;
+
+	/** whether javadoc of the token belongs to a declaration starting at the token */
+	private boolean[] docAttached;
+
+	/** whether the token belongs to a package, import or package member annotation type declaration */
+	private boolean[] excluded;
+
+	private String packageName;
+	private ArrayList<String> importedClasses;
+	private StringBuilder classNames;
+	private ArrayList<Method> methodList;
+
+	private String splitContent;
+
+	private LightweightFileParser(String source) {
+		this.source = source;
+		packageName = "";
+		importedClasses = new ArrayList<String>();
+		classNames = new StringBuilder();
+		methodList = new ArrayList<Method>();
+	}
+
+	/**
+	 * @param bytes java file content, decoded by default charset as ASTCreator does
+	 * @return parser of given content, or null if the content is not recognized
+	 */
+	public static LightweightFileParser parse(byte[] bytes) {
+		return parse(new String(bytes, Charset.defaultCharset()));
+	}
+
+	/**
+	 * @return parser of given source, or null if the source is not recognized
+	 */
+	public static LightweightFileParser parse(String source) {
+		LightweightFileParser parser = new LightweightFileParser(source);
+		try {
+			parser.tokenize();
+			parser.parseCompilationUnit();
+		} catch (UnsupportedSyntaxException e) {
+			return null;
+		}
+		return parser;
+	}
+
+	/**
+	 * get source code file content, without package, import and package member annotation type declarations
+	 */
+	public String getContent() {
+		if (splitContent == null)
+			splitContent = FileParser.splitContent(getText(0, tokenCount));
+		return splitContent;
+	}
+
+	/**
+	 * get package name
+	 */
+	public String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * get imported classes list
+	 */
+	public ArrayList<String> getImportedClasses() {
+		return importedClasses;
+	}
+
+	/** get allClassNames + " " + allMethodNames */
+	public String getClassNameAndMethodName() {
+		return (getAllClassNames() + " " + getAllMethodNames()).toLowerCase();
+	}
+
+	/**
+	 * get all class names, names of classes and interfaces
+	 */
+	public String getAllClassNames() {
+		return classNames.toString().trim();
+	}
+
+	/**
+	 * get all method names
+	 */
+	public String getAllMethodNames() {
+		StringBuilder methodNames = new StringBuilder();
+		for (Method method : methodList)
+			methodNames.append(method.getName()).append(" ");
+		return methodNames.toString().trim();
+	}
+
+	/**
+	 * get all method list, in order of declarations
+	 */
+	public ArrayList<Method> getAllMethodList() {
+		return methodList;
+	}
+
+	/** read tokens, comments are skipped and javadoc is recorded on the next token */
+	private void tokenize() throws UnsupportedSyntaxException {
+		int capacity = Math.max(16, source.length() / 4);
+		kinds = new int[capacity];
+		starts = new int[capacity];
+		ends = new int[capacity];
+		docStarts = new int[capacity];
+		docEnds = new int[capacity];
+		tokenCount = 0;
+
+		int length = source.length();
+		int docStart = -1, docEnd = -1;
+		int i = 0;
+		while (i < length) {
+			char c = source.charAt(i);
+			int start = i;
+			int kind;
+			if (c <= ' ' || Character.isWhitespace(c)) {
+				i++;
+				continue;
+			} else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+				while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r')
+					i++;
+				docStart = -1;
+				continue;
+			} else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+				int end = source.indexOf("*/", i + 2);
+				if (end < 0)
+					throw new UnsupportedSyntaxException("unterminated comment");
+				// "/**/" is a block comment
+				if (i + 2 < end && source.charAt(i + 2) == '*') {
+					docStart = i;
+					docEnd = end + 2;
+				} else
+					docStart = -1;
+				i = end + 2;
+				continue;
+			} else if (Character.isJavaIdentifierStart(c)) {
+				i++;
+				while (i < length && Character.isJavaIdentifierPart(source.charAt(i)))
+					i++;
+				kind = IDENTIFIER;
+			} else if (isDigit(c) || (c == '.' && i + 1 < length && isDigit(source.charAt(i + 1)))) {
+				i++;
+				while (i < length) {
+					char d = source.charAt(i);
+					char previous = source.charAt(i - 1);
+					if (Character.isLetterOrDigit(d) || d == '_' || d == '.')
+						i++;
+					else if ((d == '+' || d == '-') && (previous == 'e' || previous == 'E' || previous == 'p' || previous == 'P'))
+						i++;
+					else
+						break;
+				}
+				kind = NUMBER;
+			} else if (c == '"' || c == '\'') {
+				i++;
+				while (true) {
+					if (i >= length || source.charAt(i) == '\n' || source.charAt(i) == '\r')
+						throw new UnsupportedSyntaxException("unterminated literal");
+					char d = source.charAt(i++);
+					if (d == '\\')
+						i++;
+					else if (d == c)
+						break;
+				}
+				kind = LITERAL;
+			} else {
+				i++;
+				// lambda arrow is one token, all other operators are read as single characters
+				if (c == '-' && i < length && source.charAt(i) == '>')
+					i++;
+				kind = OPERATOR;
+			}
+			addToken(kind, start, i, docStart, docEnd);
+			docStart = -1;
+		}
+		docAttached = new boolean[tokenCount];
+		excluded = new boolean[tokenCount];
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private void addToken(int kind, int start, int end, int docStart, int docEnd) {
+		if (tokenCount == kinds.length) {
+			int capacity = tokenCount * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			docStarts = Arrays.copyOf(docStarts, capacity);
+			docEnds = Arrays.copyOf(docEnds, capacity);
+		}
+		kinds[tokenCount] = kind;
+		starts[tokenCount] = start;
+		ends[tokenCount] = end;
+		docStarts[tokenCount] = docStart;
+		docEnds[tokenCount] = docStart >= 0 ? docEnd : -1;
+		tokenCount++;
+	}
+
+	/** compilation unit: package declaration, import declarations and type declarations */
+	private void parseCompilationUnit() throws UnsupportedSyntaxException {
+		int t = 0;
+		int start = t;
+		if (tokenCount > 0) {
+			t = skipModifiers(t);
+			if (is(t, "package")) {
+				StringBuilder name = new StringBuilder();
+				for (t++; !is(t, ";"); t++) {
+					check(t);
+					name.append(text(t));
+				}
+				packageName = name.toString();
+				exclude(start, ++t);
+			} else
+				t = start;
+		}
+		while (t < tokenCount) {
+			if (is(t, ";")) {
+				t++;
+			} else if (is(t, "import")) {
+				start = t++;
+				if (is(t, "static"))
+					t++;
+				StringBuilder name = new StringBuilder();
+				for (; !is(t, ";"); t++) {
+					check(t);
+					// on demand import is recorded by its package or type name
+					if (is(t, ".") && is(t + 1, "*") && is(t + 2, ";")) {
+						t++;
+						continue;
+					}
+					if (!is(t, "*"))
+						name.append(text(t));
+				}
+				importedClasses.add(name.toString());
+				exclude(start, ++t);
+			} else
+				break;
+		}
+		while (t < tokenCount) {
+			if (is(t, ";"))
+				t++;
+			else
+				t = parseTypeDeclaration(t, true);
+		}
+	}
+
+	/**
+	 * class, interface, enum or annotation type declaration starting at token t, including modifiers
+	 * @return index of the token after the declaration
+	 */
+	private int parseTypeDeclaration(int t, boolean isPackageMember) throws UnsupportedSyntaxException {
+		int start = t;
+		attachDoc(start);
+		t = skipModifiers(t);
+		int kind;
+		if (is(t, "@") && is(t + 1, "interface")) {
+			kind = ANNOTATION_BODY;
+			t++;
+		} else if (is(t, "enum"))
+			kind = ENUM_BODY;
+		else if (is(t, "class") || is(t, "interface")) {
+			kind = CLASS_BODY;
+			if (isIdentifier(t + 1))
+				classNames.append(text(t + 1)).append(" ");
+		} else
+			throw new UnsupportedSyntaxException("type declaration expected at " + t);
+		t++;
+		if (!isIdentifier(t))
+			throw new UnsupportedSyntaxException("type name expected at " + t);
+		// type parameters, extends and implements clauses
+		for (t++; !is(t, "{"); ) {
+			if (is(t, "<"))
+				t = skipTypeArguments(t);
+			else if (is(t, "@"))
+				t = skipAnnotation(t);
+			else if (isIdentifier(t) || is(t, ".") || is(t, ","))
+				t++;
+			else
+				throw new UnsupportedSyntaxException("type body expected at " + t);
+		}
+		int end = parseTypeBody(t, kind);
+		if (kind == ANNOTATION_BODY && isPackageMember)
+			exclude(start, end);
+		return end;
+	}
+
+	/**
+	 * type body starting at token "{" of given body kind
+	 * @return index of the token after the body
+	 */
+	private int parseTypeBody(int t, int kind) throws UnsupportedSyntaxException {
+		t++;
+		if (kind == ENUM_BODY)
+			t = parseEnumConstants(t);
+		while (true) {
+			check(t);
+			if (is(t, "}"))
+				return t + 1;
+			if (is(t, ";"))
+				t++;
+			else
+				t = parseMember(t, kind);
+		}
+	}
+
+	/**
+	 * enum constants starting at token t
+	 * @return index of the first body declaration after the constants
+	 */
+	private int parseEnumConstants(int t) throws UnsupportedSyntaxException {
+		while (true) {
+			check(t);
+			if (is(t, "}"))
+				return t;
+			if (is(t, ";"))
+				return t + 1;
+			attachDoc(t);
+			t = skipModifiers(t);
+			if (!isIdentifier(t))
+				throw new UnsupportedSyntaxException("enum constant expected at " + t);
+			t++;
+			if (is(t, "("))
+				t = scanCode(t);
+			if (is(t, "{"))
+				t = parseTypeBody(t, CLASS_BODY);
+			if (is(t, ","))
+				t++;
+			else if (!is(t, ";") && !is(t, "}"))
+				throw new UnsupportedSyntaxException("enum constant end expected at " + t);
+		}
+	}
+
+	/**
+	 * member of a type body starting at token t: initializer, member type, constructor, method or field
+	 * @return index of the token after the member
+	 */
+	private int parseMember(int t, int kind) throws UnsupportedSyntaxException {
+		int start = t;
+		t = skipModifiers(t);
+		if (is(t, "{")) {
+			attachDoc(start);
+			return scanCode(t);
+		}
+		if (is(t, "class") || is(t, "interface") || is(t, "enum") || (is(t, "@") && is(t + 1, "interface")))
+			return parseTypeDeclaration(start, false);
+		attachDoc(start);
+		if (is(t, "<"))
+			t = skipTypeArguments(t);
+		// constructor has no return type
+		if (isIdentifier(t) && is(t + 1, "(") && kind != ANNOTATION_BODY)
+			return parseMethod(start, t, t, t);
+		int typeStart = t;
+		t = skipType(t);
+		if (!isIdentifier(t))
+			throw new UnsupportedSyntaxException("member name expected at " + t);
+		// annotation type elements are not methods
+		if (is(t + 1, "(") && kind != ANNOTATION_BODY)
+			return parseMethod(start, typeStart, t, t);
+		return scanTo(t, ";");
+	}
+
+	/**
+	 * method or constructor declaration, the method is added before methods declared in its body
+	 * @param start first token of the declaration
+	 * @param typeStart first token of return type
+	 * @param typeEnd token after return type, equal to typeStart for constructors
+	 * @param nameIndex token of method name
+	 * @return index of the token after the declaration
+	 */
+	private int parseMethod(int start, int typeStart, int typeEnd, int nameIndex) throws UnsupportedSyntaxException {
+		String name = text(nameIndex);
+		String returnType = getTypeString(typeStart, typeEnd);
+		int open = nameIndex + 1;
+		int close = scanCode(open) - 1;
+		StringBuilder parameters = new StringBuilder();
+		int depth = 0;
+		int parameterStart = open + 1;
+		for (int t = open + 1; t <= close; t++) {
+			if (is(t, "<") || is(t, "("))
+				depth++;
+			else if (is(t, ">") || is(t, ")"))
+				depth--;
+			if (t == close || (depth == 0 && is(t, ","))) {
+				if (t > parameterStart) {
+					String parameterType = getParameterType(parameterStart, t);
+					if (parameterType != null)
+						parameters.append(parameterType).append(" ");
+				}
+				parameterStart = t + 1;
+			}
+		}
+		Method method = new Method(name, returnType, parameters.toString().trim());
+		methodList.add(method);
+		// dimensions and throws clause
+		int t = close + 1;
+		while (!is(t, "{") && !is(t, ";")) {
+			check(t);
+			if (is(t, "("))
+				t = scanCode(t);
+			else
+				t++;
+		}
+		int end = is(t, "{") ? scanCode(t) : t + 1;
+		method.setContent(FileParser.splitContent(getText(start, end)) + " " + Stemmer.stem(name));
+		return end;
+	}
+
+	/**
+	 * type of formal parameter of tokens [start, end), null for receiver parameter
+	 */
+	private String getParameterType(int start, int end) throws UnsupportedSyntaxException {
+		start = skipModifiers(start);
+		int nameIndex = end - 1;
+		while (nameIndex - 2 >= start && is(nameIndex, "]") && is(nameIndex - 1, "["))
+			nameIndex -= 2;
+		if (is(nameIndex, "this"))
+			return null;
+		if (!isIdentifier(nameIndex) || nameIndex <= start)
+			throw new UnsupportedSyntaxException("parameter name expected at " + nameIndex);
+		int typeEnd = nameIndex;
+		if (typeEnd - 3 >= start && is(typeEnd - 1, ".") && is(typeEnd - 2, ".") && is(typeEnd - 3, "."))
+			typeEnd -= 3;
+		return getTypeString(start, typeEnd);
+	}
+
+	/**
+	 * type of tokens [start, end) printed as JDT does, words are separated by space and punctuations are not
+	 */
+	private String getTypeString(int start, int end) {
+		StringBuilder builder = new StringBuilder();
+		for (int t = start; t < end; t++) {
+			if (t > start && isWord(t - 1) && isWord(t))
+				builder.append(" ");
+			builder.append(text(t));
+		}
+		return builder.toString();
+	}
+
+	private boolean isWord(int t) {
+		return kinds[t] != OPERATOR || is(t, "?") || is(t, "@");
+	}
+
+	/**
+	 * skip annotations and modifier keywords starting at token t
+	 * @return index of the first token which is neither annotation nor modifier
+	 */
+	private int skipModifiers(int t) throws UnsupportedSyntaxException {
+		while (t < tokenCount) {
+			if (is(t, "@") && !is(t + 1, "interface"))
+				t = skipAnnotation(t);
+			else if (kinds[t] == IDENTIFIER && MODIFIERS.contains(text(t)))
+				t++;
+			else
+				break;
+		}
+		return t;
+	}
+
+	/** skip annotation starting at token "@" */
+	private int skipAnnotation(int t) throws UnsupportedSyntaxException {
+		t++;
+		if (!isIdentifier(t))
+			throw new UnsupportedSyntaxException("annotation name expected at " + t);
+		for (t++; is(t, ".") && isIdentifier(t + 1); t += 2)
+			;
+		if (is(t, "("))
+			t = scanCode(t);
+		return t;
+	}
+
+	/** skip type arguments or type parameters starting at token "<" */
+	private int skipTypeArguments(int t) throws UnsupportedSyntaxException {
+		int depth = 0;
+		while (true) {
+			check(t);
+			if (is(t, "<"))
+				depth++;
+			else if (is(t, ">")) {
+				if (--depth == 0)
+					return t + 1;
+			} else if (is(t, "(")) {
+				t = scanCode(t);
+				continue;
+			} else if (is(t, "{") || is(t, "}") || is(t, ";"))
+				throw new UnsupportedSyntaxException("type arguments end expected at " + t);
+			t++;
+		}
+	}
+
+	/** skip type starting at token t, including type arguments and array dimensions */
+	private int skipType(int t) throws UnsupportedSyntaxException {
+		t = skipModifiers(t);
+		if (!isIdentifier(t))
+			throw new UnsupportedSyntaxException("type expected at " + t);
+		t++;
+		while (true) {
+			if (is(t, "<"))
+				t = skipTypeArguments(t);
+			else if (is(t, ".") && !is(t + 1, ".")) {
+				t = skipModifiers(t + 1);
+				if (!isIdentifier(t))
+					throw new UnsupportedSyntaxException("type expected at " + t);
+				t++;
+			} else if (is(t, "[") && is(t + 1, "]"))
+				t += 2;
+			else if (is(t, "@"))
+				t = skipAnnotation(t);
+			else
+				return t;
+		}
+	}
+
+	/**
+	 * scan code starting at token t until given terminator token at the same nesting level
+	 * @return index of the token after the terminator
+	 */
+	private int scanTo(int t, String terminator) throws UnsupportedSyntaxException {
+		while (true) {
+			check(t);
+			if (is(t, terminator))
+				return t + 1;
+			t = scanToken(t);
+		}
+	}
+
+	/**
+	 * scan code of a block or parenthesized or bracketed expression starting at its opening token, member
+	 * declarations of anonymous and local classes in the code are parsed
+	 * @return index of the token after the closing token
+	 */
+	private int scanCode(int t) throws UnsupportedSyntaxException {
+		String close = is(t, "(") ? ")" : is(t, "[") ? "]" : "}";
+		t++;
+		while (true) {
+			check(t);
+			if (is(t, close))
+				return t + 1;
+			t = scanToken(t);
+		}
+	}
+
+	/** @return index of the token after token t, or after the nested code or declaration started by it */
+	private int scanToken(int t) throws UnsupportedSyntaxException {
+		if (is(t, "(") || is(t, "[") || is(t, "{"))
+			return scanCode(t);
+		if (is(t, ")") || is(t, "]") || is(t, "}"))
+			throw new UnsupportedSyntaxException("unbalanced " + text(t) + " at " + t);
+		if (is(t, "new"))
+			return scanInstanceCreation(t);
+		if ((is(t, "class") || is(t, "interface") || is(t, "enum")) && !(t > 0 && is(t - 1, "."))) {
+			// local type declaration with its modifiers
+			int start = t;
+			while (start > 0 && kinds[start - 1] == IDENTIFIER && MODIFIERS.contains(text(start - 1)))
+				start--;
+			return parseTypeDeclaration(start, false);
+		}
+		return t + 1;
+	}
+
+	/** scan instance or array creation starting at token "new", body of anonymous class is parsed */
+	private int scanInstanceCreation(int t) throws UnsupportedSyntaxException {
+		t = skipModifiers(t + 1);
+		if (is(t, "<"))
+			t = skipTypeArguments(t);
+		t = skipModifiers(t);
+		if (!isIdentifier(t))
+			return t;
+		for (t++; ; ) {
+			if (is(t, "<"))
+				t = skipTypeArguments(t);
+			else if (is(t, ".") && isIdentifier(t + 1))
+				t += 2;
+			else if (is(t, "@"))
+				t = skipAnnotation(t);
+			else
+				break;
+		}
+		if (is(t, "(")) {
+			t = scanCode(t);
+			if (is(t, "{"))
+				t = parseTypeBody(t, CLASS_BODY);
+		}
+		return t;
+	}
+
+	/** text of tokens [start, end) not excluded, with javadoc of declarations, separated by space */
+	private CharSequence getText(int start, int end) {
+		StringBuilder builder = new StringBuilder();
+		for (int t = start; t < end; t++) {
+			if (excluded[t])
+				continue;
+			if (docAttached[t])
+				builder.append(source, docStarts[t], docEnds[t]).append(" ");
+			builder.append(source, starts[t], ends[t]).append(" ");
+		}
+		return builder;
+	}
+
+	private void attachDoc(int t) {
+		if (t < tokenCount && docStarts[t] >= 0)
+			docAttached[t] = true;
+	}
+
+	private void exclude(int start, int end) {
+		for (int t = start; t < end; t++)
+			excluded[t] = true;
+	}
+
+	private void check(int t) throws UnsupportedSyntaxException {
+		if (t >= tokenCount)
+			throw new UnsupportedSyntaxException("unexpected end of file");
+	}
+
+	private boolean is(int t, String token) {
+		return t < tokenCount && ends[t] - starts[t] == token.length()
+				&& source.regionMatches(starts[t], token, 0, token.length());
+	}
+
+	private boolean isIdentifier(int t) {
+		return t < tokenCount && kinds[t] == IDENTIFIER;
+	}
+
+	private String text(int t) {
+		return source.substring(starts[t], ends[t]);
+	}
+
+	/** syntax not recognized by the streaming parser */
+	private static class UnsupportedSyntaxException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedSyntaxException(String message) {
+			super(message);
+		}
+	}
+
+}
@@ -1,7 +1,5 @@
 package edu.whu.pllab.buglocator.common;
 
-import java.util.HashMap;
-
 public class BugReportCorpus {
 	
 	/** content after splitting, stemming and removing stopwords */
@@ -21,12 +19,12 @@ public class BugReportCorpus {
 	
 	private double descriptionNorm;
 	
-	/** content tokens that contains tfidf and weight info */
-	private HashMap<String, TokenScore> contentTokens;
+	/** content tokens weight vector */
+	private SparseVector contentTokens;
 	
-	private HashMap<String, TokenScore> summaryTokens;
+	private SparseVector summaryTokens;
 	
-	private HashMap<String, TokenScore> descriptionTokens;
+	private SparseVector descriptionTokens;
 	
 	public BugReportCorpus() {
 		this.content = "";
@@ -35,9 +33,9 @@ public class BugReportCorpus {
 		this.contentNorm = 0.0;
 		this.summaryNorm = 0.0;
 		this.descriptionNorm = 0.0;
-		this.contentTokens = new HashMap<String, TokenScore>();
-		this.summaryTokens = new HashMap<String, TokenScore>();
-		this.descriptionTokens = new HashMap<String, TokenScore>();
+		this.contentTokens = SparseVector.EMPTY;
+		this.summaryTokens = SparseVector.EMPTY;
+		this.descriptionTokens = SparseVector.EMPTY;
 	}
 	
 	public BugReportCorpus(String summaryPart, String descriptionPart) {
@@ -47,9 +45,9 @@ public class BugReportCorpus {
 		this.contentNorm = 0.0;
 		this.summaryNorm = 0.0;
 		this.descriptionNorm = 0.0;
-		this.contentTokens = new HashMap<String, TokenScore>();
-		this.summaryTokens = new HashMap<String, TokenScore>();
-		this.descriptionTokens = new HashMap<String, TokenScore>();
+		this.contentTokens = SparseVector.EMPTY;
+		this.summaryTokens = SparseVector.EMPTY;
+		this.descriptionTokens = SparseVector.EMPTY;
 	}
 
 	public String getContent() {
@@ -76,11 +74,11 @@ public class BugReportCorpus {
 		this.descriptionPart = descriptionPart;
 	}
 
-	public HashMap<String, TokenScore> getContentTokens() {
+	public SparseVector getContentTokens() {
 		return contentTokens;
 	}
 
-	public void setContentTokens(HashMap<String, TokenScore> contentTokens) {
+	public void setContentTokens(SparseVector contentTokens) {
 		this.contentTokens = contentTokens;
 	}
 
@@ -108,19 +106,19 @@ public class BugReportCorpus {
 		this.descriptionNorm = descriptionNorm;
 	}
 
-	public HashMap<String, TokenScore> getSummaryTokens() {
+	public SparseVector getSummaryTokens() {
 		return summaryTokens;
 	}
 
-	public void setSummaryTokens(HashMap<String, TokenScore> summartTokens) {
+	public void setSummaryTokens(SparseVector summartTokens) {
 		this.summaryTokens = summartTokens;
 	}
 
-	public HashMap<String, TokenScore> getDescriptionTokens() {
+	public SparseVector getDescriptionTokens() {
 		return descriptionTokens;
 	}
 
-	public void setDescriptionTokens(HashMap<String, TokenScore> descriptionTokens) {
+	public void setDescriptionTokens(SparseVector descriptionTokens) {
 		this.descriptionTokens = descriptionTokens;
 	}
 	
@@ -0,0 +1,338 @@
+package edu.whu.pllab.buglocator.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.text.DecimalFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import edu.whu.pllab.buglocator.utils.FileUtil;
+
+/**
+ * Streaming reader of bug report files. Bug reports are passed to a handler one by one while reading, so
+ * the whole file is never loaded in memory: xml files are read by StAX, xlsx files by POI event API over the
+ * sheet xml, and only legacy xls files are loaded as a workbook.
+ */
+public class BugReportReader {
+
+	/** receiver of bug reports in order of the file */
+	public interface Handler {
+		void handle(BugReport bugReport);
+	}
+
+	/** column indices of excel bug report files */
+	private static final int BUG_ID_COLUMN = 1;
+	private static final int SUMMARY_COLUMN = 2;
+	private static final int DESCRIPTION_COLUMN = 3;
+	private static final int REPORT_TIME_COLUMN = 4;
+	private static final int COMMIT_ID_COLUMN = 7;
+	private static final int COMMIT_TIME_COLUMN = 8;
+	private static final int FILES_COLUMN = 9;
+	private static final int COLUMN_COUNT = 10;
+
+	/** escaped characters of xlsx strings, decoded by XSSFWorkbook but not by the event API */
+	private static final Pattern ESCAPED_CHAR = Pattern.compile("_x([0-9A-Fa-f]{4})_");
+
+	private final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	private final DecimalFormat df = new DecimalFormat("0");
+
+	/** read bug reports of given xml, xlsx or xls file, xml files may be gzip compressed */
+	public void read(File file, Handler handler) throws Exception {
+		String path = file.getPath();
+		if (path.endsWith(".xml") || path.endsWith(".xml" + FileUtil.GZIP_SUFFIX)) {
+			try (InputStream in = FileUtil.openInputStream(file)) {
+				readXML(in, handler);
+			}
+		} else if (path.endsWith(".xlsx"))
+			readXlsx(file, handler);
+		else
+			readXls(file, handler);
+	}
+
+	/** read bug reports of xml in format of BugReportRepository.saveBugReportRepoToXML */
+	public void readXML(InputStream in, Handler handler) throws XMLStreamException, ParseException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XMLStreamReader reader = factory.createXMLStreamReader(in);
+		try {
+			// skip prolog to root element
+			while (reader.next() != XMLStreamConstants.START_ELEMENT)
+				;
+			// each element under root is a bug
+			while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+				handler.handle(readBug(reader));
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** read bug element, reader is at its start tag and left at its end tag */
+	private BugReport readBug(XMLStreamReader reader) throws XMLStreamException, ParseException {
+		BugReport bugReport = new BugReport();
+		bugReport.setBugID(Integer.parseInt(reader.getAttributeValue(null, "id")));
+		bugReport.setReportTime(sdf.parse(reader.getAttributeValue(null, "reportTime")));
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			if (name.equals("summary"))
+				bugReport.setSummary(readText(reader));
+			else if (name.equals("description"))
+				bugReport.setDescription(readText(reader));
+			else if (name.equals("commit")) {
+				String commitID = reader.getAttributeValue(null, "id");
+				if (commitID != null)
+					bugReport.setCommitID(commitID);
+				bugReport.setCommitTime(sdf.parse(reader.getAttributeValue(null, "commitTime")));
+				readText(reader);
+			} else if (name.equals("fixedFiles")) {
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					boolean isFile = reader.getLocalName().equals("file");
+					String text = readText(reader);
+					if (isFile)
+						bugReport.getFixedFiles().add(text);
+				}
+			} else
+				readText(reader);
+		}
+		return bugReport;
+	}
+
+	/** text content of current element, including text of nested elements, reader is left at its end tag */
+	private static String readText(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder builder = new StringBuilder();
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				builder.append(reader.getText());
+				break;
+			}
+		}
+		return builder.toString();
+	}
+
+	/** read bug reports of the first sheet of xlsx file by SAX, the first row is header */
+	public void readXlsx(File file, final Handler handler) throws Exception {
+		try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+			XSSFReader xssfReader = new XSSFReader(pkg);
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+			Iterator<InputStream> sheets = xssfReader.getSheetsData();
+			if (!sheets.hasNext())
+				return;
+			try (InputStream sheet = sheets.next()) {
+				XMLReader parser = SAXHelper.newXMLReader();
+				parser.setContentHandler(new SheetHandler(strings, handler));
+				parser.parse(new InputSource(sheet));
+			}
+		}
+	}
+
+	/** read bug reports of the first sheet of xls file, the first row is header */
+	public void readXls(File file, Handler handler) throws Exception {
+		try (InputStream stream = new FileInputStream(file); HSSFWorkbook wb = new HSSFWorkbook(stream)) {
+			Sheet sheet = wb.getSheetAt(0);
+			int rowCount = sheet.getPhysicalNumberOfRows();
+			String[] values = new String[COLUMN_COUNT];
+			for (int r = 1; r < rowCount; r++) {
+				Row row = sheet.getRow(r);
+				for (int c = 0; c < COLUMN_COUNT; c++)
+					values[c] = cellValue2String(row.getCell(c));
+				handler.handle(createBugReport(values));
+			}
+		}
+	}
+
+	/** create bug report of excel row values */
+	private BugReport createBugReport(String[] values) throws ParseException {
+		int bugID = Integer.parseInt(values[BUG_ID_COLUMN]);
+		String summary = values[SUMMARY_COLUMN].replaceAll("^Bug \\d+ ", "");
+		String description = values[DESCRIPTION_COLUMN];
+		String commitID = values[COMMIT_ID_COLUMN];
+		Date reportTime = sdf.parse(values[REPORT_TIME_COLUMN]);
+		Date commitTime = new Date(Long.parseLong(values[COMMIT_TIME_COLUMN]) * 1000);
+		TreeSet<String> fixedFiles = extractFilesFromString(values[FILES_COLUMN]);
+		return new BugReport(bugID, summary, description, reportTime, commitID, commitTime, fixedFiles);
+	}
+
+	/** convert excel cell value to string */
+	private String cellValue2String(Cell cell) {
+		if (cell == null)
+			return "";
+		switch (cell.getCellTypeEnum()) {
+		case STRING:
+			return cell.getStringCellValue();
+		case NUMERIC:
+			return df.format(cell.getNumericCellValue());
+		case BOOLEAN:
+			return cell.getBooleanCellValue() ? "TRUE" : "FALSE";
+		case FORMULA:
+			return cell.getCellFormula();
+		default:
+			return " ";
+		}
+	}
+
+	/** split filesString and get fixed files */
+	private static TreeSet<String> extractFilesFromString(String filesString) {
+		TreeSet<String> filesList = new TreeSet<String>();
+		String[] files = filesString.split("\\.java ");
+		for (int i = 0; i < files.length - 1; i++) {
+			filesList.add(files[i].trim() + ".java");
+		}
+		filesList.add(files[files.length - 1]);
+		return filesList;
+	}
+
+	/** decode _xHHHH_ escaped characters of xlsx string */
+	private static String unescape(String value) {
+		if (value == null || !value.contains("_x"))
+			return value;
+		StringBuffer buffer = new StringBuffer(value.length());
+		Matcher matcher = ESCAPED_CHAR.matcher(value);
+		while (matcher.find())
+			matcher.appendReplacement(buffer,
+					Matcher.quoteReplacement(String.valueOf((char) Integer.parseInt(matcher.group(1), 16))));
+		matcher.appendTail(buffer);
+		return buffer.toString();
+	}
+
+	/**
+	 * SAX handler of sheet xml, cell values are converted the same as cellValue2String of a loaded workbook
+	 */
+	private class SheetHandler extends DefaultHandler {
+
+		private final ReadOnlySharedStringsTable strings;
+		private final Handler handler;
+
+		private final String[] values = new String[COLUMN_COUNT];
+		private int rowIndex;
+
+		/** type, column, value and formula of current cell */
+		private String cellType;
+		private int column;
+		private StringBuilder value = new StringBuilder();
+		private StringBuilder formula = new StringBuilder();
+		private boolean hasValue;
+		private boolean hasFormula;
+		private StringBuilder text;
+
+		private SheetHandler(ReadOnlySharedStringsTable strings, Handler handler) {
+			this.strings = strings;
+			this.handler = handler;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes)
+				throws SAXException {
+			if (localName.equals("row")) {
+				rowIndex = Integer.parseInt(attributes.getValue("r")) - 1;
+				for (int c = 0; c < COLUMN_COUNT; c++)
+					values[c] = "";
+			} else if (localName.equals("c")) {
+				cellType = attributes.getValue("t");
+				column = new CellReference(attributes.getValue("r")).getCol();
+				value.setLength(0);
+				formula.setLength(0);
+				hasValue = false;
+				hasFormula = false;
+			} else if (localName.equals("v")) {
+				hasValue = true;
+				text = value;
+			} else if (localName.equals("t") && "inlineStr".equals(cellType)) {
+				hasValue = true;
+				text = value;
+			} else if (localName.equals("f")) {
+				hasFormula = true;
+				text = formula;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (text != null)
+				text.append(ch, start, length);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (localName.equals("v") || localName.equals("t") || localName.equals("f"))
+				text = null;
+			else if (localName.equals("c")) {
+				if (column < COLUMN_COUNT)
+					values[column] = getCellValue();
+			} else if (localName.equals("row") && rowIndex > 0) {
+				try {
+					handler.handle(createBugReport(values));
+				} catch (ParseException e) {
+					throw new SAXException(e);
+				}
+			}
+		}
+
+		private String getCellValue() {
+			if (hasFormula)
+				return formula.toString();
+			if (!hasValue)
+				return " ";
+			if (cellType == null || cellType.equals("n"))
+				return df.format(Double.parseDouble(value.toString()));
+			if (cellType.equals("s"))
+				return unescape(strings.getEntryAt(Integer.parseInt(value.toString())));
+			if (cellType.equals("b"))
+				return value.toString().equals("1") ? "TRUE" : "FALSE";
+			if (cellType.equals("inlineStr") || cellType.equals("str"))
+				return unescape(value.toString());
+			return " ";
+		}
+	}
+
+	/** read all bug reports of given file into a list */
+	public static ArrayList<BugReport> readAll(File file) throws Exception {
+		final ArrayList<BugReport> bugReports = new ArrayList<BugReport>();
+		new BugReportReader().read(file, new Handler() {
+			@Override
+			public void handle(BugReport bugReport) {
+				bugReports.add(bugReport);
+			}
+		});
+		return bugReports;
+	}
+
+}
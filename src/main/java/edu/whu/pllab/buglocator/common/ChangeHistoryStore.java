@@ -0,0 +1,278 @@
+package edu.whu.pllab.buglocator.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.whu.pllab.buglocator.Property;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
+
+/**
+ * Time indexed change history of source code files, mapping each path to its change points sorted in
+ * increasing order, so the last change before a time and the changes in a time window are found by binary
+ * search. The history is mined from commits of a git repository by parallel workers and is updated
+ * incrementally: the id of the last mined commit is kept and only newer commits are walked next time. It is
+ * saved with the change history segment of SourceCodeBinaryFormat, the header version is the last mined commit.
+ */
+public class ChangeHistoryStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChangeHistoryStore.class);
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** map file path to sorted change points in milliseconds */
+	private HashMap<String, long[]> changeHistory;
+
+	/** id of last mined commit, null if nothing is mined */
+	private String head;
+
+	/** whether history is changed since loaded or saved */
+	private boolean dirty;
+
+	public ChangeHistoryStore() {
+		this.changeHistory = new HashMap<String, long[]>();
+		this.head = null;
+		this.dirty = false;
+	}
+
+	/**
+	 * index of the last change point not later than given time in sorted change points
+	 * @return -1 if all change points are later than given time
+	 */
+	public static int lastChangeBefore(long[] changePoints, long time) {
+		return upperBound(changePoints, time) - 1;
+	}
+
+	/** number of change points in time window (from, to] of sorted change points */
+	public static int countChangesBetween(long[] changePoints, long from, long to) {
+		if (to <= from)
+			return 0;
+		return upperBound(changePoints, to) - upperBound(changePoints, from);
+	}
+
+	/** index of the first change point later than given time, changePoints.length if there is none */
+	public static int upperBound(long[] changePoints, long time) {
+		int low = 0;
+		int high = changePoints.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (changePoints[mid] <= time)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/** sorted change points of given path, an empty array if the file is never changed */
+	public long[] getChangeHistory(String path) {
+		long[] changePoints = changeHistory.get(path);
+		return changePoints == null ? new long[] {} : changePoints;
+	}
+
+	/** map file path to sorted change points */
+	public HashMap<String, long[]> getChangeHistory() {
+		return changeHistory;
+	}
+
+	/** id of last mined commit */
+	public String getHead() {
+		return head;
+	}
+
+	/**
+	 * mine change points of java files from first parent commits of given revision and not mined before. Each
+	 * commit is compared with its first parent, and its commit time is added to the history of changed files
+	 */
+	public void mine(Repository repo, String revision) {
+		List<ObjectId> commits = new ArrayList<ObjectId>();
+		ObjectId newHead;
+		try {
+			newHead = repo.resolve(revision);
+			if (newHead == null) {
+				logger.info("Cannot resolve " + revision + ", change history is not mined.");
+				return;
+			}
+			if (newHead.getName().equals(head))
+				return;
+			try (RevWalk walk = new RevWalk(repo)) {
+				// follow first parents only, changes merged from other branches are counted once by the merge
+				ObjectId lastHead = head == null ? null : ObjectId.fromString(head);
+				boolean reachedHead = false;
+				RevCommit commit = walk.parseCommit(newHead);
+				while (true) {
+					if (commit.equals(lastHead)) {
+						reachedHead = true;
+						break;
+					}
+					commits.add(commit.copy());
+					if (commit.getParentCount() == 0)
+						break;
+					commit = walk.parseCommit(commit.getParent(0));
+				}
+				if (lastHead != null && !reachedHead) {
+					// history was mined from another branch or rewritten, mine again from scratch
+					logger.info("Last mined commit " + head + " is not a first parent of " + revision
+							+ ", mining all commits...");
+					changeHistory.clear();
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		logger.info("Mining change history of " + commits.size() + " new commits...");
+
+		// commits are walked from newest to oldest, distribute them in turn to balance workers
+		int workerCount = Math.max(1, Math.min(Property.THREAD_COUNT, commits.size()));
+		List<List<ObjectId>> splitCommits = new ArrayList<List<ObjectId>>();
+		for (int i = 0; i < workerCount; i++)
+			splitCommits.add(new ArrayList<ObjectId>());
+		for (int i = 0; i < commits.size(); i++)
+			splitCommits.get(i % workerCount).add(commits.get(i));
+		List<MiningWorker> workers = new ArrayList<MiningWorker>();
+		Stage executor = Scheduler.newStage("Change history mining", workerCount);
+		for (List<ObjectId> workerCommits : splitCommits) {
+			MiningWorker worker = new MiningWorker(repo, workerCommits);
+			workers.add(worker);
+			executor.execute(worker);
+		}
+		executor.join();
+
+		HashMap<String, List<Long>> newChangePoints = new HashMap<String, List<Long>>();
+		for (MiningWorker worker : workers) {
+			if (worker.failed)
+				return;
+			for (Entry<String, List<Long>> entry : worker.changePoints.entrySet()) {
+				List<Long> points = newChangePoints.get(entry.getKey());
+				if (points == null)
+					newChangePoints.put(entry.getKey(), entry.getValue());
+				else
+					points.addAll(entry.getValue());
+			}
+		}
+		for (Entry<String, List<Long>> entry : newChangePoints.entrySet())
+			add(entry.getKey(), entry.getValue());
+		head = newHead.getName();
+		dirty = true;
+		logger.info("Finished mining, change history of " + changeHistory.size() + " files.");
+	}
+
+	/** merge change points into sorted change points of given path */
+	private void add(String path, List<Long> points) {
+		long[] oldPoints = getChangeHistory(path);
+		long[] changePoints = Arrays.copyOf(oldPoints, oldPoints.length + points.size());
+		for (int i = 0; i < points.size(); i++)
+			changePoints[oldPoints.length + i] = points.get(i);
+		Arrays.sort(changePoints);
+		changeHistory.put(path, changePoints);
+	}
+
+	/** compares commits with their first parent, changed java files are kept in a local map */
+	private static class MiningWorker implements Runnable {
+
+		private final Repository repo;
+		private final List<ObjectId> commits;
+		private final HashMap<String, List<Long>> changePoints;
+		private volatile boolean failed;
+
+		private MiningWorker(Repository repo, List<ObjectId> commits) {
+			this.repo = repo;
+			this.commits = commits;
+			this.changePoints = new HashMap<String, List<Long>>();
+			this.failed = false;
+		}
+
+		@Override
+		public void run() {
+			// each worker has its own RevWalk and TreeWalk, which are not thread safe
+			try (RevWalk walk = new RevWalk(repo); TreeWalk treeWalk = new TreeWalk(repo)) {
+				treeWalk.setRecursive(true);
+				treeWalk.setFilter(AndTreeFilter.create(PathSuffixFilter.create(".java"), TreeFilter.ANY_DIFF));
+				for (ObjectId id : commits) {
+					RevCommit commit = walk.parseCommit(id);
+					treeWalk.reset();
+					if (commit.getParentCount() > 0)
+						treeWalk.addTree(walk.parseCommit(commit.getParent(0)).getTree());
+					else
+						treeWalk.addTree(new EmptyTreeIterator());
+					treeWalk.addTree(commit.getTree());
+					long time = commit.getCommitTime() * 1000L;
+					while (treeWalk.next()) {
+						String path = treeWalk.getPathString();
+						List<Long> points = changePoints.get(path);
+						if (points == null) {
+							points = new ArrayList<Long>();
+							changePoints.put(path, points);
+						}
+						points.add(time);
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				failed = true;
+			}
+		}
+	}
+
+	/** save change history to given path if it is changed */
+	public void save(String path) {
+		if (!dirty || path == null)
+			return;
+		logger.info("Saving change history of " + changeHistory.size() + " files to " + path + "...");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(path), BUFFER_SIZE))) {
+			SourceCodeBinaryFormat.writeHeader(out, false, null, head);
+			SourceCodeBinaryFormat.writeChangeHistory(out, changeHistory);
+			dirty = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * load change history saved in given path, an empty store is returned if the file does not exist or is
+	 * invalid
+	 */
+	public static ChangeHistoryStore load(String path) {
+		ChangeHistoryStore store = new ChangeHistoryStore();
+		if (path == null || !new File(path).exists())
+			return store;
+		logger.info("Loading change history from " + path + "...");
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE))) {
+			String head = SourceCodeBinaryFormat.readHeader(in, false);
+			store.changeHistory = SourceCodeBinaryFormat.readChangeHistory(in);
+			store.head = head;
+		} catch (IOException e) {
+			// ignore invalid file, history is mined again
+			logger.info("Invalid change history " + path + ": " + e.getMessage());
+			store.changeHistory.clear();
+		}
+		return store;
+	}
+
+}
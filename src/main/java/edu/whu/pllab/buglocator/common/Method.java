@@ -2,7 +2,6 @@ package edu.whu.pllab.buglocator.common;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
 
@@ -14,7 +13,7 @@ public class Method {
     private String content;
 	private String hashKey;
 	
-	private HashMap<String, TokenScore> contentTokens;
+	private SparseVector contentTokens;
 	private double contentNorm;
 	
 	private INDArray paragraphVector;
@@ -25,7 +24,7 @@ public class Method {
     	this.setParams("");
     	this.setContent("");
     	this.setHashKey("");
-    	this.contentTokens = new HashMap<String, TokenScore>();
+    	this.contentTokens = SparseVector.EMPTY;
     	this.contentNorm = 0.0;
     }
     
@@ -35,7 +34,7 @@ public class Method {
     	this.params = params;
     	this.setContent("");
     	this.setHashKey(calculateMD5(name + " " + returnType + " " + params));
-    	this.contentTokens = new HashMap<String, TokenScore>();
+    	this.contentTokens = SparseVector.EMPTY;
     	this.contentNorm = 0.0;
     }
 	
@@ -107,11 +106,11 @@ public class Method {
 		this.contentNorm = contentNorm;
 	}
 	
-	public HashMap<String, TokenScore> getContentTokens() {
+	public SparseVector getContentTokens() {
 		return contentTokens;
 	}
 	
-	public void setContentTokens(HashMap<String, TokenScore> contentTokens) {
+	public void setContentTokens(SparseVector contentTokens) {
 		this.contentTokens = contentTokens;
 	}
 
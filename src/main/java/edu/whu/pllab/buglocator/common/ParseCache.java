@@ -0,0 +1,358 @@
+package edu.whu.pllab.buglocator.common;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of FileParser outputs keyed by git blob id of the file content. The blob id is computed
+ * from file content the same way as git hash-object, so it also works for source code directories which are
+ * not git repositories, and an unchanged file is never parsed again in another commit version. Entries are
+ * kept serialized by SourceCodeBinaryFormat, so each hit decodes a new SourceCode object and repositories
+ * sharing the cache never share corpus or methods whose tokens weight will be set.
+ * <p>
+ * The file is an append-only log of records, only the location of each record is kept in memory and records
+ * are read from the file when hit. New entries are kept in memory until flush appends them to the file, which
+ * also happens when they exceed MAX_PENDING_BYTES.
+ */
+public class ParseCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ParseCache.class);
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** maximum size of new entries kept in memory before they are appended to the file */
+	public static final long MAX_PENDING_BYTES = 64L << 20;
+
+	/** count of records of an append-only file, which are read until the end of file */
+	private static final int APPENDED_COUNT = -1;
+
+	/** loaded caches, map cache path to cache */
+	private static final ConcurrentHashMap<String, ParseCache> instances = new ConcurrentHashMap<String, ParseCache>();
+
+	private String path;
+
+	private boolean useStructuredInformation;
+
+	/** map blob id to location of its record in the file */
+	private ConcurrentHashMap<String, Location> locations;
+
+	/** map blob id to serialized package name and source code record not appended to the file yet */
+	private ConcurrentHashMap<String, byte[]> pending;
+
+	/** total size of pending records */
+	private AtomicLong pendingBytes;
+
+	/** channel of the cache file, null if it is not opened yet or closed */
+	private volatile FileChannel channel;
+
+	/** whether the cache is closed, entries are no longer added */
+	private volatile boolean closed;
+
+	private ParseCache(String path, boolean useStructuredInformation) {
+		this.path = path;
+		this.useStructuredInformation = useStructuredInformation;
+		this.locations = new ConcurrentHashMap<String, Location>();
+		this.pending = new ConcurrentHashMap<String, byte[]>();
+		this.pendingBytes = new AtomicLong();
+		this.closed = false;
+	}
+
+	/**
+	 * parse cache stored in given path, loaded from file at first call and shared by later calls. A file saved
+	 * with another structured setting is ignored
+	 */
+	public static synchronized ParseCache getInstance(String path, boolean useStructuredInformation) {
+		ParseCache cache = instances.get(path);
+		if (cache != null && cache.useStructuredInformation == useStructuredInformation)
+			return cache;
+		if (cache != null)
+			cache.close();
+		cache = new ParseCache(path, useStructuredInformation);
+		cache.load();
+		instances.put(path, cache);
+		return cache;
+	}
+
+	/** git blob id of given file content */
+	public static String blobId(byte[] content) {
+		try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+			return formatter.idFor(Constants.OBJ_BLOB, content).getName();
+		}
+	}
+
+	/**
+	 * parsed source code of given blob, with given path and full class name of the path
+	 * @return a new SourceCode object, or null if blob is not cached
+	 */
+	public SourceCode get(String blobId, String codePath) {
+		byte[] record = pending.get(blobId);
+		if (record == null) {
+			Location location = locations.get(blobId);
+			if (location == null)
+				return null;
+			record = read(location);
+			if (record == null)
+				return null;
+		}
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+			String packageName = SourceCodeBinaryFormat.readString(in);
+			SourceCode sourceCode = SourceCodeBinaryFormat.readSourceCode(in, useStructuredInformation);
+			sourceCode.setPath(codePath);
+			sourceCode.setFullClassName(SourceCodeRepository.getFullClassName(packageName, codePath));
+			return sourceCode;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/** cache parsed source code of given blob, only path independent parts are kept */
+	public void put(String blobId, String packageName, SourceCode sourceCode) {
+		if (closed || locations.containsKey(blobId))
+			return;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			SourceCodeBinaryFormat.writeString(out, packageName);
+			SourceCodeBinaryFormat.writeSourceCode(out, sourceCode, useStructuredInformation);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		byte[] record = bytes.toByteArray();
+		if (pending.putIfAbsent(blobId, record) == null && pendingBytes.addAndGet(record.length) > MAX_PENDING_BYTES)
+			flush();
+	}
+
+	/** number of cached blobs */
+	public int size() {
+		return locations.size() + pending.size();
+	}
+
+	/** append new entries to the cache file */
+	public synchronized void flush() {
+		if (closed || pending.isEmpty() || path == null)
+			return;
+		List<Entry<String, byte[]>> entries = new ArrayList<Entry<String, byte[]>>(pending.entrySet());
+		logger.info("Appending " + entries.size() + " blobs to parse cache " + path + "...");
+		try {
+			FileChannel channel = openForAppend();
+			long position = channel.size();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+			DataOutputStream out = new DataOutputStream(bytes);
+			List<Location> newLocations = new ArrayList<Location>(entries.size());
+			for (Entry<String, byte[]> entry : entries) {
+				SourceCodeBinaryFormat.writeString(out, entry.getKey());
+				out.writeInt(entry.getValue().length);
+				newLocations.add(new Location(position + bytes.size(), entry.getValue().length));
+				out.write(entry.getValue());
+			}
+			out.flush();
+			ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining())
+				position += channel.write(buffer, position);
+			channel.force(false);
+			// publish locations before pending records are removed, so get always finds a record
+			for (int i = 0; i < entries.size(); i++) {
+				Entry<String, byte[]> entry = entries.get(i);
+				locations.put(entry.getKey(), newLocations.get(i));
+				pending.remove(entry.getKey());
+				pendingBytes.addAndGet(-entry.getValue().length);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** append new entries and close the cache file */
+	public synchronized void close() {
+		flush();
+		closed = true;
+		instances.remove(path, this);
+		if (channel == null)
+			return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		channel = null;
+		locations.clear();
+	}
+
+	/** read record at given location of the cache file, null if failed */
+	private byte[] read(Location location) {
+		FileChannel channel = this.channel;
+		if (channel == null)
+			return null;
+		ByteBuffer buffer = ByteBuffer.allocate(location.length);
+		try {
+			long position = location.offset;
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0)
+					return null;
+				position += read;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return buffer.array();
+	}
+
+	/** channel of the cache file to append records, a new file is started if it is missing or invalid */
+	private FileChannel openForAppend() throws IOException {
+		if (channel != null)
+			return channel;
+		channel = new RandomAccessFile(path, "rw").getChannel();
+		channel.truncate(0);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		SourceCodeBinaryFormat.writeHeader(out, useStructuredInformation, null, null);
+		out.writeInt(SourceCodeBinaryFormat.PARSE_CACHE_SEGMENT);
+		out.writeInt(APPENDED_COUNT);
+		out.flush();
+		channel.write(ByteBuffer.wrap(bytes.toByteArray()), 0);
+		return channel;
+	}
+
+	/**
+	 * read locations of records, records of a file saved with a record count are read as well. A record
+	 * partially written at the end of file is truncated
+	 */
+	private void load() {
+		if (path == null || !new File(path).exists())
+			return;
+		logger.info("Loading parse cache from " + path + "...");
+		long fileLength = new File(path).length();
+		long countOffset = -1;
+		long validLength = 0;
+		try (CountingInputStream counter = new CountingInputStream(
+				new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE))) {
+			DataInputStream in = new DataInputStream(counter);
+			SourceCodeBinaryFormat.readHeader(in, useStructuredInformation);
+			int segment = in.readInt();
+			if (segment != SourceCodeBinaryFormat.PARSE_CACHE_SEGMENT)
+				throw new IOException("Unexpected segment " + segment + "!");
+			countOffset = counter.position;
+			int count = in.readInt();
+			validLength = counter.position;
+			try {
+				for (int i = 0; count == APPENDED_COUNT || i < count; i++) {
+					String blobId = SourceCodeBinaryFormat.readString(in);
+					int length = in.readInt();
+					long offset = counter.position;
+					// skip may pass the end of file, a record partially written is found by file length
+					if (length < 0 || offset + length > fileLength)
+						break;
+					skipFully(in, length);
+					locations.put(blobId, new Location(offset, length));
+					validLength = counter.position;
+				}
+			} catch (EOFException e) {
+				// end of an append-only file, or a record partially written
+			}
+		} catch (IOException e) {
+			// ignore invalid cache file, a new file is started on next flush
+			logger.info("Invalid parse cache " + path + ": " + e.getMessage());
+			locations.clear();
+			return;
+		}
+		try {
+			channel = new RandomAccessFile(path, "rw").getChannel();
+			channel.truncate(validLength);
+			// a file saved with a record count is continued as an append-only file
+			ByteBuffer count = ByteBuffer.allocate(4);
+			count.putInt(APPENDED_COUNT);
+			count.flip();
+			channel.write(count, countOffset);
+		} catch (IOException e) {
+			e.printStackTrace();
+			locations.clear();
+			channel = null;
+		}
+		logger.info("Loaded " + locations.size() + " cached blobs.");
+	}
+
+	private static void skipFully(DataInputStream in, int length) throws IOException {
+		int remaining = length;
+		while (remaining > 0) {
+			int skipped = in.skipBytes(remaining);
+			if (skipped <= 0) {
+				if (in.read() < 0)
+					throw new EOFException();
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+
+	/** location of a record in the cache file */
+	private static class Location {
+
+		private final long offset;
+		private final int length;
+
+		private Location(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/** input stream counting bytes read or skipped */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long position;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+			position = 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				position++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0)
+				position += read;
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			position += skipped;
+			return skipped;
+		}
+	}
+
+}
@@ -48,21 +48,23 @@ public class SourceCode {
 	}
 	
 	/**
-	 * Get the index of the latest time of given time.
+	 * Get the index of the latest time of given time by binary search.
 	 * @param time Input time.
-	 * @return The index of the latest time of given time.
+	 * @return The index of the latest time of given time, -1 if all change points are later than given time.
+	 *         As the former linear scan, 0 is returned if all change points are earlier than given time.
 	 */
 	public int locateChangePoint(long time) {
-		if (changeHistory.length == 0 || changeHistory[0] > time) 
-			return -1;
-		int i = 0;
-		for (int index = 0; index < changeHistory.length; index++) {
-			if (changeHistory[index] > time) {
-				i = index - 1;
-				break;
-			}
-		}
-		return i;
+		int index = ChangeHistoryStore.lastChangeBefore(changeHistory, time);
+		if (index == changeHistory.length - 1 && index > 0)
+			return 0;
+		return index;
+	}
+	
+	/**
+	 * Get the number of changes in time window (from, to].
+	 */
+	public int countChangesBetween(long from, long to) {
+		return ChangeHistoryStore.countChangesBetween(changeHistory, from, to);
 	}
 	
 	/**
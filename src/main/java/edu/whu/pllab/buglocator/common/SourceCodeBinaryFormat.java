@@ -0,0 +1,217 @@
+package edu.whu.pllab.buglocator.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Versioned binary segment format of source code repository, replacing the DOM based xml for warm start.
+ * A repository file is a header followed by a source code segment, a change history store file is a header
+ * followed by a change history segment:
+ * <pre>
+ * header:         magic, format version, structured flag, product, commit version
+ * source code:    segment tag, count, records of path, full class name, corpus and methods
+ * change history: segment tag, count, records of path and change points
+ * </pre>
+ * Strings are written as length prefixed UTF-8 bytes, since DataOutputStream.writeUTF is limited to 64K.
+ */
+public class SourceCodeBinaryFormat {
+
+	public static final int MAGIC = 0x42435250;
+	/**
+	 * version 2: files of version 1 may cache empty package names, which give wrong full class names.
+	 * version 3: repository files no longer keep change history
+	 */
+	public static final int FORMAT_VERSION = 3;
+
+	public static final int SOURCE_CODE_SEGMENT = 1;
+	public static final int CHANGE_HISTORY_SEGMENT = 2;
+	/** segment of ParseCache file, records of blob id and serialized source code */
+	public static final int PARSE_CACHE_SEGMENT = 3;
+
+	/** write repository header */
+	public static void writeHeader(DataOutputStream out, boolean useStructuredInformation, String product,
+			String version) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeBoolean(useStructuredInformation);
+		writeString(out, product);
+		writeString(out, version);
+	}
+
+	/**
+	 * read and check repository header
+	 * @return commit version stored in header
+	 * @throws IOException if magic, format version or structured flag does not match
+	 */
+	public static String readHeader(DataInputStream in, boolean useStructuredInformation) throws IOException {
+		return readHeader(in, useStructuredInformation, null);
+	}
+
+	/**
+	 * read and check repository header, and check product if given product is not null
+	 * @return commit version stored in header
+	 * @throws IOException if magic, format version, structured flag or product does not match
+	 */
+	public static String readHeader(DataInputStream in, boolean useStructuredInformation, String product)
+			throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a source code repository binary file!");
+		int formatVersion = in.readInt();
+		if (formatVersion != FORMAT_VERSION)
+			throw new IOException("Unsupported binary format version " + formatVersion + "!");
+		if (in.readBoolean() != useStructuredInformation)
+			throw new IOException("Structured information flag does not match!");
+		String savedProduct = readString(in);
+		if (product != null && !product.equals(savedProduct))
+			throw new IOException("Binary file was saved for product " + savedProduct + "!");
+		return readString(in);
+	}
+
+	/** write source code segment */
+	public static void writeSourceCodes(DataOutputStream out, HashMap<String, SourceCode> sourceCodeMap,
+			boolean useStructuredInformation) throws IOException {
+		out.writeInt(SOURCE_CODE_SEGMENT);
+		out.writeInt(sourceCodeMap.size());
+		for (SourceCode code : sourceCodeMap.values())
+			writeSourceCode(out, code, useStructuredInformation);
+	}
+
+	/** read source code segment */
+	public static HashMap<String, SourceCode> readSourceCodes(DataInputStream in, boolean useStructuredInformation)
+			throws IOException {
+		checkSegment(in, SOURCE_CODE_SEGMENT);
+		int count = in.readInt();
+		HashMap<String, SourceCode> sourceCodeMap = new HashMap<String, SourceCode>(count * 4 / 3 + 1);
+		for (int i = 0; i < count; i++) {
+			SourceCode code = readSourceCode(in, useStructuredInformation);
+			sourceCodeMap.put(code.getPath(), code);
+		}
+		return sourceCodeMap;
+	}
+
+	/** write change history segment */
+	public static void writeChangeHistory(DataOutputStream out, HashMap<String, long[]> changeHistory)
+			throws IOException {
+		out.writeInt(CHANGE_HISTORY_SEGMENT);
+		out.writeInt(changeHistory.size());
+		for (Entry<String, long[]> entry : changeHistory.entrySet()) {
+			writeString(out, entry.getKey());
+			writeLongs(out, entry.getValue());
+		}
+	}
+
+	/** read change history segment */
+	public static HashMap<String, long[]> readChangeHistory(DataInputStream in) throws IOException {
+		checkSegment(in, CHANGE_HISTORY_SEGMENT);
+		int count = in.readInt();
+		HashMap<String, long[]> changeHistory = new HashMap<String, long[]>(count * 4 / 3 + 1);
+		for (int i = 0; i < count; i++) {
+			String path = readString(in);
+			changeHistory.put(path, readLongs(in));
+		}
+		return changeHistory;
+	}
+
+	/** write a source code record, token weights are not written since they are computed by vectorizer */
+	public static void writeSourceCode(DataOutputStream out, SourceCode code, boolean useStructuredInformation)
+			throws IOException {
+		writeString(out, code.getPath());
+		writeString(out, code.getFullClassName());
+		SourceCodeCorpus corpus = code.getSourceCodeCorpus();
+		writeString(out, corpus.getContent());
+		if (useStructuredInformation) {
+			writeString(out, corpus.getClassPart());
+			writeString(out, corpus.getMethodPart());
+			writeString(out, corpus.getVariablePart());
+			writeString(out, corpus.getCommentPart());
+		}
+		List<String> importedClasses = corpus.getImportedClasses();
+		out.writeInt(importedClasses == null ? 0 : importedClasses.size());
+		if (importedClasses != null) {
+			for (String importedClass : importedClasses)
+				writeString(out, importedClass);
+		}
+		List<Method> methodList = code.getMethodList();
+		out.writeInt(methodList.size());
+		for (Method method : methodList) {
+			writeString(out, method.getName());
+			writeString(out, method.getReturnType());
+			writeString(out, method.getParams());
+			writeString(out, method.getContent());
+		}
+	}
+
+	/** read a source code record written by writeSourceCode */
+	public static SourceCode readSourceCode(DataInputStream in, boolean useStructuredInformation) throws IOException {
+		SourceCode code = new SourceCode(readString(in));
+		code.setFullClassName(readString(in));
+		SourceCodeCorpus corpus = new SourceCodeCorpus(readString(in));
+		if (useStructuredInformation) {
+			corpus.setClassPart(readString(in));
+			corpus.setMethodPart(readString(in));
+			corpus.setVariablePart(readString(in));
+			corpus.setCommentPart(readString(in));
+		}
+		int importedCount = in.readInt();
+		ArrayList<String> importedClasses = new ArrayList<String>(importedCount);
+		for (int i = 0; i < importedCount; i++)
+			importedClasses.add(readString(in));
+		corpus.setImportedClasses(importedClasses);
+		code.setSourceCodeCorpus(corpus);
+		int methodCount = in.readInt();
+		List<Method> methodList = new ArrayList<Method>(methodCount);
+		for (int i = 0; i < methodCount; i++) {
+			Method method = new Method(readString(in), readString(in), readString(in));
+			method.setContent(readString(in));
+			methodList.add(method);
+		}
+		code.setMethodList(methodList);
+		return code;
+	}
+
+	private static void checkSegment(DataInputStream in, int segment) throws IOException {
+		int tag = in.readInt();
+		if (tag != segment)
+			throw new IOException("Unexpected segment " + tag + ", expected " + segment + "!");
+	}
+
+	/** write length prefixed UTF-8 string, null is written as length -1 */
+	public static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+		out.writeInt(values.length);
+		for (long value : values)
+			out.writeLong(value);
+	}
+
+	public static long[] readLongs(DataInputStream in) throws IOException {
+		long[] values = new long[in.readInt()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = in.readLong();
+		return values;
+	}
+
+}
@@ -1,7 +1,6 @@
 package edu.whu.pllab.buglocator.common;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 public class SourceCodeCorpus {
 	/** content after splitting, stemming and removing stopwords */
@@ -10,8 +9,8 @@ public class SourceCodeCorpus {
 	/** used when calculating similarity */
 	private double contentNorm;
 	
-	/** content tokens that contains tfidf/weight info */
-	private HashMap<String, TokenScore> contentTokens;
+	/** content tokens weight vector */
+	private SparseVector contentTokens;
 
 	private ArrayList<String> importedClasses;
 	
@@ -25,15 +24,15 @@ public class SourceCodeCorpus {
 	private double variableCorpusNorm;
 	private double commentCorpusNorm; 
 	
-	private HashMap<String, TokenScore> classPartTokens;
-	private HashMap<String, TokenScore> methodPartTokens;
-	private HashMap<String, TokenScore> variablePartTokens;
-	private HashMap<String, TokenScore> commentPartTokens;
+	private SparseVector classPartTokens;
+	private SparseVector methodPartTokens;
+	private SparseVector variablePartTokens;
+	private SparseVector commentPartTokens;
 	
 	public SourceCodeCorpus() {
 		this.content = "";
 		this.contentNorm = 0.0;
-		this.contentTokens = new HashMap<String, TokenScore>();
+		this.contentTokens = SparseVector.EMPTY;
 		
 		this.classPart = "";
 		this.methodPart = "";
@@ -50,7 +49,7 @@ public class SourceCodeCorpus {
 	public SourceCodeCorpus(String content) {
 		this.content = content;
 		this.contentNorm = 0.0;
-		this.contentTokens = new HashMap<String, TokenScore>();
+		this.contentTokens = SparseVector.EMPTY;
 		
 		this.classPart = "";
 		this.methodPart = "";
@@ -80,11 +79,11 @@ public class SourceCodeCorpus {
 		this.contentNorm = contentNorm;
 	}
 	
-	public HashMap<String, TokenScore> getContentTokens() {
+	public SparseVector getContentTokens() {
 		return contentTokens;
 	}
 	
-	public void setContentTokens(HashMap<String, TokenScore> contentTokens) {
+	public void setContentTokens(SparseVector contentTokens) {
 		this.contentTokens = contentTokens;
 	}
 
@@ -160,35 +159,35 @@ public class SourceCodeCorpus {
 		this.commentCorpusNorm = commentCorpusNorm;
 	}
 
-	public HashMap<String, TokenScore> getClassPartTokens() {
+	public SparseVector getClassPartTokens() {
 		return classPartTokens;
 	}
 
-	public void setClassPartTokens(HashMap<String, TokenScore> classPartTokens) {
+	public void setClassPartTokens(SparseVector classPartTokens) {
 		this.classPartTokens = classPartTokens;
 	}
 
-	public HashMap<String, TokenScore> getMethodPartTokens() {
+	public SparseVector getMethodPartTokens() {
 		return methodPartTokens;
 	}
 
-	public void setMethodPartTokens(HashMap<String, TokenScore> methodPartTokens) {
+	public void setMethodPartTokens(SparseVector methodPartTokens) {
 		this.methodPartTokens = methodPartTokens;
 	}
 
-	public HashMap<String, TokenScore> getVariablePartTokens() {
+	public SparseVector getVariablePartTokens() {
 		return variablePartTokens;
 	}
 
-	public void setVariablePartTokens(HashMap<String, TokenScore> variablePartTokens) {
+	public void setVariablePartTokens(SparseVector variablePartTokens) {
 		this.variablePartTokens = variablePartTokens;
 	}
 
-	public HashMap<String, TokenScore> getCommentPartTokens() {
+	public SparseVector getCommentPartTokens() {
 		return commentPartTokens;
 	}
 
-	public void setCommentPartTokens(HashMap<String, TokenScore> commentPartTokens) {
+	public void setCommentPartTokens(SparseVector commentPartTokens) {
 		this.commentPartTokens = commentPartTokens;
 	}
 	
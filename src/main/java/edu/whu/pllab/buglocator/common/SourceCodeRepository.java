@@ -1,35 +1,37 @@
 package edu.whu.pllab.buglocator.common;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.ResetCommand.ResetType;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -39,13 +41,20 @@ import org.w3c.dom.NodeList;
 
 import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.astparser.FileParser;
+import edu.whu.pllab.buglocator.astparser.LightweightFileParser;
+import edu.whu.pllab.buglocator.utils.Analyzer;
 import edu.whu.pllab.buglocator.utils.FileUtil;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
+import edu.whu.pllab.buglocator.utils.StemCache;
 import edu.whu.pllab.buglocator.utils.Stemmer;
-import edu.whu.pllab.buglocator.utils.Stopword;
+import edu.whu.pllab.buglocator.utils.XMLWriter;
 
 public class SourceCodeRepository {
 
 	private static final Logger logger = LoggerFactory.getLogger(SourceCodeRepository.class);
+	
+	private static final int BINARY_BUFFER_SIZE = 1 << 16;
 
 	/** source code repository commit version */
 	private String version;
@@ -61,6 +70,9 @@ public class SourceCodeRepository {
 	/** whether use structured information */
 	private boolean useStructuredInformation;
 	
+	/** whether parse files by LightweightFileParser, falling back to FileParser */
+	private boolean useLightweightLexer;
+	
 	/** git repository of sourceCode */
 	private Repository repo;
 	
@@ -80,10 +92,14 @@ public class SourceCodeRepository {
 	private HashMap<String, SourceCode> modifiedFiles;
 	private HashMap<String, SourceCode> deletedFiles;
 	
+	/** cache of parsed source code keyed by blob id, null if not used */
+	private ParseCache parseCache;
+	
 	/** Constructor */
 	public SourceCodeRepository() {
 		Property property = Property.getInstance();
 		useStructuredInformation = Property.USE_STRUCTURED_INFORMATION;
+		useLightweightLexer = !useStructuredInformation && Property.USE_LIGHTWEIGHT_LEXER;
 		sourceCodeDir = property.getSourceCodeDir();
 		
 		// initialize git repository
@@ -99,17 +115,26 @@ public class SourceCodeRepository {
 		// initialize sourceCodeDirNameLength and sourceCodeMaps before loadSourceCodeFiles
 		sourceCodeDirNameLength = new File(sourceCodeDir).getAbsolutePath().length();
 		sourceCodeMap = new HashMap<String, SourceCode>();
-		// if code repository xml file exists, load code repository from xml file,
-		// otherwise, load by parsing source code from source code dir
-		File codeRepoXMLFile = new File(property.getCodeRepositoryXMLPath());
-		if (codeRepoXMLFile.exists())
-			sourceCodeMap = parseXMLOfSourceCodeRepo(property.getCodeRepositoryXMLPath());
-		else {
-			loadSourceCodeFiles(sourceCodeDir);
-//			saveSourceCodeRepoToXML(property.getCodeRepositoryXMLPath(), property.getProduct());
+		parseCache = ParseCache.getInstance(getParseCachePath(property), useStructuredInformation);
+		StemCache.loadInstance(property.getStemCachePath());
+		// if code repository binary file of current version exists, load code repository from binary file,
+		// else if code repository xml file exists, load code repository from xml file,
+		// otherwise, load by parsing source code from source code dir and save as binary file
+		String binaryPath = getCodeRepositoryBinaryPath(property);
+		boolean loaded = loadSourceCodeRepoFromBinary(binaryPath, property.getProduct());
+		if (!loaded) {
+			File codeRepoXMLFile = new File(property.getCodeRepositoryXMLPath());
+			if (codeRepoXMLFile.exists())
+				sourceCodeMap = parseXMLOfSourceCodeRepo(property.getCodeRepositoryXMLPath());
+			else
+				loadSourceCodeFiles(sourceCodeDir);
 		}
+		// change history is not kept in binary file, it may be changed or mined since the file was saved
 		loadSourceCodeChangeHistory(property.getCodeChangeHistoryPath());
 		computeLengthScore();
+		// a binary file without commit version is never loaded
+		if (!loaded && version != null)
+			saveSourceCodeRepoToBinary(binaryPath, property.getProduct());
 	}
 	
 	/**
@@ -117,30 +142,34 @@ public class SourceCodeRepository {
 	 * @param version input source code repository commit version
 	 */
 	public SourceCodeRepository(String version) {
-		logger.info("Resetting source code repository to version " + version + "...");
+		logger.info("Loading source code repository of version " + version + "...");
 		useStructuredInformation = Property.USE_STRUCTURED_INFORMATION;
+		useLightweightLexer = !useStructuredInformation && Property.USE_LIGHTWEIGHT_LEXER;
 		this.version = version;
 		Property property = Property.getInstance();
 		sourceCodeDir = property.getSourceCodeDir();
-		// reset to given commitID version
+		// initialize git repository, files of given version are read from object database, the working
+		// tree is not touched
 		try {
-			// initialize git repository
 			repo = FileRepositoryBuilder.create(new File(sourceCodeDir, ".git"));
 			git = new Git(repo);
-			git.reset().setMode(ResetType.HARD).setRef(version).call();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 		// initialize sourceCodeDirNameLength and sourceCodeMaps before loadSourceCodeFiles
 		sourceCodeDirNameLength = new File(sourceCodeDir).getAbsolutePath().length();
 		sourceCodeMap = new HashMap<String, SourceCode>();
-		loadSourceCodeFiles(sourceCodeDir);
-//		saveSourceCodeRepoToXML(property.getCodeRepositoryXMLPath(), property.getProduct());
+		parseCache = ParseCache.getInstance(getParseCachePath(property), useStructuredInformation);
+		StemCache.loadInstance(property.getStemCachePath());
+		loadSourceCodeFilesOfVersion(version);
 		loadSourceCodeChangeHistory(property.getCodeChangeHistoryPath());
 		computeLengthScore();
 	}
 	
-	/** reset source code repository to given version, and get added, modified, deleted files */
+	/**
+	 * move source code repository to given version, and get added, modified, deleted files. Changed files are
+	 * read from git object database, the working tree is not touched
+	 */
 	public void checkout(String version) {
 		logger.info("Previous version: " + this.version + ", git checkout " + version + "...");
 		
@@ -161,11 +190,11 @@ public class SourceCodeRepository {
 		List<String> addedFilesList = new ArrayList<String>();
 		List<String> modifiedFilesList = new ArrayList<String>();
 		List<String> deletedFilesList = new ArrayList<String>();
+		// map added and modified files to their blob ids in new version
+		HashMap<String, ObjectId> blobIds = new HashMap<String, ObjectId>();
 		
 		// git process
 		try {
-			git.reset().setMode(ResetType.HARD).setRef(version).call();
-			
 			// get added, modified and deleted files
 			// Get the id of the tree associated to the two commits
 			ObjectId head = repo.resolve(version + "^{tree}");
@@ -183,12 +212,16 @@ public class SourceCodeRepository {
 				if (diff.getChangeType() == ChangeType.ADD) {
 					if (!diff.getNewPath().endsWith(".java"))
 						continue;
-					addedFilesList.add(new File(sourceCodeDir, diff.getNewPath()).getAbsolutePath());
+					String filePath = new File(sourceCodeDir, diff.getNewPath()).getAbsolutePath();
+					addedFilesList.add(filePath);
+					blobIds.put(filePath, diff.getNewId().toObjectId());
 				}
 				else if (diff.getChangeType()== ChangeType.MODIFY) {
 					if (!diff.getNewPath().endsWith(".java"))
 						continue;
-					modifiedFilesList.add(new File(sourceCodeDir, diff.getNewPath()).getAbsolutePath());
+					String filePath = new File(sourceCodeDir, diff.getNewPath()).getAbsolutePath();
+					modifiedFilesList.add(filePath);
+					blobIds.put(filePath, diff.getNewId().toObjectId());
 				}
 				else if (diff.getChangeType()== ChangeType.DELETE) {
 					if (!diff.getOldPath().endsWith(".java"))
@@ -217,16 +250,27 @@ public class SourceCodeRepository {
 		}
 		for (String filePath: deletedFilesList) {
 			String path = filePath.substring(sourceCodeDirNameLength + 1).replaceAll("\\\\", "/");
-			sourceCodeMap.remove(path);
+			SourceCode deletedCode = sourceCodeMap.remove(path);
+			if (deletedCode != null)
+				deletedFiles.put(path, deletedCode);
 		}
 		
-		ExecutorService executor = Executors.newFixedThreadPool(Property.THREAD_COUNT);
+		Stage executor = Scheduler.newStage("Source code parsing");
 		for (String javaFilePath : addedAndModifiedFiles) {
-			Runnable worker = new WorkerThread(javaFilePath);
+			Runnable worker = new WorkerThread(javaFilePath, blobIds.get(javaFilePath));
 			executor.execute(worker);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
+		executor.join();
+		saveCaches();
+		
+		// keep parsed added and modified files, used to update tfidf model incrementally
+		for (String filePath : addedFilesList) {
+			String path = filePath.substring(sourceCodeDirNameLength + 1).replaceAll("\\\\", "/");
+			addedFiles.put(path, sourceCodeMap.get(path));
+		}
+		for (String filePath : modifiedFilesList) {
+			String path = filePath.substring(sourceCodeDirNameLength + 1).replaceAll("\\\\", "/");
+			modifiedFiles.put(path, sourceCodeMap.get(path));
 		}
 		
 		// update change history and related bugReports
@@ -244,41 +288,160 @@ public class SourceCodeRepository {
 		List<String> javaFiles = FileUtil.getAllFiles(sourceCodeDir, ".java");
 		logger.info("Begining parsing source code, total " + javaFiles.size() + " java files.");
 		// parse java files with multi thread
-		ExecutorService executor = Executors.newFixedThreadPool(Property.THREAD_COUNT);
+		Stage executor = Scheduler.newStage("Source code parsing");
 		for (String javaFilePath : javaFiles) {
 			Runnable worker = new WorkerThread(javaFilePath);
 			executor.execute(worker);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
+		executor.join();
+		saveCaches();
+		logger.info("Finished parsing!");
+	}
+	
+	/**
+	 * get all sourceCode files(.java file) of given commit version by walking its git tree with multi thread,
+	 * file contents are read from git object database instead of working tree
+	 * @param version input source code repository commit version
+	 */
+	public void loadSourceCodeFilesOfVersion(String version) {
+		List<String> javaFiles = new ArrayList<String>();
+		List<ObjectId> blobIds = new ArrayList<ObjectId>();
+		try (TreeWalk treeWalk = new TreeWalk(repo)) {
+			treeWalk.addTree(repo.resolve(version + "^{tree}"));
+			treeWalk.setRecursive(true);
+			treeWalk.setFilter(PathSuffixFilter.create(".java"));
+			while (treeWalk.next()) {
+				javaFiles.add(new File(sourceCodeDir, treeWalk.getPathString()).getAbsolutePath());
+				blobIds.add(treeWalk.getObjectId(0));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		logger.info("Begining parsing source code of version " + version + ", total " + javaFiles.size()
+				+ " java files.");
+		Stage executor = Scheduler.newStage("Source code parsing");
+		for (int i = 0; i < javaFiles.size(); i++) {
+			Runnable worker = new WorkerThread(javaFiles.get(i), blobIds.get(i));
+			executor.execute(worker);
 		}
+		executor.join();
+		saveCaches();
 		logger.info("Finished parsing!");
 	}
 	
-	/** worker parsing source code file */
+	/**
+	 * full class name of a source code file, package name followed by file name without extension, or path
+	 * without extension if package name is empty
+	 */
+	public static String getFullClassName(String packageName, String path) {
+		String fullClassName;
+		if (packageName.trim().equals(""))
+			fullClassName = path;
+		else
+			fullClassName = packageName + "." + path.substring(path.lastIndexOf('/') + 1);
+		return fullClassName.substring(0, fullClassName.lastIndexOf("."));
+	}
+	
+	/** append newly parsed files to parse cache after parsing */
+	private void saveCaches() {
+		if (parseCache != null)
+			parseCache.flush();
+	}
+	
+	/** files parsed by lexer are cached apart from files parsed by JDT AST */
+	private String getParseCachePath(Property property) {
+		return useLightweightLexer ? property.getParseCachePath() + ".lexer" : property.getParseCachePath();
+	}
+	
+	/** repository parsed by lexer is saved apart from repository parsed by JDT AST */
+	private String getCodeRepositoryBinaryPath(Property property) {
+		return useLightweightLexer ? property.getCodeRepositoryBinaryPath() + ".lexer"
+				: property.getCodeRepositoryBinaryPath();
+	}
+	
+	/** stem class and method names, remove stopwords */
+	private static String stemNames(String classNameAndMethodName) {
+		return Analyzer.getInstance(Analyzer.IDENTIFIERS).analyze(classNameAndMethodName);
+	}
+	
+	/** worker parsing source code file, or reusing parsed source code of the same blob from parse cache */
 	private class WorkerThread implements Runnable {
 		
 		private String filePath;
 		
+		/** blob id of file in git object database, null if file is read from working tree */
+		private ObjectId blobId;
+		
 		private WorkerThread(String filePath) {
 			this.filePath = filePath;
 		}
 		
+		private WorkerThread(String filePath, ObjectId blobId) {
+			this.filePath = filePath;
+			this.blobId = blobId;
+		}
+		
 		public void run() {
-			FileParser parser = new FileParser(new File(filePath));
 			String path = filePath.substring(sourceCodeDirNameLength + 1).replaceAll("\\\\", "/");
+			byte[] bytes;
+			try {
+				if (blobId != null)
+					bytes = repo.open(blobId, Constants.OBJ_BLOB).getBytes(Integer.MAX_VALUE);
+				else
+					bytes = Files.readAllBytes(Paths.get(filePath));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+			// reuse parsed source code of unchanged blob
+			String blobName = null;
+			if (parseCache != null) {
+				blobName = blobId != null ? blobId.getName() : ParseCache.blobId(bytes);
+				SourceCode cachedCode = parseCache.get(blobName, path);
+				if (cachedCode != null) {
+					synchronized(sourceCodeMap) {
+						sourceCodeMap.put(path, cachedCode);
+					}
+					return;
+				}
+			}
+			// try streaming lexer first, files it can't handle are parsed by JDT AST
+			LightweightFileParser lightweightParser = useLightweightLexer ? LightweightFileParser.parse(bytes) : null;
+			SourceCode sourceCode;
+			String packageName;
+			// get package name before creating source code, since getContent() removes package declaration
+			if (lightweightParser != null) {
+				packageName = lightweightParser.getPackageName();
+				sourceCode = createSourceCode(path, lightweightParser);
+			} else {
+				FileParser parser = new FileParser(bytes);
+				packageName = parser.getPackageName();
+				sourceCode = createSourceCode(path, parser);
+			}
+			if (blobName != null)
+				parseCache.put(blobName, packageName, sourceCode);
+			// put to map
+			synchronized(sourceCodeMap) {
+				sourceCodeMap.put(sourceCode.getPath(), sourceCode);
+			}
+		}
+		
+		private SourceCode createSourceCode(String path, LightweightFileParser parser) {
+			SourceCode sourceCode = new SourceCode(path);
+			sourceCode.setFullClassName(getFullClassName(parser.getPackageName(), path));
+			sourceCode.setMethodList(parser.getAllMethodList());
+			SourceCodeCorpus sourceCodeCorpus = new SourceCodeCorpus();
+			sourceCodeCorpus.setImportedClasses(parser.getImportedClasses());
+			sourceCodeCorpus.setContent(parser.getContent() + " " + stemNames(parser.getClassNameAndMethodName()));
+			sourceCode.setSourceCodeCorpus(sourceCodeCorpus);
+			return sourceCode;
+		}
+		
+		private SourceCode createSourceCode(String path, FileParser parser) {
 			// create sourceCode
 			SourceCode sourceCode = new SourceCode(path);
 			// set fullClassName
-			String fullClassName = parser.getPackageName();
-			if (fullClassName.trim().equals("")) 
-				fullClassName = path;
-			else {
-				fullClassName = (new StringBuilder(String.valueOf(fullClassName)))
-						.append(".").append(new File(filePath).getName()).toString();
-			}
-			fullClassName = fullClassName.substring(0, fullClassName.lastIndexOf("."));
-			sourceCode.setFullClassName(fullClassName);
+			sourceCode.setFullClassName(getFullClassName(parser.getPackageName(), path));
 			// set methodList
 			List<Method> methodList = parser.getAllMethodList();
 			sourceCode.setMethodList(methodList);
@@ -291,26 +454,13 @@ public class SourceCodeRepository {
 			if (!useStructuredInformation) {
 				String content = parser.getContent();
 				// append class and method names
-				String classNameAndMethodName = parser.getClassNameAndMethodName();
-				StringBuffer nameBuf = new StringBuffer();
-			    for (String word : classNameAndMethodName.split(" ")) {
-				    String stemWord = Stemmer.stem(word.toLowerCase());
-				    if (Stopword.isEnglishStopword(stemWord) || Stopword.isJavaKeyword(stemWord) || Stopword.isProjectKeyword(stemWord))
-						continue;
-				    nameBuf.append(stemWord);
-				    nameBuf.append(" ");
-			    }
-			    String names = nameBuf.toString();
-				sourceCodeCorpus.setContent(content + " " + names.trim());
+				sourceCodeCorpus.setContent(content + " " + stemNames(parser.getClassNameAndMethodName()));
 			}
 			else
 				setStructuredInformation(sourceCodeCorpus, parser);
 			
 			sourceCode.setSourceCodeCorpus(sourceCodeCorpus);
-			// put to map
-			synchronized(sourceCodeMap) {
-				sourceCodeMap.put(sourceCode.getPath(), sourceCode);
-			}
+			return sourceCode;
 		}
 		
 		/** set structured information for input sourceCOdeCorpus */
@@ -329,8 +479,13 @@ public class SourceCodeRepository {
 		}
 	}
 	
-	/** load source code change history from history file */
+	/**
+	 * load source code change history from history file, or mine it from git repository of source code if
+	 * MINE_CHANGE_HISTORY_FROM_GIT is set
+	 */
 	public void loadSourceCodeChangeHistory(String historyFilePath) {
+		if (Property.MINE_CHANGE_HISTORY_FROM_GIT && mineSourceCodeChangeHistory())
+			return;
 		changeHistory = new HashMap<String, long[]>();
 		logger.info("Load source code files' change history..."); 
 		try {
@@ -355,6 +510,23 @@ public class SourceCodeRepository {
 		}
 	}
 	
+	/**
+	 * update change history store by commits added since last mining and set change history of source code
+	 * @return false if source code dir is not a git repository
+	 */
+	private boolean mineSourceCodeChangeHistory() {
+		if (repo == null || !repo.getObjectDatabase().exists())
+			return false;
+		String storePath = Property.getInstance().getChangeHistoryStorePath();
+		ChangeHistoryStore store = ChangeHistoryStore.load(storePath);
+		store.mine(repo, Constants.HEAD);
+		store.save(storePath);
+		changeHistory = store.getChangeHistory();
+		for (SourceCode sourceCode : sourceCodeMap.values())
+			sourceCode.setChangeHistory(store.getChangeHistory(sourceCode.getPath()));
+		return true;
+	}
+	
 	public void setSourceCodeChangeHistory(List<String> newSourceCodeList) {
 		for (String filePath : newSourceCodeList) {
 			String path = filePath.substring(sourceCodeDirNameLength + 1).replaceAll("\\\\", "/");
@@ -432,88 +604,81 @@ public class SourceCodeRepository {
 	/** save source code repository as xml to output path  */
 	public void saveSourceCodeRepoToXML(String output, String product) {
 		logger.info("Saving source code repository as xml to " + output + "...");
-		DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
-		try {
-			DocumentBuilder domBuilder = domFactory.newDocumentBuilder();
-			Document doc = domBuilder.newDocument();
-			
-			Element root = doc.createElement("SourceCodeRepository");
-			root.setAttribute("product", product);
-			doc.appendChild(root);
-			
+		try (XMLWriter writer = new XMLWriter(output)) {
+			writer.startElement("SourceCodeRepository");
+			writer.attribute("product", product);
 			// iterate source code
 			for (SourceCode code : sourceCodeMap.values()) {
-				Element codeElement = doc.createElement("SourceCode");
-				
-				Element pathElement = doc.createElement("Path");
-				pathElement.appendChild(doc.createTextNode(code.getPath()));
-				codeElement.appendChild(pathElement);
-				
-				Element classNameElement = doc.createElement("FullClassName");
-				classNameElement.appendChild(doc.createTextNode(code.getFullClassName()));
-				codeElement.appendChild(classNameElement);
-				
-				Element contentFieldElement = doc.createElement("Content");
-				contentFieldElement.appendChild(doc.createTextNode(code.getSourceCodeCorpus().getContent()));
-				codeElement.appendChild(contentFieldElement);
-				
+				writer.startElement("SourceCode");
+				writer.textElement("Path", code.getPath());
+				writer.textElement("FullClassName", code.getFullClassName());
+				writer.textElement("Content", code.getSourceCodeCorpus().getContent());
 				if (Property.USE_STRUCTURED_INFORMATION) {
-					Element classFieldElement = doc.createElement("ClassPart");
-					classFieldElement.appendChild(doc.createTextNode(code.getSourceCodeCorpus().getClassPart()));
-					codeElement.appendChild(classFieldElement);
-					
-					Element variableFieldElement = doc.createElement("VariablePart");
-					variableFieldElement.appendChild(doc.createTextNode(code.getSourceCodeCorpus().getVariablePart()));
-					codeElement.appendChild(variableFieldElement);
-					
-					Element methodFieldElement = doc.createElement("MethodPart");
-					methodFieldElement.appendChild(doc.createTextNode(code.getSourceCodeCorpus().getMethodPart()));
-					codeElement.appendChild(methodFieldElement);
-					
-					Element commentElement = doc.createElement("CommentPart");
-					commentElement.appendChild(doc.createTextNode(code.getSourceCodeCorpus().getCommentPart()));
-					codeElement.appendChild(commentElement);
+					writer.textElement("ClassPart", code.getSourceCodeCorpus().getClassPart());
+					writer.textElement("VariablePart", code.getSourceCodeCorpus().getVariablePart());
+					writer.textElement("MethodPart", code.getSourceCodeCorpus().getMethodPart());
+					writer.textElement("CommentPart", code.getSourceCodeCorpus().getCommentPart());
 				}
-				
-				Element methodsElement = doc.createElement("Methods");
-				codeElement.appendChild(methodsElement);
+				writer.startElement("Methods");
 				for (Method method : code.getMethodList()) {
-					Element methodElement = doc.createElement("Method");
-					
-					Element nameElement = doc.createElement("Name");
-					nameElement.appendChild(doc.createTextNode(method.getName()));
-					methodElement.appendChild(nameElement);
-					
-					Element returnTypeElement = doc.createElement("ReturnType");
-					returnTypeElement.appendChild(doc.createTextNode(method.getReturnType()));
-					methodElement.appendChild(returnTypeElement);
-					
-					Element paramsElement = doc.createElement("Parameters");
-					paramsElement.appendChild(doc.createTextNode(method.getParams()));
-					methodElement.appendChild(paramsElement);
-					
-					Element methodContentElement = doc.createElement("MethodContent");
-					methodContentElement.appendChild(doc.createTextNode(method.getContent()));
-					methodElement.appendChild(methodContentElement);
-					
-					// add method element to code element
-					methodsElement.appendChild(methodElement);
+					writer.startElement("Method");
+					writer.textElement("Name", method.getName());
+					writer.textElement("ReturnType", method.getReturnType());
+					writer.textElement("Parameters", method.getParams());
+					writer.textElement("MethodContent", method.getContent());
+					writer.endElement();
 				}
-				root.appendChild(codeElement);
+				writer.endElement();
+				writer.endElement();
 			}
-			doc.setXmlStandalone(true);
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-			DOMSource source = new DOMSource(doc);
-			StreamResult result = new StreamResult(new File(output));
-			transformer.transform(source, result);
+			writer.endElement();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
 	}
 	
+	/** save source code repository with binary segment format to output path */
+	public void saveSourceCodeRepoToBinary(String output, String product) {
+		logger.info("Saving source code repository as binary to " + output + "...");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(output), BINARY_BUFFER_SIZE))) {
+			SourceCodeBinaryFormat.writeHeader(out, useStructuredInformation, product, version);
+			SourceCodeBinaryFormat.writeSourceCodes(out, sourceCodeMap, useStructuredInformation);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * load source code repository from binary file saved by saveSourceCodeRepoToBinary, the file is ignored if
+	 * it does not exist, current commit version is unknown, or it was saved for another product, commit
+	 * version or structured setting
+	 * @return true if loaded successfully
+	 */
+	public boolean loadSourceCodeRepoFromBinary(String binaryPath, String product) {
+		if (binaryPath == null || !new File(binaryPath).exists())
+			return false;
+		if (version == null) {
+			logger.info("Commit version of source code dir is unknown, binary file " + binaryPath + " ignored.");
+			return false;
+		}
+		logger.info("Loading source code repository from binary file " + binaryPath + "...");
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(binaryPath), BINARY_BUFFER_SIZE))) {
+			String savedVersion = SourceCodeBinaryFormat.readHeader(in, useStructuredInformation, product);
+			if (!version.equals(savedVersion)) {
+				logger.info("Binary file was saved from version " + savedVersion + ", ignored.");
+				return false;
+			}
+			sourceCodeMap = SourceCodeBinaryFormat.readSourceCodes(in, useStructuredInformation);
+		} catch (IOException e) {
+			logger.info("Invalid binary file " + binaryPath + ": " + e.getMessage());
+			return false;
+		}
+		logger.info("Finished loading, total " + sourceCodeMap.size() + " java files.");
+		return true;
+	}
+	
 	/** read sourceCode repository by parsing xml */
 	public HashMap<String, SourceCode> parseXMLOfSourceCodeRepo(String xmlPath) {
 		logger.info("Loading source code repository by parsing xml...");
@@ -521,8 +686,9 @@ public class SourceCodeRepository {
 		DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
 		try {
 			DocumentBuilder domBuilder = domFactory.newDocumentBuilder();
-			InputStream is = new FileInputStream(xmlPath);
+			InputStream is = FileUtil.openInputStream(new File(xmlPath));
 			Document doc = domBuilder.parse(is);
+			is.close();
 			Element root = doc.getDocumentElement();
 			NodeList sourceCodeNodeList = root.getChildNodes();
 			if (sourceCodeNodeList != null) {
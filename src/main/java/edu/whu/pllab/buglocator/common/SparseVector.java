@@ -0,0 +1,145 @@
+package edu.whu.pllab.buglocator.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+/**
+ * Compact token weight vector, term ids from TermDictionary sorted in increasing order with their weights,
+ * replacing HashMap of String and TokenScore for bug reports, source code files and methods.
+ */
+public class SparseVector {
+
+	public static final SparseVector EMPTY = new SparseVector(new int[0], new double[0]);
+
+	/** term ids in increasing order */
+	private final int[] termIds;
+
+	/** token weights, in the same order of termIds */
+	private final double[] weights;
+
+	/** termIds must be sorted in increasing order */
+	public SparseVector(int[] termIds, double[] weights) {
+		this.termIds = termIds;
+		this.weights = weights;
+	}
+
+	/** build sparse vector from tokens map, terms are added to global TermDictionary */
+	public SparseVector(HashMap<String, TokenScore> tokens) {
+		TermDictionary dictionary = TermDictionary.getInstance();
+		long[] entries = new long[tokens.size()];
+		double[] tokenWeights = new double[tokens.size()];
+		int index = 0;
+		// pack term id and original position to sort term ids along with weights
+		for (Entry<String, TokenScore> entry : tokens.entrySet()) {
+			entries[index] = ((long) dictionary.addTerm(entry.getKey()) << 32) | index;
+			tokenWeights[index] = entry.getValue().getTokenWeight();
+			index++;
+		}
+		Arrays.sort(entries);
+		termIds = new int[entries.length];
+		weights = new double[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			termIds[i] = (int) (entries[i] >>> 32);
+			weights[i] = tokenWeights[(int) entries[i]];
+		}
+	}
+
+	/** vector of the same term ids with given weights, term ids array is shared */
+	public SparseVector withWeights(double[] weights) {
+		return new SparseVector(termIds, weights);
+	}
+
+	/** number of non-zero entries */
+	public int size() {
+		return termIds.length;
+	}
+
+	public boolean isEmpty() {
+		return termIds.length == 0;
+	}
+
+	public int getTermId(int index) {
+		return termIds[index];
+	}
+
+	public double getWeight(int index) {
+		return weights[index];
+	}
+
+	/** term of the entry at given index */
+	public String getTerm(int index) {
+		return TermDictionary.getInstance().getTerm(termIds[index]);
+	}
+
+	/** position of given term id, negative if not exist */
+	public int indexOf(int termId) {
+		return Arrays.binarySearch(termIds, termId);
+	}
+
+	public boolean contains(String term) {
+		int termId = TermDictionary.getInstance().getTermId(term);
+		return termId >= 0 && indexOf(termId) >= 0;
+	}
+
+	/** weight of given term id, 0 if not exist */
+	public double weightOf(int termId) {
+		int index = indexOf(termId);
+		return index < 0 ? 0.0 : weights[index];
+	}
+
+	/** dot product with other vector by merging sorted term ids */
+	public double dot(SparseVector other) {
+		double sum = 0.0;
+		int i = 0, j = 0;
+		int[] otherTermIds = other.termIds;
+		while (i < termIds.length && j < otherTermIds.length) {
+			if (termIds[i] < otherTermIds[j])
+				i++;
+			else if (termIds[i] > otherTermIds[j])
+				j++;
+			else {
+				sum += weights[i] * other.weights[j];
+				i++;
+				j++;
+			}
+		}
+		return sum;
+	}
+
+	/** number of terms shared with other vector */
+	public int intersectionSize(SparseVector other) {
+		int count = 0;
+		int i = 0, j = 0;
+		int[] otherTermIds = other.termIds;
+		while (i < termIds.length && j < otherTermIds.length) {
+			if (termIds[i] < otherTermIds[j])
+				i++;
+			else if (termIds[i] > otherTermIds[j])
+				j++;
+			else {
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	/** sum of all weights */
+	public double weightSum() {
+		double sum = 0.0;
+		for (double weight : weights)
+			sum += weight;
+		return sum;
+	}
+
+	/** sum of squared weights */
+	public double squaredWeightSum() {
+		double sum = 0.0;
+		for (double weight : weights)
+			sum += weight * weight;
+		return sum;
+	}
+
+}
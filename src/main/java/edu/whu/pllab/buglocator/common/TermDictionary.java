@@ -0,0 +1,118 @@
+package edu.whu.pllab.buglocator.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Global dictionary mapping stemmed tokens to dense int term ids, so that token vectors of bug reports,
+ * source code files and methods only keep term ids instead of their own String keys.
+ */
+public class TermDictionary {
+
+	private static final Logger logger = LoggerFactory.getLogger(TermDictionary.class);
+
+	private static volatile TermDictionary instance = new TermDictionary();
+
+	/** map term to term id */
+	private ConcurrentHashMap<String, Integer> termIds;
+
+	/** terms indexed by term id */
+	private volatile String[] terms;
+
+	private int size;
+
+	public TermDictionary() {
+		termIds = new ConcurrentHashMap<String, Integer>();
+		terms = new String[1024];
+		size = 0;
+	}
+
+	/** global term dictionary shared by all vectorizers and corpora of current product */
+	public static TermDictionary getInstance() {
+		return instance;
+	}
+
+	/**
+	 * replace global term dictionary by a new one of a product, loaded from given file if it exists, so that
+	 * term ids are the same as previous run of the product and no terms of other products are kept. Must be
+	 * called before any term of the product is added, otherwise the ids assigned before would be invalid
+	 */
+	public static TermDictionary loadInstance(String path) {
+		TermDictionary dictionary = new TermDictionary();
+		File file = new File(path);
+		if (file.exists()) {
+			logger.info("Loading term dictionary from " + path + "...");
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				int size = in.readInt();
+				for (int i = 0; i < size; i++)
+					dictionary.addTerm(in.readUTF());
+			} catch (IOException e) {
+				e.printStackTrace();
+				dictionary = new TermDictionary();
+			}
+		}
+		instance = dictionary;
+		return instance;
+	}
+
+	/** save terms in term id order to given file */
+	public synchronized void save(String path) {
+		logger.info("Saving term dictionary to " + path + "...");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+			out.writeInt(size);
+			for (int termId = 0; termId < size; termId++)
+				out.writeUTF(terms[termId]);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** return term id of given term, assign a new id if term does not exist */
+	public int addTerm(String term) {
+		Integer termId = termIds.get(term);
+		if (termId != null)
+			return termId;
+		synchronized (this) {
+			termId = termIds.get(term);
+			if (termId != null)
+				return termId;
+			if (size == terms.length)
+				terms = Arrays.copyOf(terms, size * 2);
+			terms[size] = term;
+			termIds.put(term, size);
+			return size++;
+		}
+	}
+
+	/** return term id of given term, -1 if term does not exist */
+	public int getTermId(String term) {
+		Integer termId = termIds.get(term);
+		return termId == null ? -1 : termId;
+	}
+
+	/** return term of given term id */
+	public String getTerm(int termId) {
+		return terms[termId];
+	}
+
+	public boolean containsTerm(String term) {
+		return termIds.containsKey(term);
+	}
+
+	/** number of terms in dictionary */
+	public int size() {
+		return termIds.size();
+	}
+
+}
@@ -2,11 +2,10 @@ package edu.whu.pllab.buglocator.evaluation;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +13,8 @@ import org.slf4j.LoggerFactory;
 import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.common.BugReport;
 import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
 
 public class Evaluator {
 
@@ -62,24 +63,17 @@ public class Evaluator {
 		} catch (Exception e) {
 			e.printStackTrace();
 		} 
-		
-		// rank predictions
-		logger.info("Ranking predictions result by integratedScore...");
-		for (Entry<BugReport, List<IntegratedScore>> entry : testIntegratedScores.entrySet()) {
-			entry.getValue().sort(new IntegratedScore.IntegratedScoreComparator());
-		}
+		// predictions are ranked by integratedScore when evaluating, no need to sort
 	}
 	
 	public void evaluate() {
 		logger.info("Evaluating...");
-		ExecutorService executor = Executors.newFixedThreadPool(Property.THREAD_COUNT);
+		Stage executor = Scheduler.newStage("Evaluation");
 		for (Entry<BugReport, List<IntegratedScore>> entry : testIntegratedScores.entrySet()) {
 			Runnable worker = new WorkerThread(entry.getKey(), entry.getValue());
 			executor.execute(worker);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
-		}
+		executor.join();
 		
 		int testDataSize = testIntegratedScores.size();
 		// catculate topNRate, MRR, MAP
@@ -103,6 +97,9 @@ public class Evaluator {
 		private BugReport bugReport;
 		private List<IntegratedScore> integratedScores;
 		
+		/** ranks of fixed files in increasing order */
+		private int[] fixedFileRanks;
+		
 		public WorkerThread(BugReport bugReport, List<IntegratedScore> integratedScores) {
 			this.bugReport = bugReport;
 			this.integratedScores = integratedScores;
@@ -110,66 +107,67 @@ public class Evaluator {
 		
 		@Override
 		public void run() {
+			rankFixedFiles();
 			calculateTopN();
 			calculateMRR();
 			calulateMAP();
 		}
 		
+		/**
+		 * rank fixed files by integratedScore, the same ranks as stable sorting integratedScores with
+		 * IntegratedScoreComparator, so sorted or unsorted integratedScores are both accepted
+		 */
+		private void rankFixedFiles() {
+			double[] scores = new double[integratedScores.size()];
+			int[] fixedIndices = new int[integratedScores.size()];
+			int fixedCount = 0;
+			int i = 0;
+			for (IntegratedScore integratedScore : integratedScores) {
+				scores[i] = integratedScore.getIntegratedScore();
+				if (bugReport.isModified(integratedScore.getPath()))
+					fixedIndices[fixedCount++] = i;
+				i++;
+			}
+			fixedFileRanks = TopKCollector.ranks(scores, Arrays.copyOf(fixedIndices, fixedCount));
+		}
+		
 		/** for n in N, calculate accuracy@n(top@n) */
 		private void calculateTopN() {
-			for (int i = 0; i < integratedScores.size(); i++) {
-				if (i >= N[N.length - 1])
-					break;
-				IntegratedScore integratedScore = integratedScores.get(i);
-				if (bugReport.isModified(integratedScore.getPath())) {
-					synchronized (topN) {
-						for (int j = 0; j < N.length; j++) {
-							int n = N[j];
-							if (i < n) {
-								for (int k = j; k < N.length; k++) {
-									topN[k]++;
-								}
-								break;
-							}
+			if (fixedFileRanks.length == 0 || fixedFileRanks[0] >= N[N.length - 1])
+				return;
+			int firstRank = fixedFileRanks[0];
+			synchronized (topN) {
+				for (int j = 0; j < N.length; j++) {
+					int n = N[j];
+					if (firstRank < n) {
+						for (int k = j; k < N.length; k++) {
+							topN[k]++;
 						}
+						break;
 					}
-					break;
 				}
 			}
 		}
 		
 		/** calculate sum Of Reciprocal Rank */
 		private void calculateMRR() {
-			for (int i = 0; i < integratedScores.size(); i++) {
-				IntegratedScore integratedScore = integratedScores.get(i);
-				if (bugReport.isModified(integratedScore.getPath())) {
-					synchronized(sumOfRR) {
-						sumOfRR += (1.0 / (i + 1));
-					}
-					break;
-				}
+			if (fixedFileRanks.length == 0)
+				return;
+			synchronized(sumOfRR) {
+				sumOfRR += (1.0 / (fixedFileRanks[0] + 1));
 			}
 		}
 		
 		/** calculate sumOf Average Precision */
 		private void calulateMAP() {
 			double AP = 0.0;
-			int numberOfPositiveInstances = 0;
-			for (int i = 0; i < integratedScores.size(); i++) {
-				IntegratedScore integratedScore = integratedScores.get(i);
-				if (bugReport.isModified(integratedScore.getPath())) {
-					numberOfPositiveInstances++;
-				}
-			}
+			int numberOfPositiveInstances = fixedFileRanks.length;
 			int numberOfFixedFiles = 0;
 			double precision = 0.0;
-			for (int i = 0; i < integratedScores.size(); i++) {
-				IntegratedScore integratedScore = integratedScores.get(i);
-				if (bugReport.isModified(integratedScore.getPath())) {
-					numberOfFixedFiles++;
-					precision = ((double) numberOfFixedFiles) / (i + 1);
-					AP += (precision / numberOfPositiveInstances);
-				}
+			for (int rank : fixedFileRanks) {
+				numberOfFixedFiles++;
+				precision = ((double) numberOfFixedFiles) / (rank + 1);
+				AP += (precision / numberOfPositiveInstances);
 			}
 			synchronized(sumOfAP) {
 				sumOfAP += AP;
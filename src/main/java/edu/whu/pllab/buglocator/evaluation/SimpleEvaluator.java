@@ -4,14 +4,14 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
 
 public class SimpleEvaluator {
 	
@@ -116,14 +116,12 @@ public class SimpleEvaluator {
 			loadPredictionsResult();
 		}
 		logger.info("Evaluating...");
-		ExecutorService executor = Executors.newFixedThreadPool(Property.THREAD_COUNT);
+		Stage executor = Scheduler.newStage("Evaluation");
 		for (List<IntegratedScore> integratedScoreList : intergratedScores) {
 			Runnable worker = new WorkerThread(integratedScoreList);
 			executor.execute(worker);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
-		}
+		executor.join();
 		
 		int testDataSize = intergratedScores.size();
 		// catculate topNRate, MRR, MAP
@@ -0,0 +1,187 @@
+package edu.whu.pllab.buglocator.evaluation;
+
+import java.util.Arrays;
+
+/**
+ * Bounded collector keeping the k highest scored ids of a stream of (id, score) in a min-heap, instead of
+ * sorting the whole list. Ties keep the order in which they were collected, so the result is the same as
+ * the first k elements of a stable descending sort, e.g. List.sort with IntegratedScoreComparator.
+ */
+public class TopKCollector {
+
+	private final int k;
+
+	/** heap of collected entries, the worst entry at root */
+	private int[] heapIds;
+	private double[] heapScores;
+	private int[] heapSeqs;
+	private int size;
+
+	/** number of collected entries, used as tie-breaking sequence */
+	private int count;
+
+	public TopKCollector(int k) {
+		this.k = k;
+		int capacity = Math.max(k, 0);
+		heapIds = new int[capacity];
+		heapScores = new double[capacity];
+		heapSeqs = new int[capacity];
+		size = 0;
+		count = 0;
+	}
+
+	/** collect an id with its score */
+	public void collect(int id, double score) {
+		collect(id, score, count);
+	}
+
+	/**
+	 * collect an id with its score, ties are ordered by given tieOrder instead of collecting order, so ids
+	 * may be collected in any order
+	 */
+	public void collect(int id, double score, int tieOrder) {
+		count++;
+		if (size < k) {
+			heapIds[size] = id;
+			heapScores[size] = score;
+			heapSeqs[size] = tieOrder;
+			siftUp(size++);
+		} else if (k > 0 && isWorse(heapScores[0], heapSeqs[0], score, tieOrder)) {
+			heapIds[0] = id;
+			heapScores[0] = score;
+			heapSeqs[0] = tieOrder;
+			siftDown(0);
+		}
+	}
+
+	/** collect all scores, using array index as id */
+	public void collectAll(double[] scores) {
+		for (int i = 0; i < scores.length; i++)
+			collect(i, scores[i]);
+	}
+
+	/** collected top ids in descending order of score */
+	public int[] topIds() {
+		int[] ids = Arrays.copyOf(heapIds, size);
+		double[] scores = Arrays.copyOf(heapScores, size);
+		int[] seqs = Arrays.copyOf(heapSeqs, size);
+		int[] result = new int[size];
+		// pop worst entry to the end of result
+		for (int n = size; n > 0; n--) {
+			result[n - 1] = ids[0];
+			ids[0] = ids[n - 1];
+			scores[0] = scores[n - 1];
+			seqs[0] = seqs[n - 1];
+			siftDown(ids, scores, seqs, 0, n - 1);
+		}
+		return result;
+	}
+
+	/** collected top scores in descending order, in the same order of topIds() */
+	public double[] topScores() {
+		int[] ids = Arrays.copyOf(heapIds, size);
+		double[] scores = Arrays.copyOf(heapScores, size);
+		int[] seqs = Arrays.copyOf(heapSeqs, size);
+		double[] result = new double[size];
+		for (int n = size; n > 0; n--) {
+			result[n - 1] = scores[0];
+			ids[0] = ids[n - 1];
+			scores[0] = scores[n - 1];
+			seqs[0] = seqs[n - 1];
+			siftDown(ids, scores, seqs, 0, n - 1);
+		}
+		return result;
+	}
+
+	/** whether k entries are kept, so a new entry must beat threshold() to be kept */
+	public boolean isFull() {
+		return size >= k;
+	}
+
+	/** score of the worst kept entry if full, otherwise negative infinity */
+	public double threshold() {
+		return isFull() && size > 0 ? heapScores[0] : Double.NEGATIVE_INFINITY;
+	}
+
+	/** number of collected entries kept */
+	public int size() {
+		return size;
+	}
+
+	/** whether entry (score1, seq1) ranks after entry (score2, seq2) */
+	private static boolean isWorse(double score1, int seq1, double score2, int seq2) {
+		if (score1 < score2)
+			return true;
+		if (score1 > score2)
+			return false;
+		return seq1 > seq2;
+	}
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (!isWorse(heapScores[index], heapSeqs[index], heapScores[parent], heapSeqs[parent]))
+				break;
+			swap(heapIds, heapScores, heapSeqs, index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index) {
+		siftDown(heapIds, heapScores, heapSeqs, index, size);
+	}
+
+	private static void siftDown(int[] ids, double[] scores, int[] seqs, int index, int size) {
+		while (true) {
+			int left = 2 * index + 1;
+			if (left >= size)
+				break;
+			int worst = left;
+			int right = left + 1;
+			if (right < size && isWorse(scores[right], seqs[right], scores[left], seqs[left]))
+				worst = right;
+			if (!isWorse(scores[worst], seqs[worst], scores[index], seqs[index]))
+				break;
+			swap(ids, scores, seqs, index, worst);
+			index = worst;
+		}
+	}
+
+	private static void swap(int[] ids, double[] scores, int[] seqs, int i, int j) {
+		int id = ids[i];
+		ids[i] = ids[j];
+		ids[j] = id;
+		double score = scores[i];
+		scores[i] = scores[j];
+		scores[j] = score;
+		int seq = seqs[i];
+		seqs[i] = seqs[j];
+		seqs[j] = seq;
+	}
+
+	/**
+	 * 0-based rank of scores[index] in a stable descending sort of scores, without sorting
+	 */
+	public static int rank(double[] scores, int index) {
+		double score = scores[index];
+		int rank = 0;
+		for (int i = 0; i < scores.length; i++) {
+			if (scores[i] > score || (i < index && !(scores[i] < score)))
+				rank++;
+		}
+		return rank;
+	}
+
+	/**
+	 * 0-based ranks of given indices in a stable descending sort of scores, e.g. ranks of the fixed files of
+	 * a bug report, in increasing order
+	 */
+	public static int[] ranks(double[] scores, int[] indices) {
+		int[] ranks = new int[indices.length];
+		for (int i = 0; i < indices.length; i++)
+			ranks[i] = rank(scores, indices[i]);
+		Arrays.sort(ranks);
+		return ranks;
+	}
+
+}
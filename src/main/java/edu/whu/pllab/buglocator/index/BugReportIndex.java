@@ -0,0 +1,255 @@
+package edu.whu.pllab.buglocator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.whu.pllab.buglocator.common.BugReport;
+import edu.whu.pllab.buglocator.common.BugReportCorpus;
+import edu.whu.pllab.buglocator.common.SimilarBugReport;
+import edu.whu.pllab.buglocator.common.SparseVector;
+import edu.whu.pllab.buglocator.evaluation.TopKCollector;
+
+/**
+ * Postings-list inverted index over the content tokens of bug reports, for finding similar bug reports and
+ * collaborative filtering scores without comparing a query with every indexed report. Scores are accumulated
+ * term-at-a-time in increasing term id order, so they are the same as Similarity.vsmSimilarity(BugReport,
+ * BugReport). Reports can be added as they arrive, the position of adding is used as document id. Token
+ * weights must be calculated before a report is added.
+ */
+public class BugReportIndex {
+
+	/** fixed files of a similar report first encountered in document order contribute 0, as BugLocator does */
+	public static final int FIRST_IN_DOCUMENT_ORDER = 0;
+	/** fixed files of the most similar report contribute 0, as RankingModelGenerator does */
+	public static final int FIRST_IN_SIMILARITY_ORDER = 1;
+
+	/** indexed bug reports, the position in this list is used as document id */
+	private List<BugReport> documents;
+
+	/** map bug id to document id */
+	private HashMap<Integer, Integer> documentIds;
+
+	/** postings indexed by term id */
+	private Postings[] postingsArray;
+
+	/** content norm of each document */
+	private double[] norms;
+
+	/** first two documents fixing each file, -1 if there is none */
+	private HashMap<String, int[]> fileOwners;
+
+	public BugReportIndex() {
+		documents = new ArrayList<BugReport>();
+		documentIds = new HashMap<Integer, Integer>();
+		postingsArray = new Postings[0];
+		norms = new double[16];
+		fileOwners = new HashMap<String, int[]>();
+	}
+
+	/** index given bug reports in their iteration order */
+	public BugReportIndex(Collection<BugReport> bugReports) {
+		this();
+		for (BugReport bugReport : bugReports)
+			add(bugReport);
+	}
+
+	/** append a bug report to the index */
+	public void add(BugReport bugReport) {
+		int doc = documents.size();
+		documents.add(bugReport);
+		documentIds.put(bugReport.getBugID(), doc);
+		BugReportCorpus corpus = bugReport.getBugReportCorpus();
+		if (doc == norms.length)
+			norms = Arrays.copyOf(norms, doc * 2);
+		norms[doc] = corpus.getContentNorm();
+		SparseVector tokens = corpus.getContentTokens();
+		for (int i = 0; i < tokens.size(); i++) {
+			int termId = tokens.getTermId(i);
+			if (termId >= postingsArray.length)
+				postingsArray = Arrays.copyOf(postingsArray, Math.max(termId + 1, postingsArray.length * 2));
+			if (postingsArray[termId] == null)
+				postingsArray[termId] = new Postings();
+			postingsArray[termId].add(doc, tokens.getWeight(i));
+		}
+		for (String fixedFile : bugReport.getFixedFiles()) {
+			int[] owners = fileOwners.get(fixedFile);
+			if (owners == null)
+				fileOwners.put(fixedFile, new int[] { doc, -1 });
+			else if (owners[1] == -1)
+				owners[1] = doc;
+		}
+	}
+
+	/**
+	 * Vector Space Model similarity between given bug report and every indexed report
+	 * @return similarity array indexed by document id
+	 */
+	public double[] vsmScores(BugReport br) {
+		double[] scores = new double[documents.size()];
+		BugReportCorpus brCorpus = br.getBugReportCorpus();
+		double brNorm = brCorpus.getContentNorm();
+		if (brNorm == 0)
+			return scores;
+		SparseVector queryTokens = brCorpus.getContentTokens();
+		for (int t = 0; t < queryTokens.size(); t++) {
+			int termId = queryTokens.getTermId(t);
+			if (termId >= postingsArray.length || postingsArray[termId] == null)
+				continue;
+			Postings postings = postingsArray[termId];
+			double queryWeight = queryTokens.getWeight(t);
+			for (int i = 0; i < postings.size; i++)
+				scores[postings.docs[i]] += queryWeight * postings.weights[i];
+		}
+		for (int doc = 0; doc < scores.length; doc++) {
+			if (norms[doc] == 0)
+				scores[doc] = 0.0;
+			else if (scores[doc] != 0)
+				scores[doc] = scores[doc] / (brNorm * norms[doc]);
+		}
+		return scores;
+	}
+
+	/**
+	 * top k reports most similar to given bug report, the report itself excluded, ties in document order
+	 * @return collector of top document ids and scores
+	 */
+	public TopKCollector topSimilar(BugReport br, int k) {
+		TopKCollector collector = new TopKCollector(k);
+		double[] scores = vsmScores(br);
+		int self = getDocumentId(br.getBugID());
+		for (int doc = 0; doc < scores.length; doc++) {
+			if (doc != self)
+				collector.collect(doc, scores[doc], doc);
+		}
+		return collector;
+	}
+
+	/** top k similar reports of given bug report as SimilarBugReport, in decreasing similarity */
+	public List<SimilarBugReport> getSimilarBugReports(BugReport br, int k) {
+		TopKCollector collector = topSimilar(br, k);
+		int[] ids = collector.topIds();
+		double[] scores = collector.topScores();
+		List<SimilarBugReport> similarBugReports = new ArrayList<SimilarBugReport>(ids.length);
+		for (int i = 0; i < ids.length; i++)
+			similarBugReports.add(new SimilarBugReport(documents.get(ids[i]), scores[i]));
+		return similarBugReports;
+	}
+
+	/**
+	 * collaborative filtering score of each file fixed by reports similar to given bug report, sum of
+	 * similarity divided by number of fixed files of each similar report, the report itself excluded. As the
+	 * former all pairs scan, a file's score skips the report where the file is first encountered, either in
+	 * document order or in decreasing similarity order. Files of reports sharing no term with given report
+	 * would score 0 and are left out
+	 */
+	public HashMap<String, Double> simiScores(BugReport br, int encounterOrder) {
+		double[] scores = vsmScores(br);
+		int self = getDocumentId(br.getBugID());
+		int count = 0;
+		for (int doc = 0; doc < scores.length; doc++) {
+			if (doc != self && scores[doc] != 0)
+				count++;
+		}
+		int[] docs = new int[count];
+		double[] similarities = new double[count];
+		count = 0;
+		for (int doc = 0; doc < scores.length; doc++) {
+			if (doc != self && scores[doc] != 0) {
+				docs[count] = doc;
+				similarities[count] = scores[doc];
+				count++;
+			}
+		}
+		return simiScores(self, docs, similarities, encounterOrder);
+	}
+
+	/**
+	 * collaborative filtering score of each file from similarities already computed, e.g. a row of
+	 * CSRMatrix.cosineProduct
+	 * @param self document id of the bug report, -1 if it is not indexed
+	 * @param docs documents with non zero similarity in increasing order, the report itself excluded
+	 * @param similarities similarity of each document
+	 */
+	public HashMap<String, Double> simiScores(int self, int[] docs, double[] similarities, int encounterOrder) {
+		HashMap<String, Double> simiScoreMap = new HashMap<String, Double>();
+		Integer[] order = new Integer[docs.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		if (encounterOrder == FIRST_IN_SIMILARITY_ORDER) {
+			final double[] values = similarities;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i1, Integer i2) {
+					return Double.compare(values[i2], values[i1]);
+				}
+			});
+		}
+		for (int i : order) {
+			int doc = docs[i];
+			BugReport similarReport = documents.get(doc);
+			double contribution = similarities[i] / similarReport.getFixedFiles().size();
+			for (String fixedFile : similarReport.getFixedFiles()) {
+				Double score = simiScoreMap.get(fixedFile);
+				if (encounterOrder == FIRST_IN_DOCUMENT_ORDER) {
+					if (doc == firstOwner(fixedFile, self))
+						score = score == null ? 0.0 : score;
+					else
+						score = (score == null ? 0.0 : score) + contribution;
+				} else
+					score = score == null ? 0.0 : score + contribution;
+				simiScoreMap.put(fixedFile, score);
+			}
+		}
+		return simiScoreMap;
+	}
+
+	/** first document fixing given file except given document */
+	private int firstOwner(String fixedFile, int except) {
+		int[] owners = fileOwners.get(fixedFile);
+		return owners[0] != except ? owners[0] : owners[1];
+	}
+
+	/** number of indexed reports */
+	public int size() {
+		return documents.size();
+	}
+
+	public BugReport getDocument(int doc) {
+		return documents.get(doc);
+	}
+
+	/** indexed bug reports in document id order */
+	public List<BugReport> getDocuments() {
+		return Collections.unmodifiableList(documents);
+	}
+
+	/** document id of given bug id, -1 if not indexed */
+	public int getDocumentId(int bugID) {
+		Integer doc = documentIds.get(bugID);
+		return doc == null ? -1 : doc;
+	}
+
+	/** documents and weights of a term, in increasing document id order */
+	private static class Postings {
+
+		private int[] docs = new int[4];
+		private double[] weights = new double[4];
+		private int size = 0;
+
+		private void add(int doc, double weight) {
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			docs[size] = doc;
+			weights[size] = weight;
+			size++;
+		}
+	}
+
+}
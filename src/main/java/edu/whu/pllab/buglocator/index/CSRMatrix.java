@@ -0,0 +1,414 @@
+package edu.whu.pllab.buglocator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.whu.pllab.buglocator.Property;
+import edu.whu.pllab.buglocator.common.BugReport;
+import edu.whu.pllab.buglocator.common.BugReportCorpus;
+import edu.whu.pllab.buglocator.common.SourceCode;
+import edu.whu.pllab.buglocator.common.SourceCodeCorpus;
+import edu.whu.pllab.buglocator.common.SparseVector;
+import edu.whu.pllab.buglocator.evaluation.TopKCollector;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
+
+/**
+ * Sparse matrix in compressed sparse row format, each row is the weighted token vector of a document and each
+ * column a term id, with the norm of each row kept for cosine similarity. Similarities between all rows of two
+ * matrices are computed by a cache blocked sparse product with the transposed matrix: rows are split into
+ * blocks handled by worker threads, and the columns of the product into blocks whose accumulators stay in
+ * cache while the postings of the block's terms are walked. Each cell is accumulated over terms in increasing
+ * term id order, so similarities are the same as SparseVector.dot divided by the norms.
+ */
+public class CSRMatrix {
+
+	private static final Logger logger = LoggerFactory.getLogger(CSRMatrix.class);
+
+	public static final int CONTENT_FIELD = 0;
+	public static final int SUMMARY_FIELD = 1;
+	public static final int DESCRIPTION_FIELD = 2;
+
+	/** rows handled together, sharing the postings walked for a column block */
+	private static final int ROW_BLOCK_SIZE = 16;
+
+	/** product columns accumulated together, accumulators of a block take 256KB to stay in cache */
+	private static final int COLUMN_BLOCK_SIZE = 2048;
+
+	private final int numRows;
+	private final int numColumns;
+
+	/** row i is stored in [rowPointers[i], rowPointers[i + 1]) of columnIndices and values */
+	private final int[] rowPointers;
+	private final int[] columnIndices;
+	private final double[] values;
+
+	/** norm of each row */
+	private final double[] norms;
+
+	/** handles rows of a product, called by worker threads concurrently */
+	public interface RowHandler {
+		/**
+		 * @param row row of the product, i.e. row of the left matrix
+		 * @param columns columns with non zero similarity, in increasing order, or in decreasing similarity if
+		 *            only top k columns are kept
+		 * @param similarities similarity of each column
+		 */
+		void handle(int row, int[] columns, double[] similarities);
+	}
+
+	private CSRMatrix(int numRows, int numColumns, int[] rowPointers, int[] columnIndices, double[] values,
+			double[] norms) {
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.rowPointers = rowPointers;
+		this.columnIndices = columnIndices;
+		this.values = values;
+		this.norms = norms;
+	}
+
+	/**
+	 * matrix of given token vectors and their norms, term ids of each vector must be sorted, a null vector is
+	 * an empty row
+	 */
+	public CSRMatrix(List<SparseVector> rows, double[] norms) {
+		numRows = rows.size();
+		rowPointers = new int[numRows + 1];
+		for (int i = 0; i < numRows; i++)
+			rowPointers[i + 1] = rowPointers[i] + (rows.get(i) == null ? 0 : rows.get(i).size());
+		columnIndices = new int[rowPointers[numRows]];
+		values = new double[rowPointers[numRows]];
+		int maxColumn = -1;
+		for (int i = 0; i < numRows; i++) {
+			SparseVector row = rows.get(i);
+			if (row == null)
+				continue;
+			int offset = rowPointers[i];
+			for (int j = 0; j < row.size(); j++) {
+				columnIndices[offset + j] = row.getTermId(j);
+				values[offset + j] = row.getWeight(j);
+				maxColumn = Math.max(maxColumn, row.getTermId(j));
+			}
+		}
+		numColumns = maxColumn + 1;
+		this.norms = norms;
+	}
+
+	/** matrix of content token vectors of given bug reports, in the order of given list */
+	public static CSRMatrix ofBugReports(List<BugReport> bugReports) {
+		return ofBugReports(bugReports, CONTENT_FIELD);
+	}
+
+	/** matrix of given field of bug reports, one of CONTENT_FIELD, SUMMARY_FIELD and DESCRIPTION_FIELD */
+	public static CSRMatrix ofBugReports(List<BugReport> bugReports, int field) {
+		List<SparseVector> rows = new ArrayList<SparseVector>(bugReports.size());
+		double[] norms = new double[bugReports.size()];
+		for (int i = 0; i < bugReports.size(); i++) {
+			BugReportCorpus corpus = bugReports.get(i).getBugReportCorpus();
+			switch (field) {
+			case CONTENT_FIELD:
+				rows.add(corpus.getContentTokens());
+				norms[i] = corpus.getContentNorm();
+				break;
+			case SUMMARY_FIELD:
+				rows.add(corpus.getSummaryTokens());
+				norms[i] = corpus.getSummaryNorm();
+				break;
+			case DESCRIPTION_FIELD:
+				rows.add(corpus.getDescriptionTokens());
+				norms[i] = corpus.getDescriptionNorm();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown bug report field " + field);
+			}
+		}
+		return new CSRMatrix(rows, norms);
+	}
+
+	/** matrix of given field of source code files, one of the fields of InvertedIndex */
+	public static CSRMatrix ofSourceCodes(List<SourceCode> sourceCodes, int field) {
+		List<SparseVector> rows = new ArrayList<SparseVector>(sourceCodes.size());
+		double[] norms = new double[sourceCodes.size()];
+		for (int i = 0; i < sourceCodes.size(); i++) {
+			SourceCodeCorpus corpus = sourceCodes.get(i).getSourceCodeCorpus();
+			switch (field) {
+			case InvertedIndex.CONTENT_FIELD:
+				rows.add(corpus.getContentTokens());
+				norms[i] = corpus.getContentNorm();
+				break;
+			case InvertedIndex.CLASS_FIELD:
+				rows.add(corpus.getClassPartTokens());
+				norms[i] = corpus.getClassCorpusNorm();
+				break;
+			case InvertedIndex.METHOD_FIELD:
+				rows.add(corpus.getMethodPartTokens());
+				norms[i] = corpus.getMethodCorpusNorm();
+				break;
+			case InvertedIndex.VARIABLE_FIELD:
+				rows.add(corpus.getVariablePartTokens());
+				norms[i] = corpus.getVariableCorpusNorm();
+				break;
+			case InvertedIndex.COMMENT_FIELD:
+				rows.add(corpus.getCommentPartTokens());
+				norms[i] = corpus.getCommentCorpusNorm();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown source code field " + field);
+			}
+		}
+		return new CSRMatrix(rows, norms);
+	}
+
+	/** transposed matrix, entries of each row are in increasing column order, norms are not kept */
+	public CSRMatrix transpose() {
+		int[] tRowPointers = new int[numColumns + 1];
+		for (int p = 0; p < columnIndices.length; p++)
+			tRowPointers[columnIndices[p] + 1]++;
+		for (int i = 0; i < numColumns; i++)
+			tRowPointers[i + 1] += tRowPointers[i];
+		int[] tColumnIndices = new int[columnIndices.length];
+		double[] tValues = new double[values.length];
+		int[] next = new int[numColumns];
+		System.arraycopy(tRowPointers, 0, next, 0, numColumns);
+		for (int row = 0; row < numRows; row++) {
+			for (int p = rowPointers[row]; p < rowPointers[row + 1]; p++) {
+				int q = next[columnIndices[p]]++;
+				tColumnIndices[q] = row;
+				tValues[q] = values[p];
+			}
+		}
+		return new CSRMatrix(numColumns, numRows, tRowPointers, tColumnIndices, tValues, null);
+	}
+
+	/**
+	 * cosine similarity between each row of this matrix and each row of other matrix, i.e. the product with
+	 * the transposed other matrix divided by the norms, 0 if either norm is 0. Rows are passed to the handler
+	 * as soon as they are finished, so the whole product is never kept in memory.
+	 * @param topK number of most similar columns passed for each row, ties in increasing column order. If
+	 *            topK <= 0, all columns with non zero similarity are passed
+	 * @param skipDiagonal whether column i is left out of row i, used when multiplying a matrix with itself
+	 */
+	public void cosineProduct(CSRMatrix other, int topK, boolean skipDiagonal, RowHandler handler) {
+		sumProduct(new CSRMatrix[] { this }, new CSRMatrix[] { other }, true, topK, skipDiagonal, handler);
+	}
+
+	/**
+	 * sum of products of pairs of matrices, lefts[k] times transposed rights[k], e.g. the similarities between
+	 * each field of bug reports and each field of source code files. Pairs are added to each cell in the given
+	 * order, and a pair is left out of a cell if either row norm is 0, the same as summing field similarities
+	 * one by one.
+	 * @param normalize whether the product of each pair is divided by the row norms
+	 * @see #cosineProduct(CSRMatrix, int, boolean, RowHandler)
+	 */
+	public static void sumProduct(CSRMatrix[] lefts, CSRMatrix[] rights, boolean normalize, int topK,
+			boolean skipDiagonal, RowHandler handler) {
+		if (lefts.length == 0 || lefts.length != rights.length)
+			throw new IllegalArgumentException("Matrices should be given in pairs");
+		int numRows = lefts[0].numRows;
+		int width = rights[0].numRows;
+		CSRMatrix[] rightsTransposed = new CSRMatrix[rights.length];
+		for (int k = 0; k < lefts.length; k++) {
+			if (lefts[k].numRows != numRows || rights[k].numRows != width)
+				throw new IllegalArgumentException("Matrices of pair " + k + " have different rows");
+			rightsTransposed[k] = rights[k].transpose();
+		}
+		int blockCount = (numRows + ROW_BLOCK_SIZE - 1) / ROW_BLOCK_SIZE;
+		int workerCount = Math.max(1, Math.min(Property.THREAD_COUNT, blockCount));
+		logger.info("Multiplying " + numRows + " x " + width + " similarity matrix of " + lefts.length
+				+ " pairs by " + workerCount + " workers...");
+		Stage executor = Scheduler.newStage("Matrix product", workerCount);
+		for (int i = 0; i < workerCount; i++)
+			executor.execute(new ProductWorker(i, workerCount, lefts, rights, rightsTransposed, normalize, topK,
+					skipDiagonal, handler));
+		executor.join();
+	}
+
+	/** computes the row blocks whose index modulo worker count equals its index */
+	private static class ProductWorker implements Runnable {
+
+		private final int index;
+		private final int workerCount;
+		private final CSRMatrix[] lefts;
+		private final CSRMatrix[] rights;
+		private final CSRMatrix[] rightsTransposed;
+		private final boolean normalize;
+		private final int topK;
+		private final boolean skipDiagonal;
+		private final RowHandler handler;
+
+		private ProductWorker(int index, int workerCount, CSRMatrix[] lefts, CSRMatrix[] rights,
+				CSRMatrix[] rightsTransposed, boolean normalize, int topK, boolean skipDiagonal,
+				RowHandler handler) {
+			this.index = index;
+			this.workerCount = workerCount;
+			this.lefts = lefts;
+			this.rights = rights;
+			this.rightsTransposed = rightsTransposed;
+			this.normalize = normalize;
+			this.topK = topK;
+			this.skipDiagonal = skipDiagonal;
+			this.handler = handler;
+		}
+
+		@Override
+		public void run() {
+			int numRows = lefts[0].numRows;
+			int width = rights[0].numRows;
+			// accumulators of a pair and sums of all pairs of a row block and a column block, row major
+			double[] accumulators = new double[ROW_BLOCK_SIZE * COLUMN_BLOCK_SIZE];
+			double[] sums = new double[ROW_BLOCK_SIZE * COLUMN_BLOCK_SIZE];
+			// position in the postings of each entry of the row block, advanced column block by column block
+			int[][] cursors = new int[lefts.length][0];
+			RowResult[] results = new RowResult[ROW_BLOCK_SIZE];
+			for (int i = 0; i < ROW_BLOCK_SIZE; i++)
+				results[i] = new RowResult();
+			for (int rowStart = index * ROW_BLOCK_SIZE; rowStart < numRows; rowStart += workerCount
+					* ROW_BLOCK_SIZE) {
+				int rowEnd = Math.min(rowStart + ROW_BLOCK_SIZE, numRows);
+				for (int k = 0; k < lefts.length; k++)
+					cursors[k] = initCursors(lefts[k], rightsTransposed[k], rowStart, rowEnd, cursors[k]);
+				for (int row = rowStart; row < rowEnd; row++)
+					results[row - rowStart].reset(topK);
+				for (int columnStart = 0; columnStart < width; columnStart += COLUMN_BLOCK_SIZE) {
+					int columnEnd = Math.min(columnStart + COLUMN_BLOCK_SIZE, width);
+					for (int k = 0; k < lefts.length; k++) {
+						accumulate(lefts[k], rightsTransposed[k], cursors[k], accumulators, rowStart, rowEnd,
+								columnStart, columnEnd);
+						add(lefts[k], rights[k], accumulators, sums, rowStart, rowEnd, columnStart, columnEnd);
+					}
+					for (int row = rowStart; row < rowEnd; row++)
+						collect(row, results[row - rowStart], sums, (row - rowStart) * COLUMN_BLOCK_SIZE,
+								columnStart, columnEnd);
+				}
+				for (int row = rowStart; row < rowEnd; row++)
+					results[row - rowStart].emit(row, handler);
+			}
+		}
+
+		/** start of the postings of each entry of the row block */
+		private int[] initCursors(CSRMatrix left, CSRMatrix rightTransposed, int rowStart, int rowEnd,
+				int[] cursors) {
+			int entryStart = left.rowPointers[rowStart];
+			int entryEnd = left.rowPointers[rowEnd];
+			if (cursors.length < entryEnd - entryStart)
+				cursors = new int[Math.max(entryEnd - entryStart, cursors.length * 2)];
+			for (int p = entryStart; p < entryEnd; p++) {
+				int term = left.columnIndices[p];
+				cursors[p - entryStart] = term < rightTransposed.numRows ? rightTransposed.rowPointers[term] : 0;
+			}
+			return cursors;
+		}
+
+		/** accumulate products of a row block and a column block term by term */
+		private void accumulate(CSRMatrix left, CSRMatrix rightTransposed, int[] cursors, double[] accumulators,
+				int rowStart, int rowEnd, int columnStart, int columnEnd) {
+			int[] rowPointers = left.rowPointers;
+			int[] columnIndices = left.columnIndices;
+			double[] values = left.values;
+			int[] tRowPointers = rightTransposed.rowPointers;
+			int[] tColumnIndices = rightTransposed.columnIndices;
+			double[] tValues = rightTransposed.values;
+			int entryStart = rowPointers[rowStart];
+			for (int row = rowStart; row < rowEnd; row++) {
+				int base = (row - rowStart) * COLUMN_BLOCK_SIZE - columnStart;
+				for (int p = rowPointers[row]; p < rowPointers[row + 1]; p++) {
+					int term = columnIndices[p];
+					if (term >= rightTransposed.numRows)
+						continue;
+					double weight = values[p];
+					int q = cursors[p - entryStart];
+					int end = tRowPointers[term + 1];
+					while (q < end && tColumnIndices[q] < columnEnd) {
+						accumulators[base + tColumnIndices[q]] += weight * tValues[q];
+						q++;
+					}
+					cursors[p - entryStart] = q;
+				}
+			}
+		}
+
+		/** add accumulated products of a pair to the sums, and clear the accumulators */
+		private void add(CSRMatrix left, CSRMatrix right, double[] accumulators, double[] sums, int rowStart,
+				int rowEnd, int columnStart, int columnEnd) {
+			double[] rightNorms = right.norms;
+			for (int row = rowStart; row < rowEnd; row++) {
+				double leftNorm = left.norms[row];
+				int base = (row - rowStart) * COLUMN_BLOCK_SIZE - columnStart;
+				for (int column = columnStart; column < columnEnd; column++) {
+					double product = accumulators[base + column];
+					if (product == 0)
+						continue;
+					accumulators[base + column] = 0.0;
+					if (leftNorm == 0 || rightNorms[column] == 0)
+						continue;
+					if (normalize)
+						sums[base + column] += product / (leftNorm * rightNorms[column]);
+					else
+						sums[base + column] += product;
+				}
+			}
+		}
+
+		/** pass non zero sums of a row in a column block to its result, and clear them */
+		private void collect(int row, RowResult result, double[] sums, int base, int columnStart, int columnEnd) {
+			for (int column = columnStart; column < columnEnd; column++) {
+				int i = base + column - columnStart;
+				double sum = sums[i];
+				if (sum == 0)
+					continue;
+				sums[i] = 0.0;
+				if (skipDiagonal && column == row)
+					continue;
+				result.add(column, sum);
+			}
+		}
+	}
+
+	/** similarities of a row collected column block by column block */
+	private static class RowResult {
+
+		private int[] columns = new int[16];
+		private double[] similarities = new double[16];
+		private int size;
+		private TopKCollector collector;
+
+		private void reset(int topK) {
+			size = 0;
+			collector = topK > 0 ? new TopKCollector(topK) : null;
+		}
+
+		private void add(int column, double similarity) {
+			if (collector != null) {
+				collector.collect(column, similarity, column);
+				return;
+			}
+			if (size == columns.length) {
+				columns = Arrays.copyOf(columns, size * 2);
+				similarities = Arrays.copyOf(similarities, size * 2);
+			}
+			columns[size] = column;
+			similarities[size] = similarity;
+			size++;
+		}
+
+		private void emit(int row, RowHandler handler) {
+			if (collector != null)
+				handler.handle(row, collector.topIds(), collector.topScores());
+			else
+				handler.handle(row, Arrays.copyOf(columns, size), Arrays.copyOf(similarities, size));
+		}
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumColumns() {
+		return numColumns;
+	}
+
+}
@@ -0,0 +1,393 @@
+package edu.whu.pllab.buglocator.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.whu.pllab.buglocator.Property;
+import edu.whu.pllab.buglocator.common.BugReport;
+import edu.whu.pllab.buglocator.common.BugReportCorpus;
+import edu.whu.pllab.buglocator.common.SourceCode;
+import edu.whu.pllab.buglocator.common.SourceCodeCorpus;
+import edu.whu.pllab.buglocator.common.SparseVector;
+import edu.whu.pllab.buglocator.common.TermDictionary;
+import edu.whu.pllab.buglocator.evaluation.TopKCollector;
+
+/**
+ * Postings-list inverted index over the weighted tokens of a source code corpus. Scores are
+ * accumulated term-at-a-time, so a query only touches the files sharing at least one term with it.
+ * Token weights must be calculated by SourceCodeTfidfVectorizer before building the index.
+ */
+public class InvertedIndex {
+
+	public static final int CONTENT_FIELD = 0;
+	public static final int CLASS_FIELD = 1;
+	public static final int METHOD_FIELD = 2;
+	public static final int VARIABLE_FIELD = 3;
+	public static final int COMMENT_FIELD = 4;
+
+	private static final int FIELD_COUNT = 5;
+
+	/** relative slack added to score upper bounds to cover floating point rounding */
+	private static final double BOUND_SLACK = 1e-9;
+
+	/** indexed source code files, the position in this array is used as document id */
+	private SourceCode[] documents;
+
+	/** map source code path to document id */
+	private HashMap<String, Integer> documentIds;
+
+	/** postings indexed by term id of each field, indexed by [field][term id] */
+	private Postings[][] fieldPostings;
+
+	/** norm value of each field of each document, indexed by [field][document id] */
+	private double[][] fieldNorms;
+
+	/** whether class, method, variable and comment fields are indexed */
+	private boolean useStructuredInformation;
+
+	public InvertedIndex(HashMap<String, SourceCode> sourceCodeMap) {
+		this(sourceCodeMap, Property.USE_STRUCTURED_INFORMATION);
+	}
+
+	public InvertedIndex(HashMap<String, SourceCode> sourceCodeMap, boolean useStructuredInformation) {
+		this.useStructuredInformation = useStructuredInformation;
+		documents = sourceCodeMap.values().toArray(new SourceCode[sourceCodeMap.size()]);
+		documentIds = new HashMap<String, Integer>();
+		fieldPostings = new Postings[FIELD_COUNT][TermDictionary.getInstance().size()];
+		fieldNorms = new double[FIELD_COUNT][documents.length];
+		for (int doc = 0; doc < documents.length; doc++) {
+			documentIds.put(documents[doc].getPath(), doc);
+			SourceCodeCorpus corpus = documents[doc].getSourceCodeCorpus();
+			addField(CONTENT_FIELD, doc, corpus.getContentTokens(), corpus.getContentNorm());
+			if (useStructuredInformation) {
+				addField(CLASS_FIELD, doc, corpus.getClassPartTokens(), corpus.getClassCorpusNorm());
+				addField(METHOD_FIELD, doc, corpus.getMethodPartTokens(), corpus.getMethodCorpusNorm());
+				addField(VARIABLE_FIELD, doc, corpus.getVariablePartTokens(), corpus.getVariableCorpusNorm());
+				addField(COMMENT_FIELD, doc, corpus.getCommentPartTokens(), corpus.getCommentCorpusNorm());
+			}
+		}
+		for (int field = 0; field < FIELD_COUNT; field++) {
+			for (Postings postings : fieldPostings[field]) {
+				if (postings != null)
+					postings.trim(fieldNorms[field]);
+			}
+		}
+	}
+
+	/** append document's tokens to the postings of given field */
+	private void addField(int field, int doc, SparseVector tokens, double norm) {
+		fieldNorms[field][doc] = norm;
+		if (tokens == null)
+			return;
+		Postings[] postingsArray = fieldPostings[field];
+		for (int i = 0; i < tokens.size(); i++) {
+			int termId = tokens.getTermId(i);
+			if (termId >= postingsArray.length) {
+				// terms added to dictionary while building index
+				postingsArray = Arrays.copyOf(postingsArray, Math.max(termId + 1, postingsArray.length * 2));
+				fieldPostings[field] = postingsArray;
+			}
+			if (postingsArray[termId] == null)
+				postingsArray[termId] = new Postings();
+			postingsArray[termId].add(doc, tokens.getWeight(i));
+		}
+	}
+
+	/**
+	 * Vector Space Model similarity between given bug report and every indexed file, same as
+	 * Similarity.vsmSimilarity(BugReport, SourceCode)
+	 * @return similarity array indexed by document id
+	 */
+	public double[] vsmScores(BugReport br) {
+		BugReportCorpus brCorpus = br.getBugReportCorpus();
+		double[] scores = new double[documents.length];
+		double brNorm = brCorpus.getContentNorm();
+		if (brNorm == 0)
+			return scores;
+		accumulate(brCorpus.getContentTokens(), CONTENT_FIELD, scores);
+		double[] codeNorms = fieldNorms[CONTENT_FIELD];
+		for (int doc = 0; doc < scores.length; doc++) {
+			if (codeNorms[doc] == 0)
+				scores[doc] = 0.0;
+			else if (scores[doc] != 0)
+				scores[doc] = scores[doc] / (brNorm * codeNorms[doc]);
+		}
+		return scores;
+	}
+
+	/**
+	 * top k files of Vector Space Model similarity with given bug report, the same files, scores and order as
+	 * selecting top k of vsmScores(br) with TopKCollector. Evaluated document-at-a-time with MaxScore pruning:
+	 * query terms are ordered by their score upper bound, terms whose upper bounds sum up below the current
+	 * k-th score can not make a document enter the top k by themselves, so only documents in the postings of
+	 * the other terms are considered, and a document is fully scored only if its upper bound beats the k-th score
+	 * @return collector of top document ids and scores
+	 */
+	public TopKCollector topVsm(BugReport br, int k) {
+		TopKCollector collector = new TopKCollector(k);
+		if (k <= 0)
+			return collector;
+		BugReportCorpus brCorpus = br.getBugReportCorpus();
+		double brNorm = brCorpus.getContentNorm();
+		SparseVector queryTokens = brCorpus.getContentTokens();
+		Postings[] postingsArray = fieldPostings[CONTENT_FIELD];
+		double[] codeNorms = fieldNorms[CONTENT_FIELD];
+
+		// query terms having postings, in increasing term id order
+		int termCount = 0;
+		Postings[] termPostings = new Postings[queryTokens.size()];
+		double[] queryWeights = new double[queryTokens.size()];
+		if (brNorm != 0) {
+			for (int t = 0; t < queryTokens.size(); t++) {
+				int termId = queryTokens.getTermId(t);
+				if (termId >= postingsArray.length || postingsArray[termId] == null)
+					continue;
+				termPostings[termCount] = postingsArray[termId];
+				queryWeights[termCount] = queryTokens.getWeight(t);
+				termCount++;
+			}
+		}
+		// order terms by upper bound of their score contribution
+		Integer[] order = new Integer[termCount];
+		final double[] termBounds = new double[termCount];
+		for (int t = 0; t < termCount; t++) {
+			order[t] = t;
+			termBounds[t] = queryWeights[t] * termPostings[t].maxNormalizedWeight / brNorm * (1 + BOUND_SLACK);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer t1, Integer t2) {
+				return Double.compare(termBounds[t1], termBounds[t2]);
+			}
+		});
+		// cursors indexed by position in bound order, positionOf maps term order to bound order
+		Postings[] postings = new Postings[termCount];
+		double[] weights = new double[termCount];
+		double[] upperBounds = new double[termCount];
+		int[] positionOf = new int[termCount];
+		int[] cursors = new int[termCount];
+		int[] currentDocs = new int[termCount];
+		double[] boundPrefix = new double[termCount + 1];
+		for (int i = 0; i < termCount; i++) {
+			int t = order[i];
+			postings[i] = termPostings[t];
+			weights[i] = queryWeights[t];
+			upperBounds[i] = termBounds[t];
+			positionOf[t] = i;
+			currentDocs[i] = postings[i].size > 0 ? postings[i].docs[0] : Integer.MAX_VALUE;
+			boundPrefix[i + 1] = boundPrefix[i] + upperBounds[i];
+		}
+
+		boolean[] collected = new boolean[documents.length];
+		double threshold = collector.threshold();
+		// terms [0, firstEssential) in bound order are non-essential
+		int firstEssential = 0;
+		int doc = Integer.MAX_VALUE;
+		for (int i = 0; i < termCount; i++)
+			doc = Math.min(doc, currentDocs[i]);
+		while (doc != Integer.MAX_VALUE) {
+			// upper bound of document score, exact contributions of essential terms containing the document
+			// plus upper bounds of non-essential terms
+			double norm = codeNorms[doc] * brNorm;
+			double bound = boundPrefix[firstEssential];
+			for (int i = firstEssential; i < termCount; i++) {
+				if (currentDocs[i] == doc)
+					bound += weights[i] * postings[i].weights[cursors[i]] / norm * (1 + BOUND_SLACK);
+			}
+			// replace bounds of non-essential terms by their exact contributions, most promising first
+			for (int i = firstEssential - 1; i >= 0 && bound > threshold; i--) {
+				bound -= upperBounds[i];
+				if (currentDocs[i] < doc) {
+					cursors[i] = postings[i].advance(cursors[i], doc);
+					currentDocs[i] = cursors[i] < postings[i].size ? postings[i].docs[cursors[i]] : Integer.MAX_VALUE;
+				}
+				if (currentDocs[i] == doc)
+					bound += weights[i] * postings[i].weights[cursors[i]] / norm * (1 + BOUND_SLACK);
+			}
+			if (bound > threshold) {
+				// sum in increasing term id order, the same as accumulate()
+				double score = 0.0;
+				for (int t = 0; t < termCount; t++) {
+					int i = positionOf[t];
+					if (currentDocs[i] == doc)
+						score += weights[i] * postings[i].weights[cursors[i]];
+				}
+				if (codeNorms[doc] == 0)
+					score = 0.0;
+				else if (score != 0)
+					score = score / (brNorm * codeNorms[doc]);
+				collector.collect(doc, score, doc);
+				collected[doc] = true;
+				threshold = collector.threshold();
+				while (firstEssential < termCount && boundPrefix[firstEssential + 1] <= threshold)
+					firstEssential++;
+			}
+			// move essential cursors past the document, next candidate is their smallest current document
+			int next = Integer.MAX_VALUE;
+			for (int i = firstEssential; i < termCount; i++) {
+				if (currentDocs[i] == doc) {
+					cursors[i]++;
+					currentDocs[i] = cursors[i] < postings[i].size ? postings[i].docs[cursors[i]] : Integer.MAX_VALUE;
+				}
+				if (currentDocs[i] < next)
+					next = currentDocs[i];
+			}
+			doc = next;
+		}
+		// documents not matching any term score zero
+		for (int id = 0; id < documents.length && !(collector.isFull() && collector.threshold() > 0); id++) {
+			if (!collected[id])
+				collector.collect(id, 0.0, id);
+		}
+		return collector;
+	}
+
+	/**
+	 * structural similarity between given bug report and every indexed file, sum of the eight (query
+	 * field, document field) similarities. If normalize is true, same as Similarity.structuralSimilarity,
+	 * otherwise same as Similarity.BM25StructuralSimilarity
+	 * @return similarity array indexed by document id
+	 */
+	public double[] structuralScores(BugReport br, boolean normalize) {
+		if (!useStructuredInformation)
+			throw new IllegalStateException("Structured information is not indexed!");
+		BugReportCorpus brCorpus = br.getBugReportCorpus();
+		List<SparseVector> brFields = new ArrayList<SparseVector>();
+		List<Double> brFieldsNorm = new ArrayList<Double>();
+		brFields.add(brCorpus.getSummaryTokens());
+		brFields.add(brCorpus.getDescriptionTokens());
+		brFieldsNorm.add(brCorpus.getSummaryNorm());
+		brFieldsNorm.add(brCorpus.getDescriptionNorm());
+		int[] codeFields = { CLASS_FIELD, METHOD_FIELD, VARIABLE_FIELD, COMMENT_FIELD };
+
+		double[] scores = new double[documents.length];
+		double[] fieldScores = new double[documents.length];
+		// sum documents scores across eight combinations
+		for (int i = 0; i < brFields.size(); i++) {
+			double brFieldNorm = brFieldsNorm.get(i);
+			if (brFieldNorm == 0)
+				continue;
+			for (int j = 0; j < codeFields.length; j++) {
+				double[] codeFieldNorms = fieldNorms[codeFields[j]];
+				Arrays.fill(fieldScores, 0.0);
+				accumulate(brFields.get(i), codeFields[j], fieldScores);
+				for (int doc = 0; doc < scores.length; doc++) {
+					if (codeFieldNorms[doc] == 0 || fieldScores[doc] == 0)
+						continue;
+					if (normalize)
+						scores[doc] += fieldScores[doc] / (brFieldNorm * codeFieldNorms[doc]);
+					else
+						scores[doc] += fieldScores[doc];
+				}
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * term-at-a-time accumulation of query token weights multiplied by document token weights, query terms
+	 * are visited in increasing term id order as SparseVector.dot does
+	 */
+	private void accumulate(SparseVector queryTokens, int field, double[] accumulators) {
+		if (queryTokens == null)
+			return;
+		Postings[] postingsArray = fieldPostings[field];
+		for (int t = 0; t < queryTokens.size(); t++) {
+			int termId = queryTokens.getTermId(t);
+			if (termId >= postingsArray.length || postingsArray[termId] == null)
+				continue;
+			Postings postings = postingsArray[termId];
+			double queryWeight = queryTokens.getWeight(t);
+			int[] docs = postings.docs;
+			double[] weights = postings.weights;
+			for (int i = 0; i < postings.size; i++)
+				accumulators[docs[i]] += queryWeight * weights[i];
+		}
+	}
+
+	/** number of indexed documents */
+	public int size() {
+		return documents.length;
+	}
+
+	/** indexed source code files in document id order */
+	public List<SourceCode> getDocuments() {
+		return Collections.unmodifiableList(Arrays.asList(documents));
+	}
+
+	public SourceCode getDocument(int doc) {
+		return documents[doc];
+	}
+
+	/** document id of given source code path, -1 if not indexed */
+	public int getDocumentId(String path) {
+		Integer doc = documentIds.get(path);
+		return doc == null ? -1 : doc;
+	}
+
+	/** count of documents given term appeared in the given field */
+	public int docFrequency(String term, int field) {
+		int termId = TermDictionary.getInstance().getTermId(term);
+		if (termId < 0 || termId >= fieldPostings[field].length || fieldPostings[field][termId] == null)
+			return 0;
+		return fieldPostings[field][termId].size;
+	}
+
+	public boolean isUseStructuredInformation() {
+		return useStructuredInformation;
+	}
+
+	/** documents and weights of a term, in increasing document id order */
+	private static class Postings {
+
+		private int[] docs = new int[4];
+		private double[] weights = new double[4];
+		private int size = 0;
+
+		private void add(int doc, double weight) {
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			docs[size] = doc;
+			weights[size] = weight;
+			size++;
+		}
+
+		/** max of weight divided by document norm, upper bound of a document's normalized weight */
+		private double maxNormalizedWeight = 0.0;
+
+		private void trim(double[] norms) {
+			docs = Arrays.copyOf(docs, size);
+			weights = Arrays.copyOf(weights, size);
+			for (int i = 0; i < size; i++) {
+				if (norms[docs[i]] != 0)
+					maxNormalizedWeight = Math.max(maxNormalizedWeight, weights[i] / norms[docs[i]]);
+			}
+		}
+
+		/** position of the first document not less than given document, searching from given position */
+		private int advance(int from, int doc) {
+			if (from >= size || docs[from] >= doc)
+				return from;
+			// gallop then binary search
+			int step = 1;
+			int low = from;
+			int high = from + step;
+			while (high < size && docs[high] < doc) {
+				low = high;
+				step <<= 1;
+				high = from + step;
+			}
+			if (high > size)
+				high = size;
+			int index = Arrays.binarySearch(docs, low + 1, high, doc);
+			return index >= 0 ? index : -index - 1;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package edu.whu.pllab.buglocator.index;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.deeplearning4j.util.MathUtils;
+
+import edu.whu.pllab.buglocator.common.BugReport;
+import edu.whu.pllab.buglocator.common.BugReportCorpus;
+import edu.whu.pllab.buglocator.common.SourceCode;
+import edu.whu.pllab.buglocator.common.SparseVector;
+import edu.whu.pllab.buglocator.vectorizer.SourceCodeTfidfVectorizer;
+import edu.whu.pllab.buglocator.vectorizer.TfidfVectorizer;
+
+/**
+ * Vector Space Model scorer applying idf values at query time. Source code files only keep their content tf
+ * vectors in SourceCodeTfidfVectorizer, idf values are read from the live tfidf model, so nothing needs to be
+ * reweighted after the model is updated. Norm values are cached and invalidated by the idf epoch of the model.
+ * Scores are the same as Similarity.vsmSimilarity(BugReport, SourceCode) with eagerly calculated weights.
+ */
+public class LazyTfidfScorer {
+
+	private SourceCodeTfidfVectorizer codeVectorizer;
+
+	/** cached content norm of each source code file */
+	private ConcurrentHashMap<String, CachedNorm> normCache;
+
+	public LazyTfidfScorer(SourceCodeTfidfVectorizer codeVectorizer) {
+		this.codeVectorizer = codeVectorizer;
+		this.normCache = new ConcurrentHashMap<String, CachedNorm>();
+	}
+
+	/** Vector Space Model similarity between given bug report and source code file */
+	public double vsmSimilarity(BugReport br, SourceCode code) {
+		BugReportCorpus brCorpus = br.getBugReportCorpus();
+		double brNorm = brCorpus.getContentNorm();
+		SparseVector contentTf = codeVectorizer.getContentTf(code.getPath());
+		if (brNorm == 0 || contentTf == null)
+			return 0.0;
+		double codeNorm = contentNorm(code.getPath(), contentTf);
+		// if norm value equal 0, return 0
+		if (codeNorm == 0)
+			return 0.0;
+		return dot(brCorpus.getContentTokens(), contentTf) / (brNorm * codeNorm);
+	}
+
+	/** dot product of query weights and document tf vector multiplied by current idf values */
+	private double dot(SparseVector queryTokens, SparseVector contentTf) {
+		TfidfVectorizer<String> tfidf = codeVectorizer.getTfidf();
+		double sum = 0.0;
+		int i = 0, j = 0;
+		while (i < queryTokens.size() && j < contentTf.size()) {
+			int queryTermId = queryTokens.getTermId(i);
+			int docTermId = contentTf.getTermId(j);
+			if (queryTermId < docTermId)
+				i++;
+			else if (queryTermId > docTermId)
+				j++;
+			else {
+				sum += queryTokens.getWeight(i) * MathUtils.tfidf(contentTf.getWeight(j), tfidf.idfForTerm(docTermId));
+				i++;
+				j++;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * content norm of given file under current idf values. A norm cached in the previous epoch is still valid
+	 * if none of the file's terms changed idf value in the last update
+	 */
+	public double contentNorm(String path, SparseVector contentTf) {
+		TfidfVectorizer<String> tfidf = codeVectorizer.getTfidf();
+		int epoch = tfidf.getEpoch();
+		CachedNorm cached = normCache.get(path);
+		if (cached != null && cached.contentTf == contentTf) {
+			if (cached.epoch == epoch)
+				return cached.norm;
+			if (cached.epoch == epoch - 1 && !tfidf.hasIdfChanged(contentTf)) {
+				normCache.put(path, new CachedNorm(contentTf, epoch, cached.norm));
+				return cached.norm;
+			}
+		}
+		double weightSum = 0.0;
+		for (int i = 0; i < contentTf.size(); i++)
+			weightSum += MathUtils.tfidf(contentTf.getWeight(i), tfidf.idfForTerm(contentTf.getTermId(i)));
+		double norm = Math.sqrt(weightSum);
+		normCache.put(path, new CachedNorm(contentTf, epoch, norm));
+		return norm;
+	}
+
+	/** norm value of a tf vector calculated in given epoch */
+	private static class CachedNorm {
+
+		private final SparseVector contentTf;
+		private final int epoch;
+		private final double norm;
+
+		private CachedNorm(SparseVector contentTf, int epoch, double norm) {
+			this.contentTf = contentTf;
+			this.epoch = epoch;
+			this.norm = norm;
+		}
+	}
+
+}
@@ -0,0 +1,254 @@
+package edu.whu.pllab.buglocator.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.whu.pllab.buglocator.common.Method;
+import edu.whu.pllab.buglocator.common.SourceCode;
+import edu.whu.pllab.buglocator.common.SparseVector;
+
+/**
+ * Off-heap store of method token vectors. Vectors are appended to a file while calculating tokens weight,
+ * then the file is memory-mapped and each vector is decoded on demand, so method vectors of the whole
+ * repository do not need to be kept on heap. Only the union of method term ids of each source code file is
+ * kept on heap, which is used to skip files whose methods share no term with the query.
+ */
+public class MethodVectorStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(MethodVectorStore.class);
+
+	/** size of each mapped segment, a vector record never spans two segments */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private File file;
+
+	private DataOutputStream out;
+
+	/** length of written data */
+	private long position;
+
+	/** map source code path to its methods entry */
+	private HashMap<String, FileEntry> entries;
+
+	private MappedByteBuffer[] segments;
+
+	private boolean closed;
+
+	/** create store backed by a temporary file under given directory, deleted by close() or on exit */
+	public MethodVectorStore(File dir) throws IOException {
+		file = File.createTempFile("methodVectors", ".bin", dir);
+		file.deleteOnExit();
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		position = 0;
+		entries = new HashMap<String, FileEntry>();
+		closed = false;
+	}
+
+	/**
+	 * append vectors of all methods of given source code file, in the same order of code.getMethodList()
+	 * @param methodVectors token vectors of methods
+	 * @param methodNorms norm values of methods
+	 */
+	public synchronized void add(SourceCode code, List<SparseVector> methodVectors, double[] methodNorms)
+			throws IOException {
+		if (segments != null || closed)
+			throw new IllegalStateException("Method vector store is already finished!");
+		List<Method> methodList = code.getMethodList();
+		FileEntry entry = new FileEntry(methodVectors.size());
+		int unionSize = 0;
+		for (int i = 0; i < methodVectors.size(); i++) {
+			SparseVector vector = methodVectors.get(i);
+			long recordLength = 4L + 12L * vector.size();
+			if (recordLength > SEGMENT_SIZE)
+				throw new IOException("Method vector is too large: " + methodList.get(i).getName());
+			// pad to next segment if record would span two segments
+			long remaining = SEGMENT_SIZE - position % SEGMENT_SIZE;
+			if (recordLength > remaining) {
+				for (long j = 0; j < remaining; j++)
+					out.writeByte(0);
+				position += remaining;
+			}
+			entry.offsets[i] = position;
+			entry.norms[i] = methodNorms[i];
+			out.writeInt(vector.size());
+			for (int j = 0; j < vector.size(); j++)
+				out.writeInt(vector.getTermId(j));
+			for (int j = 0; j < vector.size(); j++)
+				out.writeDouble(vector.getWeight(j));
+			position += recordLength;
+			unionSize += vector.size();
+		}
+		// sorted union of method term ids
+		int[] termUnion = new int[unionSize];
+		int index = 0;
+		for (SparseVector vector : methodVectors) {
+			for (int j = 0; j < vector.size(); j++)
+				termUnion[index++] = vector.getTermId(j);
+		}
+		Arrays.sort(termUnion);
+		int distinct = 0;
+		for (int j = 0; j < termUnion.length; j++) {
+			if (distinct == 0 || termUnion[distinct - 1] != termUnion[j])
+				termUnion[distinct++] = termUnion[j];
+		}
+		entry.termUnion = Arrays.copyOf(termUnion, distinct);
+		entries.put(code.getPath(), entry);
+	}
+
+	/** finish writing and map the file, must be called before reading vectors */
+	public synchronized void finish() throws IOException {
+		if (closed)
+			throw new IllegalStateException("Method vector store is closed!");
+		if (segments != null)
+			return;
+		out.close();
+		logger.info("Mapping method vectors of " + entries.size() + " files, " + position + " bytes...");
+		int segmentCount = (int) ((position + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		segments = new MappedByteBuffer[segmentCount];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			for (int i = 0; i < segmentCount; i++) {
+				long start = i * SEGMENT_SIZE;
+				segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, position - start));
+			}
+		}
+	}
+
+	/** whether any method of given file shares at least one term with given query tokens */
+	public boolean mayMatch(String path, SparseVector queryTokens) {
+		FileEntry entry = entries.get(path);
+		if (entry == null)
+			return false;
+		int[] termUnion = entry.termUnion;
+		int i = 0, j = 0;
+		while (i < termUnion.length && j < queryTokens.size()) {
+			int termId = queryTokens.getTermId(j);
+			if (termUnion[i] < termId)
+				i++;
+			else if (termUnion[i] > termId)
+				j++;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	/** number of methods stored for given file */
+	public int getMethodCount(String path) {
+		FileEntry entry = entries.get(path);
+		return entry == null ? 0 : entry.offsets.length;
+	}
+
+	/** norm value of the index-th method of given file */
+	public double getContentNorm(String path, int index) {
+		return entries.get(path).norms[index];
+	}
+
+	/** decode token vector of the index-th method of given file from mapped file */
+	public SparseVector getContentTokens(String path, int index) {
+		MappedByteBuffer[] segments = this.segments;
+		if (segments == null)
+			throw new IllegalStateException("Method vector store is not finished or closed!");
+		long offset = entries.get(path).offsets[index];
+		MappedByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)];
+		// absolute reads only, so concurrent readers can share the buffer
+		int pos = (int) (offset % SEGMENT_SIZE);
+		int size = segment.getInt(pos);
+		pos += 4;
+		int[] termIds = new int[size];
+		double[] weights = new double[size];
+		for (int i = 0; i < size; i++, pos += 4)
+			termIds[i] = segment.getInt(pos);
+		for (int i = 0; i < size; i++, pos += 8)
+			weights[i] = segment.getDouble(pos);
+		return new SparseVector(termIds, weights);
+	}
+
+	/** number of source code files in store */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * unmap and delete the backing file, vectors can not be read after close. Must not be called while vectors
+	 * are being read, reading an unmapped segment would crash the JVM
+	 */
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		if (segments == null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		} else {
+			MappedByteBuffer[] mappedSegments = segments;
+			segments = null;
+			for (MappedByteBuffer segment : mappedSegments)
+				unmap(segment);
+		}
+		entries.clear();
+		if (!file.delete())
+			logger.info("Cannot delete " + file + ", it will be deleted on exit.");
+	}
+
+	/**
+	 * release given mapped buffer now instead of when it is garbage collected, so the file can be deleted on all
+	 * platforms. Buffer is left to garbage collection if the JVM provides no way to release it
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			java.lang.reflect.Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (NoSuchMethodException e) {
+			// Java 8, the buffer has its own cleaner
+		} catch (Exception e) {
+			logger.info("Cannot unmap method vectors: " + e);
+			return;
+		}
+		try {
+			java.lang.reflect.Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null)
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+		} catch (Exception e) {
+			logger.info("Cannot unmap method vectors: " + e);
+		}
+	}
+
+	/** offsets and norms of the methods of a source code file */
+	private static class FileEntry {
+
+		private long[] offsets;
+		private double[] norms;
+		private int[] termUnion;
+
+		private FileEntry(int methodCount) {
+			offsets = new long[methodCount];
+			norms = new double[methodCount];
+		}
+	}
+
+}
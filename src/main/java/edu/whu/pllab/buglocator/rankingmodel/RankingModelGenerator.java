@@ -15,20 +15,23 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.common.BugReport;
 import edu.whu.pllab.buglocator.common.Method;
 import edu.whu.pllab.buglocator.common.SimilarBugReport;
 import edu.whu.pllab.buglocator.common.SourceCode;
+import edu.whu.pllab.buglocator.evaluation.TopKCollector;
+import edu.whu.pllab.buglocator.index.BugReportIndex;
+import edu.whu.pllab.buglocator.index.CSRMatrix;
+import edu.whu.pllab.buglocator.index.InvertedIndex;
+import edu.whu.pllab.buglocator.index.MethodVectorStore;
 import edu.whu.pllab.buglocator.similarity.Similarity;
-import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore.KeyFeatureComparator;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
 
 public class RankingModelGenerator {
 	
@@ -72,6 +75,12 @@ public class RankingModelGenerator {
 	
 	private Similarity sim;
 	
+	/** method vectors stored off heap, if null, use method vectors kept in Method */
+	private MethodVectorStore methodVectorStore;
+	
+	/** inverted index of training bug reports, built when generating features */
+	private BugReportIndex trainingBugReportIndex;
+	
 	public RankingModelGenerator() {
 		maxSourceCodeSimilarity = Double.MIN_VALUE;
 		minSourceCodeSimilarity = Double.MAX_VALUE;
@@ -179,19 +188,32 @@ public class RankingModelGenerator {
 			bugReportsMap = trainingBugReportsMap;
 		else 
 			bugReportsMap = testBugReportsMap;
+		// index training bug reports with their current tokens weight
+		trainingBugReportIndex = new BugReportIndex(trainingBugReportsMap.values());
 		// create multi threads and iterate bug report, calculate features.
 		int lostBr = 0;
-		ExecutorService executor = Executors.newFixedThreadPool(Property.THREAD_COUNT);
+		List<BugReport> brList = new ArrayList<BugReport>();
 		for (BugReport bugReport : bugReportsMap.values()) {
 			if (bugReport.getFixedFiles().size() == 0) {
 				lostBr++;
 				continue;
 			}
-			Runnable worker = new WorkerThread(bugReport, isTraining);
-			executor.execute(worker);
+			brList.add(bugReport);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
+		if (BR_CODE_SIMILARITY == Similarity.VSM) {
+			// score all bug reports against all source code files by a sparse matrix product, features of a bug
+			// report are calculated as soon as its row is finished
+			List<SourceCode> sourceCodes = new ArrayList<SourceCode>(sourceCodeMap.values());
+			CSRMatrix brMatrix = CSRMatrix.ofBugReports(brList);
+			CSRMatrix codeMatrix = CSRMatrix.ofSourceCodes(sourceCodes, InvertedIndex.CONTENT_FIELD);
+			brMatrix.cosineProduct(codeMatrix, 0, false, new RowWorker(brList, sourceCodes, isTraining));
+		} else {
+			Stage executor = Scheduler.newStage("Feature calculation");
+			for (BugReport bugReport : brList) {
+				Runnable worker = new WorkerThread(bugReport, isTraining);
+				executor.execute(worker);
+			}
+			executor.join();
 		}
 		
 		logger.info("Total bug reports:" + bugReportsMap.size() + ", lost bug reports:" + lostBr);
@@ -225,10 +247,45 @@ public class RankingModelGenerator {
 		}
 	}
 	
+	/** handler of bug reports and source code files similarity matrix rows, calculating features */
+	private class RowWorker implements CSRMatrix.RowHandler {
+		
+		private List<BugReport> brList;
+		private List<SourceCode> sourceCodes;
+		private boolean isTraining;
+		
+		private RowWorker(List<BugReport> brList, List<SourceCode> sourceCodes, boolean isTraining) {
+			this.brList = brList;
+			this.sourceCodes = sourceCodes;
+			this.isTraining = isTraining;
+		}
+		
+		@Override
+		public void handle(int row, int[] columns, double[] similarities) {
+			double[] fileSimilarities = new double[sourceCodes.size()];
+			for (int i = 0; i < columns.length; i++)
+				fileSimilarities[columns[i]] = similarities[i];
+			BugReport bugReport = brList.get(row);
+			List<IntegratedScore> integratedScoreList = generate(bugReport, sourceCodes, fileSimilarities, isTraining);
+			synchronized (finals) {
+				finals.put(bugReport, integratedScoreList);
+			}
+		}
+	}
+	
 	/** calculate integrated score of all source code file for given bug report.
 	 *  if isTraining is true, only return top N irrelevant source code files, and do not normalize features,
 	 *  otherwise return all source code files, and normalize features */
 	public List<IntegratedScore> generate(BugReport br, boolean isTraining) {
+		return generate(br, new ArrayList<SourceCode>(sourceCodeMap.values()), null, isTraining);
+	}
+	
+	/**
+	 * calculate integrated score of given source code files for given bug report
+	 * @param fileSimilarities similarity between bug report and each file, if null, calculated file by file
+	 */
+	private List<IntegratedScore> generate(BugReport br, List<SourceCode> sourceCodes, double[] fileSimilarities,
+			boolean isTraining) {
 		List<IntegratedScore> result = new LinkedList<IntegratedScore>();
 		List<IntegratedScore> integratedScoreList = new ArrayList<IntegratedScore>();
 		
@@ -236,8 +293,10 @@ public class RankingModelGenerator {
 		HashMap<String, Double> simiScoreMap = calculateSimiScore(br);
 		
 		// Enum code files.
-		for (SourceCode code : sourceCodeMap.values()) {
-			double[] features = generate(br, code, simiScoreMap, isTraining);
+		for (int i = 0; i < sourceCodes.size(); i++) {
+			SourceCode code = sourceCodes.get(i);
+			double[] features = fileSimilarities == null ? generate(br, code, simiScoreMap, isTraining)
+					: generate(br, code, simiScoreMap, fileSimilarities[i], isTraining);
 			if (features == null)
 				continue;
 			boolean isModified = false;
@@ -261,10 +320,20 @@ public class RankingModelGenerator {
 			return integratedScoreList;
 		}
 		else {
-			// Sort and add to the final results.
-			integratedScoreList.sort(new KeyFeatureComparator());
+			// Select top scores and add to the final results, at most CANDIDATE_SOURCE_CODE irrelevant and all
+			// modified files are needed, the same order as sorting with KeyFeatureComparator
+			int modifiedCount = 0;
+			double[] keyScores = new double[integratedScoreList.size()];
+			for (int i = 0; i < keyScores.length; i++) {
+				keyScores[i] = integratedScoreList.get(i).getScore();
+				if (integratedScoreList.get(i).isModified())
+					modifiedCount++;
+			}
+			TopKCollector collector = new TopKCollector((int) CANDIDATE_SOURCE_CODE + modifiedCount);
+			collector.collectAll(keyScores);
 			Integer count = 0;
-			for (IntegratedScore score : integratedScoreList) {
+			for (int index : collector.topIds()) {
+				IntegratedScore score = integratedScoreList.get(index);
 				result.add(score);
 				if (!score.isModified())
 					count++;
@@ -278,7 +347,13 @@ public class RankingModelGenerator {
 	/** calculate features for given bug report and source code file, if isTraining is false, normalize features */
 	public double[] generate(BugReport br, SourceCode code, HashMap<String, Double> simiScoreMap,
 			boolean isTraining) {
-		double sourceCodeSimilarity = calculateSourceCodeSimilarity(br, code);
+		return generate(br, code, simiScoreMap, new Similarity().similarity(br, code, BR_CODE_SIMILARITY), isTraining);
+	}
+	
+	/** calculate features of given bug report and source code file, whose similarity is already calculated */
+	public double[] generate(BugReport br, SourceCode code, HashMap<String, Double> simiScoreMap,
+			double fileSimilarity, boolean isTraining) {
+		double sourceCodeSimilarity = calculateSourceCodeSimilarity(br, code, fileSimilarity);
 		double APISimilarity = calculateAPISimilarity(br, code);
 		double collaborativeFilteringScore = simiScoreMap.containsKey(code.getPath())
 				? simiScoreMap.get(code.getPath()) : 0.0;
@@ -303,8 +378,26 @@ public class RankingModelGenerator {
 	
 	/** calculate source code similarity between given bug report and source code */
 	public double calculateSourceCodeSimilarity(BugReport br, SourceCode code) {
+		return calculateSourceCodeSimilarity(br, code, new Similarity().similarity(br, code, BR_CODE_SIMILARITY));
+	}
+	
+	/** maximum of given file similarity and similarities of its methods */
+	public double calculateSourceCodeSimilarity(BugReport br, SourceCode code, double fileSimilarity) {
 		Similarity sim = new Similarity();
-		double sourceCodeSimilarity = sim.similarity(br, code, BR_CODE_SIMILARITY);
+		double sourceCodeSimilarity = fileSimilarity;
+		if (methodVectorStore != null && BR_CODE_SIMILARITY == Similarity.VSM) {
+			// methods of files sharing no term with bug report have zero similarity, skip decoding them
+			String path = code.getPath();
+			if (!methodVectorStore.mayMatch(path, br.getBugReportCorpus().getContentTokens()))
+				return sourceCodeSimilarity;
+			for (int i = 0; i < methodVectorStore.getMethodCount(path); i++) {
+				double methodSimilarity = sim.vsmSimilarity(br, methodVectorStore.getContentTokens(path, i),
+						methodVectorStore.getContentNorm(path, i));
+				if (methodSimilarity > sourceCodeSimilarity)
+					sourceCodeSimilarity = methodSimilarity;
+			}
+			return sourceCodeSimilarity;
+		}
 		for (Method method : code.getMethodList()) {
 			double methodSimilarity = sim.similarity(br, method, BR_CODE_SIMILARITY);
 			if (methodSimilarity > sourceCodeSimilarity)
@@ -368,6 +461,8 @@ public class RankingModelGenerator {
 	
 	/** calculate collaborative filter score for given bug report */
 	public HashMap<String, Double> calculateSimiScore(BugReport br) {
+		if (TOP_SIMILAR_BUG_REPORTS <= 0 && BR_BR_SIMILARITY == Similarity.VSM)
+			return getTrainingBugReportIndex().simiScores(br, BugReportIndex.FIRST_IN_SIMILARITY_ORDER);
 		HashMap<String, Double> simiScoreMap = new HashMap<String, Double>();
 		List<SimilarBugReport> similarBugReports = getSimilarBugReports(br, TOP_SIMILAR_BUG_REPORTS);
 		for (SimilarBugReport similarBugReport : similarBugReports) {
@@ -389,6 +484,10 @@ public class RankingModelGenerator {
 	 * @return list of similarBugReport.
 	 */
 	public List<SimilarBugReport> getSimilarBugReports(BugReport br, int top) {
+		if (BR_BR_SIMILARITY == Similarity.VSM) {
+			BugReportIndex brIndex = getTrainingBugReportIndex();
+			return brIndex.getSimilarBugReports(br, top <= 0 ? brIndex.size() : top + 1);
+		}
 		List<SimilarBugReport> similarBugReports = new ArrayList<SimilarBugReport>();
 		PriorityQueue<SimilarBugReport> heap = new PriorityQueue<SimilarBugReport>(trainingBugReportsMap.size(),
 				new SimilarBugReport.SimilarityComparator());
@@ -411,6 +510,13 @@ public class RankingModelGenerator {
 		return similarBugReports;
 	}
 	
+	/** inverted index of training bug reports, built if training bug reports are not indexed yet */
+	private synchronized BugReportIndex getTrainingBugReportIndex() {
+		if (trainingBugReportIndex == null)
+			trainingBugReportIndex = new BugReportIndex(trainingBugReportsMap.values());
+		return trainingBugReportIndex;
+	}
+	
 	/** update features max min value */
 	public synchronized void updateMaxMinFeatures(double sourceCodeSimilarity, double APISimilarity,
 			double collaborativeFilteringScore, double classNameSimilarity, double recency, double frequency) {
@@ -521,6 +627,7 @@ public class RankingModelGenerator {
 
 	public void setTrainingBugReportsMap(HashMap<Integer, BugReport> trainingBugReportsMap) {
 		this.trainingBugReportsMap = trainingBugReportsMap;
+		this.trainingBugReportIndex = null;
 	}
 
 	public HashMap<Integer, BugReport> getTestBugReportsMap() {
@@ -546,6 +653,14 @@ public class RankingModelGenerator {
 	public void setSim(Similarity sim) {
 		this.sim = sim;
 	}
+
+	public MethodVectorStore getMethodVectorStore() {
+		return methodVectorStore;
+	}
+
+	public void setMethodVectorStore(MethodVectorStore methodVectorStore) {
+		this.methodVectorStore = methodVectorStore;
+	}
 	
 
 }
@@ -13,20 +13,19 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.common.BugReport;
 import edu.whu.pllab.buglocator.common.BugReportCorpus;
 import edu.whu.pllab.buglocator.common.SourceCode;
 import edu.whu.pllab.buglocator.common.SourceCodeCorpus;
-import edu.whu.pllab.buglocator.common.TokenScore;
+import edu.whu.pllab.buglocator.common.SparseVector;
 import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore.KeyFeatureComparator;
 import edu.whu.pllab.buglocator.similarity.Similarity;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
 
 public class StructuralSimModelGenerator {
 	
@@ -118,7 +117,7 @@ public class StructuralSimModelGenerator {
 			bugReportsMap = testBugReportsMap;
 		// create multi threads and iterate bug report, calculate features.
 		int lostBr = 0;
-		ExecutorService executor = Executors.newFixedThreadPool(Property.THREAD_COUNT);
+		Stage executor = Scheduler.newStage("Feature calculation");
 		for (BugReport bugReport : bugReportsMap.values()) {
 			if (bugReport.getFixedFiles().size() == 0) {
 				lostBr++;
@@ -127,9 +126,7 @@ public class StructuralSimModelGenerator {
 			Runnable worker = new WorkerThread(bugReport, isTraining);
 			executor.execute(worker);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
-		}
+		executor.join();
 		
 		logger.info("Total bug reports:" + bugReportsMap.size() + ", lost bug reports:" + lostBr);
 		// normalize all features
@@ -241,9 +238,9 @@ public class StructuralSimModelGenerator {
 		double[] features = new double[9];
 		BugReportCorpus brCorpus = br.getBugReportCorpus();
 		SourceCodeCorpus codeCorpus = code.getSourceCodeCorpus();
-		List<HashMap<String, TokenScore>> brFields = new ArrayList<HashMap<String, TokenScore>>();
+		List<SparseVector> brFields = new ArrayList<SparseVector>();
 		List<Double> brFieldsNorm = new ArrayList<Double>();
-		List<HashMap<String, TokenScore>> codeFields = new ArrayList<HashMap<String, TokenScore>>();
+		List<SparseVector> codeFields = new ArrayList<SparseVector>();
 		List<Double> codeFieldsNorm = new ArrayList<Double>();
 		brFields.add(brCorpus.getSummaryTokens());
 		brFields.add(brCorpus.getDescriptionTokens());
@@ -261,10 +258,10 @@ public class StructuralSimModelGenerator {
 		double fieldSimilaritySum = 0.0;
 		int index = 1;
 		for (int i = 0; i < brFields.size(); i++) {
-			HashMap<String, TokenScore> brFieldTokens = brFields.get(i);
+			SparseVector brFieldTokens = brFields.get(i);
 			double brFieldNorm = brFieldsNorm.get(i);
 			for (int j = 0; j < codeFields.size(); j++) {
-				HashMap<String, TokenScore> codeFieldTokens = codeFields.get(j);
+				SparseVector codeFieldTokens = codeFields.get(j);
 				double codeFieldNorm = codeFieldsNorm.get(j);
 				if (brFieldNorm == 0 || codeFieldNorm == 0)
 					features[index] = 0.0;
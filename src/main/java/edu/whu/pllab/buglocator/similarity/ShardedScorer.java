@@ -0,0 +1,84 @@
+package edu.whu.pllab.buglocator.similarity;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import edu.whu.pllab.buglocator.common.SourceCode;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+
+/**
+ * Fork-join scoring of a single bug report against source code files, so scoring all files of one bug report
+ * scales with the processors instead of running on one thread. Files are split in half until a shard has at
+ * most SHARD_SIZE files, shards are scored by workers of the shared Scheduler pool. Files are identified by their
+ * position in the given list, so results do not depend on how shards are scheduled.
+ * <p>
+ * Only batch scoring is sharded: a score of every file is returned and callers like VSMRank sort all of them.
+ * There is no per-shard top-k. Top-k queries of LocalizationServer are answered by InvertedIndex.topVsm on the
+ * calling thread, which skips most postings by MaxScore instead.
+ */
+public class ShardedScorer {
+
+	/** maximum number of files scored by one task */
+	public static final int SHARD_SIZE = 256;
+
+	/** score of one file, called concurrently for different files */
+	public interface FileScorer {
+		double score(SourceCode code);
+	}
+
+	private ShardedScorer() {
+	}
+
+	/** scores of all files, indexed by position in given list */
+	public static double[] scores(List<SourceCode> sourceCodes, FileScorer scorer) {
+		double[] scores = new double[sourceCodes.size()];
+		ScoreAction action = new ScoreAction(sourceCodes, scorer, scores, 0, scores.length);
+		if (isSequential(scores.length))
+			action.scoreShard();
+		else
+			Scheduler.getPool().invoke(action);
+		return scores;
+	}
+
+	/** whether files are scored on the calling thread, when there is one shard or one worker only */
+	private static boolean isSequential(int size) {
+		return size <= SHARD_SIZE || Scheduler.getPool().getParallelism() == 1;
+	}
+
+	/** writes scores of files in [from, to) to a shared array, shards write disjoint ranges */
+	private static class ScoreAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<SourceCode> sourceCodes;
+		private final FileScorer scorer;
+		private final double[] scores;
+		private final int from;
+		private final int to;
+
+		private ScoreAction(List<SourceCode> sourceCodes, FileScorer scorer, double[] scores, int from, int to) {
+			this.sourceCodes = sourceCodes;
+			this.scorer = scorer;
+			this.scores = scores;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SHARD_SIZE) {
+				scoreShard();
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ScoreAction(sourceCodes, scorer, scores, from, mid),
+					new ScoreAction(sourceCodes, scorer, scores, mid, to));
+		}
+
+		private void scoreShard() {
+			for (int i = from; i < to; i++)
+				scores[i] = scorer.score(sourceCodes.get(i));
+		}
+	}
+
+}
@@ -1,9 +1,7 @@
 package edu.whu.pllab.buglocator.similarity;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
 
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.nd4j.linalg.ops.transforms.Transforms;
@@ -13,7 +11,7 @@ import edu.whu.pllab.buglocator.common.BugReportCorpus;
 import edu.whu.pllab.buglocator.common.Method;
 import edu.whu.pllab.buglocator.common.SourceCode;
 import edu.whu.pllab.buglocator.common.SourceCodeCorpus;
-import edu.whu.pllab.buglocator.common.TokenScore;
+import edu.whu.pllab.buglocator.common.SparseVector;
 
 public class Similarity {
 	
@@ -108,9 +106,9 @@ public class Similarity {
 		double sim = 0.0;
 		BugReportCorpus brCorpus = br.getBugReportCorpus();
 		SourceCodeCorpus codeCorpus = code.getSourceCodeCorpus();
-		List<HashMap<String, TokenScore>> brFields = new ArrayList<HashMap<String, TokenScore>>();
+		List<SparseVector> brFields = new ArrayList<SparseVector>();
 		List<Double> brFieldsNorm = new ArrayList<Double>();
-		List<HashMap<String, TokenScore>> codeFields = new ArrayList<HashMap<String, TokenScore>>();
+		List<SparseVector> codeFields = new ArrayList<SparseVector>();
 		List<Double> codeFieldsNorm = new ArrayList<Double>();
 		brFields.add(brCorpus.getSummaryTokens());
 		brFields.add(brCorpus.getDescriptionTokens());
@@ -126,12 +124,12 @@ public class Similarity {
 		codeFieldsNorm.add(codeCorpus.getCommentCorpusNorm());
 		// sum documents scores across eight combinations
 		for (int i = 0; i < brFields.size(); i++) {
-			HashMap<String, TokenScore> brFieldTokens = brFields.get(i);
+			SparseVector brFieldTokens = brFields.get(i);
 			double brFieldNorm = brFieldsNorm.get(i);
 			if (brFieldNorm == 0)
 				continue;
 			for (int j = 0; j < codeFields.size(); j++) {
-				HashMap<String, TokenScore> codeFieldTokens = codeFields.get(j);
+				SparseVector codeFieldTokens = codeFields.get(j);
 				double codeFieldNorm = codeFieldsNorm.get(j);
 				if (codeFieldNorm == 0)
 					continue;
@@ -150,9 +148,9 @@ public class Similarity {
 		double sim = 0.0;
 		BugReportCorpus brCorpus = br.getBugReportCorpus();
 		SourceCodeCorpus codeCorpus = code.getSourceCodeCorpus();
-		List<HashMap<String, TokenScore>> brFields = new ArrayList<HashMap<String, TokenScore>>();
+		List<SparseVector> brFields = new ArrayList<SparseVector>();
 		List<Double> brFieldsNorm = new ArrayList<Double>();
-		List<HashMap<String, TokenScore>> codeFields = new ArrayList<HashMap<String, TokenScore>>();
+		List<SparseVector> codeFields = new ArrayList<SparseVector>();
 		List<Double> codeFieldsNorm = new ArrayList<Double>();
 		brFields.add(brCorpus.getSummaryTokens());
 		brFields.add(brCorpus.getDescriptionTokens());
@@ -168,12 +166,12 @@ public class Similarity {
 		codeFieldsNorm.add(codeCorpus.getCommentCorpusNorm());
 		// sum documents scores across eight combinations
 		for (int i = 0; i < brFields.size(); i++) {
-			HashMap<String, TokenScore> brFieldTokens = brFields.get(i);
+			SparseVector brFieldTokens = brFields.get(i);
 			double brFieldNorm = brFieldsNorm.get(i);
 			if (brFieldNorm == 0)
 				continue;
 			for (int j = 0; j < codeFields.size(); j++) {
-				HashMap<String, TokenScore> codeFieldTokens = codeFields.get(j);
+				SparseVector codeFieldTokens = codeFields.get(j);
 				double codeFieldNorm = codeFieldsNorm.get(j);
 				if (codeFieldNorm == 0)
 					continue;
@@ -219,46 +217,40 @@ public class Similarity {
 	
 	/** Vector Space Model similarity between input BugReport and Method */
 	public double vsmSimilarity(BugReport br, Method method) {
+		return vsmSimilarity(br, method.getContentTokens(), method.getContentNorm());
+	}
+	
+	/** Vector Space Model similarity between input BugReport and method tokens, e.g. decoded from MethodVectorStore */
+	public double vsmSimilarity(BugReport br, SparseVector methodTokens, double methodNorm) {
 		double sim = 0;
 		
 		double brNorm = br.getBugReportCorpus().getContentNorm();
-		double methodNorm = method.getContentNorm();
 		// if norm value equal 0, return 0
 		if (brNorm == 0 || methodNorm == 0)
 			return sim;
 		
-		sim = vsmSimilarity(br.getBugReportCorpus().getContentTokens(), method.getContentTokens(), false)
+		sim = vsmSimilarity(br.getBugReportCorpus().getContentTokens(), methodTokens, false)
 				/ (brNorm * methodNorm);
 		
 		return sim;
 	}
 	
-	/** Vector Space Model similarity between input tokenScoreMaps */
-	public double vsmSimilarity(HashMap<String, TokenScore> tokenScoreMap1,
-			HashMap<String, TokenScore> tokenScoreMap2) {
-		return vsmSimilarity(tokenScoreMap1, tokenScoreMap2, true);
+	/** Vector Space Model similarity between input token vectors */
+	public double vsmSimilarity(SparseVector tokens1,
+			SparseVector tokens2) {
+		return vsmSimilarity(tokens1, tokens2, true);
 	}
 	
-	/** Vector Space Model similarity between input tokenScoreMaps without dividing norm value */
-	public double vsmSimilarity(HashMap<String, TokenScore> tokenScoreMap1,
-			HashMap<String, TokenScore> tokenScoreMap2, boolean norm) {
-		double sim = 0;
-		for (Entry<String, TokenScore> entry1 : tokenScoreMap1.entrySet()) {
-			if (tokenScoreMap2.containsKey(entry1.getKey())) {
-				sim += entry1.getValue().getTokenWeight() * tokenScoreMap2.get(entry1.getKey()).getTokenWeight();
-			}
-		}
+	/** Vector Space Model similarity between input token vectors without dividing norm value */
+	public double vsmSimilarity(SparseVector tokens1,
+			SparseVector tokens2, boolean norm) {
+		// merge join on sorted term ids
+		double sim = tokens1.dot(tokens2);
 		if (!norm) {
 			return sim;
 		}
 		else {
-			double norm1 = 0, norm2 = 0;
-			for (Entry<String, TokenScore> entry1 : tokenScoreMap1.entrySet()) {
-				norm1 += entry1.getValue().getTokenWeight() * entry1.getValue().getTokenWeight();
-			}
-			for (Entry<String, TokenScore> entry2 : tokenScoreMap2.entrySet()) {
-				norm2 += entry2.getValue().getTokenWeight() * entry2.getValue().getTokenWeight();
-			}
+			double norm1 = tokens1.squaredWeightSum(), norm2 = tokens2.squaredWeightSum();
 			if (norm1 == 0 || norm2 == 0)
 				return 0.0;
 			return sim / (norm1 * norm2);
@@ -267,8 +259,8 @@ public class Similarity {
 	
 	/** symmetric similarity between input BugReport and SourceCode, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
 	public double symmetricSimilarity(BugReport br, SourceCode code) {
-		HashMap<String, TokenScore> brTokens = br.getBugReportCorpus().getContentTokens();
-		HashMap<String, TokenScore> codeTokens = code.getSourceCodeCorpus().getContentTokens();
+		SparseVector brTokens = br.getBugReportCorpus().getContentTokens();
+		SparseVector codeTokens = code.getSourceCodeCorpus().getContentTokens();
 		double brContentNorm = br.getBugReportCorpus().getContentNorm();
 		double codeContentNorm = code.getSourceCodeCorpus().getContentNorm();
 		if (brContentNorm == 0 || codeContentNorm == 0)
@@ -279,8 +271,8 @@ public class Similarity {
 	
 	/** symmetric similarity between input BugReports, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
 	public double symmetricSimilarity(BugReport br1, BugReport br2) {
-		HashMap<String, TokenScore> br1Tokens = br1.getBugReportCorpus().getContentTokens();
-		HashMap<String, TokenScore> br2Tokens = br2.getBugReportCorpus().getContentTokens();
+		SparseVector br1Tokens = br1.getBugReportCorpus().getContentTokens();
+		SparseVector br2Tokens = br2.getBugReportCorpus().getContentTokens();
 		double br1ContentNorm = br1.getBugReportCorpus().getContentNorm();
 		double br2ContentNorm = br2.getBugReportCorpus().getContentNorm();
 		if (br1ContentNorm == 0 || br2ContentNorm == 0)
@@ -291,8 +283,8 @@ public class Similarity {
 	
 	/** symmetric similarity between input BugReport and method, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
 	public double symmetricSimilarity(BugReport br, Method method) {
-		HashMap<String, TokenScore> brTokens = br.getBugReportCorpus().getContentTokens();
-		HashMap<String, TokenScore> methodTokens = method.getContentTokens();
+		SparseVector brTokens = br.getBugReportCorpus().getContentTokens();
+		SparseVector methodTokens = method.getContentTokens();
 		double brContentNorm = br.getBugReportCorpus().getContentNorm();
 		double methodContentNorm = method.getContentNorm();
 		if (brContentNorm == 0 || methodContentNorm == 0)
@@ -301,35 +293,27 @@ public class Similarity {
 				+ asymmetricSimilarity(methodTokens, brTokens, false) / methodContentNorm) / 2;
 	}
 	
-	/** symmetric similarity between input tokenScoreMaps, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
-	public double symmetricSimilarity(HashMap<String, TokenScore> tokenScoreMap1,
-			HashMap<String, TokenScore> tokenScoreMap2) {
-		return (asymmetricSimilarity(tokenScoreMap1, tokenScoreMap2)
-				+ asymmetricSimilarity(tokenScoreMap2, tokenScoreMap1)) / 2;
+	/** symmetric similarity between input token vectors, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
+	public double symmetricSimilarity(SparseVector tokens1,
+			SparseVector tokens2) {
+		return (asymmetricSimilarity(tokens1, tokens2)
+				+ asymmetricSimilarity(tokens2, tokens1)) / 2;
 	}
 	
-	/** symmetric similarity between input tokenScoreMaps, sim(T, S) = sim(T->S) */
-	public double asymmetricSimilarity(HashMap<String, TokenScore> tokenScoreMap1,
-			HashMap<String, TokenScore> tokenScoreMap2) {
-		return asymmetricSimilarity(tokenScoreMap1, tokenScoreMap2, true);
+	/** symmetric similarity between input token vectors, sim(T, S) = sim(T->S) */
+	public double asymmetricSimilarity(SparseVector tokens1,
+			SparseVector tokens2) {
+		return asymmetricSimilarity(tokens1, tokens2, true);
 	}
 	
-	/** symmetric similarity between input tokenScoreMaps without dividing norm value, sim(T, S) = sim(T->S) */
-	public double asymmetricSimilarity(HashMap<String, TokenScore> tokenScoreMap1,
-			HashMap<String, TokenScore> tokenScoreMap2, boolean norm) {
-		double simSum = 0.0;
-		double weights = 0.0;
-		if (tokenScoreMap1.size() == 0 || tokenScoreMap2.size() == 0) 
+	/** symmetric similarity between input token vectors without dividing norm value, sim(T, S) = sim(T->S) */
+	public double asymmetricSimilarity(SparseVector tokens1,
+			SparseVector tokens2, boolean norm) {
+		if (tokens1.size() == 0 || tokens2.size() == 0) 
 			return 0.0;
-		for (Entry<String, TokenScore> entry1 : tokenScoreMap1.entrySet()) {
-			double sim = 0.0;
-			if(tokenScoreMap2.containsKey(entry1.getKey()))
-				sim = 1.0;
-			simSum += sim;
-			if (norm)
-				weights += entry1.getValue().getTokenWeight();
-		}
+		double simSum = tokens1.intersectionSize(tokens2);
 		if (norm) {
+			double weights = tokens1.weightSum();
 			if (weights == 0)
 				return 0.0;
 			return simSum / weights;
@@ -341,8 +325,8 @@ public class Similarity {
 	/** symmetric similarity between input bug report and source code using word vectors, 
 	 * sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
 	public double symmetricSimilarityWithWordVectors(BugReport br, SourceCode code) {
-		HashMap<String, TokenScore> brTokens = br.getBugReportCorpus().getContentTokens();
-		HashMap<String, TokenScore> codeTokens = code.getSourceCodeCorpus().getContentTokens();
+		SparseVector brTokens = br.getBugReportCorpus().getContentTokens();
+		SparseVector codeTokens = code.getSourceCodeCorpus().getContentTokens();
 		double brContentNorm = br.getBugReportCorpus().getContentNorm();
 		double codeContentNorm = code.getSourceCodeCorpus().getContentNorm();
 		if (brContentNorm == 0 || codeContentNorm == 0)
@@ -353,8 +337,8 @@ public class Similarity {
 	
 	/** symmetric similarity between input BugReports using word vectors, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
 	public double symmetricSimilarityWithWordVectors(BugReport br1, BugReport br2) {
-		HashMap<String, TokenScore> br1Tokens = br1.getBugReportCorpus().getContentTokens();
-		HashMap<String, TokenScore> br2Tokens = br2.getBugReportCorpus().getContentTokens();
+		SparseVector br1Tokens = br1.getBugReportCorpus().getContentTokens();
+		SparseVector br2Tokens = br2.getBugReportCorpus().getContentTokens();
 		double br1ContentNorm = br1.getBugReportCorpus().getContentNorm();
 		double br2ContentNorm = br2.getBugReportCorpus().getContentNorm();
 		if (br1ContentNorm == 0 || br2ContentNorm == 0)
@@ -365,8 +349,8 @@ public class Similarity {
 	
 	/** symmetric similarity between input BugReport and method using word vectors, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
 	public double symmetricSimilarityWithWordVectors(BugReport br, Method method) {
-		HashMap<String, TokenScore> brTokens = br.getBugReportCorpus().getContentTokens();
-		HashMap<String, TokenScore> methodTokens = method.getContentTokens();
+		SparseVector brTokens = br.getBugReportCorpus().getContentTokens();
+		SparseVector methodTokens = method.getContentTokens();
 		double brContentNorm = br.getBugReportCorpus().getContentNorm();
 		double methodContentNorm = method.getContentNorm();
 		if (brContentNorm == 0 || methodContentNorm == 0)
@@ -375,42 +359,44 @@ public class Similarity {
 				+ asymmetricSimilarityWithWordVectors(methodTokens, brTokens, false) / methodContentNorm) / 2;
 	}
 	
-	/** symmetric similarity between input tokenScoreMaps using word vectors, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
-	public double symmetricSimilarityWithWordVectors(HashMap<String, TokenScore> tokenScoreMap1,
-			HashMap<String, TokenScore> tokenScoreMap2) {
-		return (asymmetricSimilarityWithWordVectors(tokenScoreMap1, tokenScoreMap2)
-				+ asymmetricSimilarityWithWordVectors(tokenScoreMap2, tokenScoreMap1)) / 2;
+	/** symmetric similarity between input token vectors using word vectors, sim(T, S) = (sim(T->S) + sim(S->T)) / 2 */
+	public double symmetricSimilarityWithWordVectors(SparseVector tokens1,
+			SparseVector tokens2) {
+		return (asymmetricSimilarityWithWordVectors(tokens1, tokens2)
+				+ asymmetricSimilarityWithWordVectors(tokens2, tokens1)) / 2;
 	}
 	
-	/** symmetric similarity between input tokenScoreMaps using word vectors */
-	public double asymmetricSimilarityWithWordVectors(HashMap<String, TokenScore> tokenScoreMap1,
-			HashMap<String, TokenScore> tokenScoreMap2) {
-		return asymmetricSimilarityWithWordVectors(tokenScoreMap1, tokenScoreMap2, true);
+	/** symmetric similarity between input token vectors using word vectors */
+	public double asymmetricSimilarityWithWordVectors(SparseVector tokens1,
+			SparseVector tokens2) {
+		return asymmetricSimilarityWithWordVectors(tokens1, tokens2, true);
 	}
 	
-	/** symmetric similarity between input tokenScoreMaps using word vectors, if norm is true, normalized similairty result*/
-	public double asymmetricSimilarityWithWordVectors(HashMap<String, TokenScore> tokenScoreMap1,
-			HashMap<String, TokenScore> tokenScoreMap2, boolean norm) {
+	/** symmetric similarity between input token vectors using word vectors, if norm is true, normalized similairty result*/
+	public double asymmetricSimilarityWithWordVectors(SparseVector tokens1,
+			SparseVector tokens2, boolean norm) {
 		double simSum = 0.0;
 		double weights = 0.0;
-		if (tokenScoreMap1.size() == 0 || tokenScoreMap2.size() == 0) 
+		if (tokens1.size() == 0 || tokens2.size() == 0) 
 			return 0.0;
-		for (Entry<String, TokenScore> entry1 : tokenScoreMap1.entrySet()) {
-			if (!wordVectors.hasWord(entry1.getKey()))
+		for (int i = 0; i < tokens1.size(); i++) {
+			String token1 = tokens1.getTerm(i);
+			if (!wordVectors.hasWord(token1))
 				continue;
 			double maxSim = 0.0;
-			for (Entry<String, TokenScore> entry2 : tokenScoreMap2.entrySet()) {
-				if (entry1.getKey().equals(entry2.getKey()))
+			for (int j = 0; j < tokens2.size(); j++) {
+				if (tokens1.getTermId(i) == tokens2.getTermId(j))
 					maxSim = 1.0;
 				else {
-					double sim = wordVectors.hasWord(entry2.getKey()) ? wordVectors.similarity(entry1.getKey(), entry2.getKey()) : 0;
+					String token2 = tokens2.getTerm(j);
+					double sim = wordVectors.hasWord(token2) ? wordVectors.similarity(token1, token2) : 0;
 					if (sim > maxSim)
 						maxSim = sim;
 				}
 			}
 			simSum += maxSim;
 			if (norm)
-				weights += entry1.getValue().getTokenWeight();
+				weights += tokens1.getWeight(i);
 		}
 		if (norm) {
 			if (weights == 0)
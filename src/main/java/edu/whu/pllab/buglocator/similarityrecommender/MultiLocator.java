@@ -6,22 +6,12 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.common.BugReport;
@@ -30,8 +20,11 @@ import edu.whu.pllab.buglocator.common.SourceCode;
 import edu.whu.pllab.buglocator.common.SourceCodeRepository;
 import edu.whu.pllab.buglocator.common.TokenScore.ScoreType;
 import edu.whu.pllab.buglocator.evaluation.Evaluator;
+import edu.whu.pllab.buglocator.evaluation.TopKCollector;
 import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore;
+import edu.whu.pllab.buglocator.similarity.ShardedScorer;
 import edu.whu.pllab.buglocator.similarity.Similarity;
+import edu.whu.pllab.buglocator.utils.XMLWriter;
 import edu.whu.pllab.buglocator.vectorizer.BugReportTfidfVectorizer;
 import edu.whu.pllab.buglocator.vectorizer.SourceCodeTfidfVectorizer;
 
@@ -93,7 +86,10 @@ public class MultiLocator {
 				HashMap<BugReport, List<IntegratedScore>> integratedScoresMap = new HashMap<BugReport, List<IntegratedScore>>();
 				// sort bug reports by commit time
 				List<BugReport> sortedBugReports = brRepo.getSortedBugReports();
-				List<List<IntegratedScore>> predictResults = new ArrayList<List<IntegratedScore>>();
+				// predict results are written as soon as each bug report is handled
+				String output = Paths.get(comparisonDir.getAbsolutePath(), resultPath).toString();
+				logger.info("Saving predict results to " + output + "...");
+				XMLWriter predictResultsWriter = startPredictResults(output, similarityName);
 				
 				int count = 0;
 				for (BugReport bugReport : sortedBugReports) {
@@ -108,96 +104,118 @@ public class MultiLocator {
 						if (bugReport.isModified(score.getPath()))
 							predictResult.add(score);
 					}
-					predictResults.add(predictResult);
+					predictResult.sort(new RankComparator());
+					writePredictResult(predictResultsWriter, count, bugReport, predictResult);
 				}
+				finishPredictResults(predictResultsWriter);
 				// evaluate current similarity method
 				Evaluator evaluator = new Evaluator(integratedScoresMap);
 				evaluator.evaluate();
 				writer.write(similarityName + ":\n" + evaluator.getExperimentResult().toString() + "\n\n");
-				
-				String output = Paths.get(comparisonDir.getAbsolutePath(), resultPath).toString();
-				logger.info("Saving predict results to " + output + "...");
-				savePredictResults(sortedBugReports, predictResults, output, similarityName);
 			}
 		}
 		
 		writer.close();
 	}
 	
-	public static List<IntegratedScore> calculateSimilarity(BugReport bugReport,
-			HashMap<String, SourceCode> sourceCodeMap, int similarityType) {
-		List<IntegratedScore> integratedScoreList = new ArrayList<IntegratedScore>();
-		Similarity sim = new Similarity();
-		for (Entry<String, SourceCode> entry : sourceCodeMap.entrySet()) {
-			double similarity = 0;
-			if (similarityType == RecommenderProperty.RVSM_NTFIDF || similarityType == RecommenderProperty.RVSM_WFIDF) {
-				similarity = sim.similarity(bugReport, entry.getValue(), Similarity.VSM);
-				similarity *= entry.getValue().getLengthScore(); // multiply length score
-			} else if (similarityType == RecommenderProperty.STRUCTURE_NTFIDF || similarityType == RecommenderProperty.STRUCTURE_WFIDF) {
-				similarity = sim.structuralSimilarity(bugReport, entry.getValue());
-				similarity *= entry.getValue().getLengthScore();
-			} else if (similarityType == RecommenderProperty.SYMMETRIC_NTFIDF || similarityType == RecommenderProperty.SYMMETRIC_WFIDF) {
-				similarity = sim.similarity(bugReport, entry.getValue(), Similarity.SYMMETRIC);
-				similarity *= entry.getValue().getLengthScore();
+	public static List<IntegratedScore> calculateSimilarity(final BugReport bugReport,
+			HashMap<String, SourceCode> sourceCodeMap, final int similarityType) {
+		final Similarity sim = new Similarity();
+		// score shards of files in parallel, files keep the iteration order of sourceCodeMap
+		List<String> paths = new ArrayList<String>(sourceCodeMap.keySet());
+		List<SourceCode> sourceCodes = new ArrayList<SourceCode>(sourceCodeMap.values());
+		double[] scores = ShardedScorer.scores(sourceCodes, new ShardedScorer.FileScorer() {
+			@Override
+			public double score(SourceCode code) {
+				double similarity = 0;
+				if (similarityType == RecommenderProperty.RVSM_NTFIDF || similarityType == RecommenderProperty.RVSM_WFIDF) {
+					similarity = sim.similarity(bugReport, code, Similarity.VSM);
+					similarity *= code.getLengthScore(); // multiply length score
+				} else if (similarityType == RecommenderProperty.STRUCTURE_NTFIDF || similarityType == RecommenderProperty.STRUCTURE_WFIDF) {
+					similarity = sim.structuralSimilarity(bugReport, code);
+					similarity *= code.getLengthScore();
+				} else if (similarityType == RecommenderProperty.SYMMETRIC_NTFIDF || similarityType == RecommenderProperty.SYMMETRIC_WFIDF) {
+					similarity = sim.similarity(bugReport, code, Similarity.SYMMETRIC);
+					similarity *= code.getLengthScore();
+				}
+				return similarity;
 			}
-			IntegratedScore score = new IntegratedScore(entry.getKey(), false, null);
-			score.setIntegratedScore(similarity);
+		});
+		List<IntegratedScore> integratedScoreList = new ArrayList<IntegratedScore>();
+		for (int i = 0; i < scores.length; i++) {
+			IntegratedScore score = new IntegratedScore(paths.get(i), false, null);
+			score.setIntegratedScore(scores[i]);
 			integratedScoreList.add(score);
 		}
-		integratedScoreList.sort(new IntegratedScore.IntegratedScoreComparator());
-		for (int i = 0; i < integratedScoreList.size(); i++) {
-			integratedScoreList.get(i).rank = i;
+		// rank fixed files only instead of sorting all integratedScores
+		for (int i = 0; i < scores.length; i++) {
+			IntegratedScore score = integratedScoreList.get(i);
+			if (bugReport.isModified(score.getPath()))
+				score.rank = TopKCollector.rank(scores, i);
 		}
 		return integratedScoreList;
 	}
 	
+	/** compare IntegratedScore by rank in increasing order */
+	private static class RankComparator implements Comparator<IntegratedScore> {
+		
+		@Override
+		public int compare(IntegratedScore r1, IntegratedScore r2) {
+			return Integer.compare(r1.rank, r2.rank);
+		}
+	}
+	
 	public static void savePredictResults(List<BugReport> bugReports, List<List<IntegratedScore>> predictResults,
 			String output, String similarityType) {
 		logger.info("Saving bug report repository as xml to " + output + "...");
-		DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
+		XMLWriter writer = startPredictResults(output, similarityType);
+		for (int i = 0; i < bugReports.size(); i++)
+			writePredictResult(writer, i + 1, bugReports.get(i), predictResults.get(i));
+		finishPredictResults(writer);
+	}
+	
+	/** open predict results xml file, return null if failed */
+	private static XMLWriter startPredictResults(String output, String similarityType) {
 		try {
-			DocumentBuilder domBuilder = domFactory.newDocumentBuilder();
-			Document doc = domBuilder.newDocument();
-			
-			Element root = doc.createElement("PredictResults");
-			root.setAttribute("product", Property.getInstance().getProduct());
-			root.setAttribute("SimilarityType", similarityType);
-			doc.appendChild(root);
-			for (int i = 0; i < bugReports.size(); i++) {
-				BugReport bugReport = bugReports.get(i);
-				List<IntegratedScore> predictResult = predictResults.get(i);
-				// format result string
-				String resultStr = "";
-				for (IntegratedScore score : predictResult) {
-					resultStr += String.valueOf(score.rank) + ":" + score.getPath() + "\n";
-				}
-				
-				Element bugElement = doc.createElement("bug");
-				
-				Element idElement = doc.createElement("id");
-				idElement.appendChild(doc.createTextNode(String.valueOf(i + 1)));
-				bugElement.appendChild(idElement);
-				
-				Element bugIdElement = doc.createElement("bug_id");
-				bugIdElement.appendChild(doc.createTextNode(String.valueOf(bugReport.getBugID())));
-				bugElement.appendChild(bugIdElement);
-				
-				Element resultElement = doc.createElement("result");
-				resultElement.appendChild(doc.createTextNode(resultStr.trim()));
-				bugElement.appendChild(resultElement);
-				
-				root.appendChild(bugElement);
-			}
-			doc.setXmlStandalone(true);
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-			DOMSource source = new DOMSource(doc);
-			StreamResult result = new StreamResult(new File(output));
-			transformer.transform(source, result);
+			XMLWriter writer = new XMLWriter(output);
+			writer.startElement("PredictResults");
+			writer.attribute("product", Property.getInstance().getProduct());
+			writer.attribute("SimilarityType", similarityType);
+			return writer;
 		} catch (Exception e) {
 			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/** write predict result of a bug report, id is the 1-based index of the bug report */
+	private static void writePredictResult(XMLWriter writer, int id, BugReport bugReport,
+			List<IntegratedScore> predictResult) {
+		if (writer == null)
+			return;
+		// format result string
+		StringBuilder resultStr = new StringBuilder();
+		for (IntegratedScore score : predictResult) {
+			resultStr.append(score.rank).append(":").append(score.getPath()).append("\n");
+		}
+		try {
+			writer.startElement("bug");
+			writer.textElement("id", String.valueOf(id));
+			writer.textElement("bug_id", String.valueOf(bugReport.getBugID()));
+			writer.textElement("result", resultStr.toString().trim());
+			writer.endElement();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private static void finishPredictResults(XMLWriter writer) {
+		if (writer == null)
+			return;
+		try {
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 
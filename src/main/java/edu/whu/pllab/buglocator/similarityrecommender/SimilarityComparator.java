@@ -2,7 +2,6 @@ package edu.whu.pllab.buglocator.similarityrecommender;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -22,6 +21,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import edu.whu.pllab.buglocator.Property;
+import edu.whu.pllab.buglocator.utils.FileUtil;
 
 public class SimilarityComparator {
 	
@@ -82,8 +82,9 @@ public class SimilarityComparator {
 		logger.info("Loading predict result data from " + file);
 		DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
 		DocumentBuilder domBuilder = domFactory.newDocumentBuilder();
-		InputStream is = new FileInputStream(file);
+		InputStream is = FileUtil.openInputStream(file);
 		Document doc = domBuilder.parse(is);
+		is.close();
 		Element root = doc.getDocumentElement();
 		NodeList nodeList = root.getChildNodes();
 		if (nodeList != null) {
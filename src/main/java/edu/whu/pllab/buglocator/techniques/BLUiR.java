@@ -2,14 +2,12 @@ package edu.whu.pllab.buglocator.techniques;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,8 +19,10 @@ import edu.whu.pllab.buglocator.common.SourceCode;
 import edu.whu.pllab.buglocator.common.SourceCodeRepository;
 import edu.whu.pllab.buglocator.common.TokenScore.ScoreType;
 import edu.whu.pllab.buglocator.evaluation.Evaluator;
+import edu.whu.pllab.buglocator.index.BugReportIndex;
+import edu.whu.pllab.buglocator.index.CSRMatrix;
+import edu.whu.pllab.buglocator.index.InvertedIndex;
 import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore;
-import edu.whu.pllab.buglocator.similarity.Similarity;
 import edu.whu.pllab.buglocator.vectorizer.BugReportTfidfVectorizer;
 import edu.whu.pllab.buglocator.vectorizer.SourceCodeTfidfVectorizer;
 
@@ -34,11 +34,12 @@ public class BLUiR {
 	private static final double alpha = 0.2;
 	private static boolean usingSimilarBugReports = false;
 	
-	private static Similarity sim = new Similarity();
 	private static String[] products = {"BugLocator_SWT", "BugLocator_AspectJ", "BugLocator_Eclipse", "BugLocator_ZXing"};
 	
 	private static HashMap<String, SourceCode> sourceCodeMap;
 	private static HashMap<Integer, BugReport> bugReports;
+	private static InvertedIndex codeIndex;
+	private static BugReportIndex brIndex;
 	
 	public static void main(String[] args) throws Exception {
 		for (String product : products) {
@@ -51,6 +52,8 @@ public class BLUiR {
 		Property.USE_STRUCTURED_INFORMATION = true;
 		Property property = Property.loadInstance(product);
 		property.setCodeRepositoryXMLPath(new File(property.getWorkingDir(), "codeRepository_structured.xml").getAbsolutePath());
+		property.setCodeRepositoryBinaryPath(new File(property.getWorkingDir(), "codeRepository_structured.bin").getAbsolutePath());
+		property.setParseCachePath(new File(property.getWorkingDir(), "parseCache_structured.bin").getAbsolutePath());
 
 		// record evaluate result
 		// BufferedWriter logWriter = new BufferedWriter(new FileWriter(property.getEvaluateLogPath()));
@@ -58,7 +61,6 @@ public class BLUiR {
 		// initialize bugReport repository and source code repository
 		BugReportRepository brRepo = new BugReportRepository();
 		SourceCodeRepository codeRepo = new SourceCodeRepository();
-		codeRepo.saveSourceCodeRepoToXML(property.getCodeRepositoryXMLPath(), product);
 		
 		sourceCodeMap = codeRepo.getSourceCodeMap();
 		bugReports = brRepo.getBugReports();
@@ -69,8 +71,6 @@ public class BLUiR {
 	
 	public static void execute() throws InterruptedException, ExecutionException {
 		HashMap<BugReport, List<IntegratedScore>> integratedScoreMap = new HashMap<BugReport, List<IntegratedScore>>(); 
-		HashMap<BugReport, HashMap<String, Double>> strucSimiMap = null;
-		HashMap<BugReport, HashMap<String, Double>> simiScoreMap = null;
 		
 		// calculate source code tokens weight
 		SourceCodeTfidfVectorizer codeVectorizer = new SourceCodeTfidfVectorizer(sourceCodeMap);
@@ -78,26 +78,38 @@ public class BLUiR {
 		codeVectorizer.train();
 		codeVectorizer.calculateTokensWeight(sourceCodeMap);
 		
+		// build inverted index of source code structured tokens
+		codeIndex = new InvertedIndex(sourceCodeMap, true);
+		
 		// calculate bug reports tokens weight using code corpus's tfidf model
 		BugReportTfidfVectorizer brVectorizer = new BugReportTfidfVectorizer(codeVectorizer.getTfidf());
 		brVectorizer.setTokenScoreType(ScoreType.OKAPITFIDF);
 		brVectorizer.calculateTokensWeight(bugReports);
 		
-		// calculate strucSimiMap
-		int count = 0;
-		strucSimiMap = new HashMap<BugReport, HashMap<String, Double>>();
-		ExecutorService vsmES = Executors.newFixedThreadPool(Property.THREAD_COUNT);
-		for (Entry<Integer, BugReport> brEntry : bugReports.entrySet()) {
-			count++;
-			Callable<HashMap<String, Double>> strucSimiCalculator = new StructureSimilarityCalculator(brEntry.getValue(), count);
-			Future<HashMap<String, Double>> future = vsmES.submit(strucSimiCalculator);
-			strucSimiMap.put(brEntry.getValue(), future.get());
-		}
-		vsmES.shutdown();
-		while (!vsmES.isTerminated()) {
+		// the matrices keep the tokens weight of code corpus's tfidf model, so bug reports can be re-weighted for
+		// SimiScore later
+		List<BugReport> brList = new ArrayList<BugReport>(bugReports.values());
+		int[] brFields = { CSRMatrix.SUMMARY_FIELD, CSRMatrix.DESCRIPTION_FIELD };
+		int[] codeFields = { InvertedIndex.CLASS_FIELD, InvertedIndex.METHOD_FIELD, InvertedIndex.VARIABLE_FIELD,
+				InvertedIndex.COMMENT_FIELD };
+		CSRMatrix[] brMatrices = new CSRMatrix[brFields.length * codeFields.length];
+		CSRMatrix[] codeMatrices = new CSRMatrix[brFields.length * codeFields.length];
+		for (int i = 0; i < brFields.length; i++) {
+			CSRMatrix brMatrix = CSRMatrix.ofBugReports(brList, brFields[i]);
+			for (int j = 0; j < codeFields.length; j++) {
+				brMatrices[i * codeFields.length + j] = brMatrix;
+				if (i == 0)
+					codeMatrices[j] = CSRMatrix.ofSourceCodes(codeIndex.getDocuments(), codeFields[j]);
+				else
+					codeMatrices[i * codeFields.length + j] = codeMatrices[j];
+			}
 		}
 		
-		// calculate SimiScore map if needed
+		// calculate SimiScore of all bug reports first if needed, then strucSimi and final score row by row. The two
+		// products are not overlapped: a final score task waiting for a SimiScore row would block a worker of the
+		// shared pool. The small SimiScore rows are kept until their strucSimi is calculated
+		// and stay null without similar bug reports
+		List<HashMap<String, Double>> simiScoreRows = newRows(brList.size());
 		if (usingSimilarBugReports) {
 			
 			// train bug reports' tfidf model and re-calculate bug reports' weight
@@ -105,116 +117,119 @@ public class BLUiR {
 			newBRVectorizer.train();
 			newBRVectorizer.calculateTokensWeight(bugReports);
 			
-			count = 0;
-			simiScoreMap = new HashMap<BugReport, HashMap<String, Double>>();
-			ExecutorService simiES = Executors.newFixedThreadPool(Property.THREAD_COUNT);
-			for (Entry<Integer, BugReport> brEntry : bugReports.entrySet()) {
-				count++;
-				Callable<HashMap<String, Double>> simiScoreCalculator = new SimiScoreCalculator(brEntry.getValue(), count);
-				Future<HashMap<String, Double>> future = simiES.submit(simiScoreCalculator);
-				simiScoreMap.put(brEntry.getValue(), future.get());
-			}
-			simiES.shutdown();
-			while (!simiES.isTerminated()) {
-			}
+			// build inverted index of bug reports tokens
+			brIndex = new BugReportIndex(brList);
+			
+			// calculate similarities between all bug reports by sparse matrix product
+			CSRMatrix newBRMatrix = CSRMatrix.ofBugReports(brList);
+			newBRMatrix.cosineProduct(newBRMatrix, 0, true, new SimiScoreCalculator(simiScoreRows));
+			checkRows(simiScoreRows, brList, "SimiScore");
 		}
 		
-		// calculate final score
-		ExecutorService finalES = Executors.newFixedThreadPool(Property.THREAD_COUNT);
-		for (Entry<Integer, BugReport> brEntry : bugReports.entrySet()) {
-			BugReport br = brEntry.getValue();
-			Callable<List<IntegratedScore>> finalScoreCalculator;
-			if (usingSimilarBugReports)
-				finalScoreCalculator = new FinalScoreCalculator(br, strucSimiMap.get(br), simiScoreMap.get(br));
-			else 
-				finalScoreCalculator = new FinalScoreCalculator(br, strucSimiMap.get(br), null);
-			Future<List<IntegratedScore>> future = finalES.submit(finalScoreCalculator);
-			integratedScoreMap.put(brEntry.getValue(), future.get());
-		}
-		finalES.shutdown();
-		while (!finalES.isTerminated()) {
-		}
+		// calculate strucSimi by summing products of bug reports fields and source code fields matrices. The final
+		// score of a bug report is calculated by the row handler as soon as its strucSimi is calculated, so the
+		// strucSimi rows, each with a score of every file, are never buffered
+		List<List<IntegratedScore>> finalScoreRows = newRows(brList.size());
+		// BM25 weighted tokens, field similarities do not need to normalize
+		CSRMatrix.sumProduct(brMatrices, codeMatrices, false, 0, false,
+				new FinalScoreCalculator(brList, simiScoreRows, finalScoreRows));
+		checkRows(finalScoreRows, brList, "Final score");
+		
+		// collect final scores in bug reports order
+		for (int i = 0; i < brList.size(); i++)
+			integratedScoreMap.put(brList.get(i), finalScoreRows.get(i));
 		
 		// evaluate
 		Evaluator evaluator = new Evaluator(integratedScoreMap);
 		evaluator.evaluate();
 	}
 	
-	// Worker thread for calculating StructureSimilarity
-	private static class StructureSimilarityCalculator implements Callable<HashMap<String, Double>> {
+	// Handler of bug reports similarity matrix rows, calculating SimiScore
+	private static class SimiScoreCalculator implements CSRMatrix.RowHandler {
 
-		private BugReport br;
-		private int index;
+		private List<HashMap<String, Double>> simiScoreRows;
+		private AtomicInteger count;
 		
-		public StructureSimilarityCalculator(BugReport br, int index) {
-			this.br = br;
-			this.index = index;
+		public SimiScoreCalculator(List<HashMap<String, Double>> simiScoreRows) {
+			this.simiScoreRows = simiScoreRows;
+			this.count = new AtomicInteger();
 		}
 		
 		@Override
-		public HashMap<String, Double> call() throws Exception {
+		public void handle(int row, int[] columns, double[] similarities) {
+			int index = count.incrementAndGet();
 			if (index % 100 == 0) 
 				logger.info(index + " bug reports handled.");
-			HashMap<String, Double> strucSimiMap = calculateStructureSimilarityScore(br, sourceCodeMap);
-			return strucSimiMap;
+			HashMap<String, Double> simiScores = normalizeSimiScore(
+					brIndex.simiScores(row, columns, similarities, BugReportIndex.FIRST_IN_DOCUMENT_ORDER));
+			simiScoreRows.set(row, simiScores);
 		}
 		
 	}
 	
-	// Worker thread for calculating SimiScore
-	private static class SimiScoreCalculator implements Callable<HashMap<String, Double>> {
+	// Handler of summed bug reports and source code files fields similarity matrix rows, calculating
+	// StructureSimilarity and final score
+	private static class FinalScoreCalculator implements CSRMatrix.RowHandler {
 
-		private BugReport br;
-		private int index;
+		private List<BugReport> brList;
+		private List<HashMap<String, Double>> simiScoreRows;
+		private List<List<IntegratedScore>> finalScoreRows;
+		private AtomicInteger count;
 		
-		public SimiScoreCalculator(BugReport br, int index) {
-			this.br = br;
-			this.index = index;
+		public FinalScoreCalculator(List<BugReport> brList, List<HashMap<String, Double>> simiScoreRows,
+				List<List<IntegratedScore>> finalScoreRows) {
+			this.brList = brList;
+			this.simiScoreRows = simiScoreRows;
+			this.finalScoreRows = finalScoreRows;
+			this.count = new AtomicInteger();
 		}
 		
 		@Override
-		public HashMap<String, Double> call() throws Exception {
+		public void handle(int row, int[] columns, double[] similarities) {
+			int index = count.incrementAndGet();
 			if (index % 100 == 0) 
 				logger.info(index + " bug reports handled.");
-			HashMap<String, Double> simiScoreMap = calculateSimiScore(br, bugReports);
-			return simiScoreMap;
+			double[] strucSims = new double[codeIndex.size()];
+			for (int i = 0; i < columns.length; i++)
+				strucSims[columns[i]] = similarities[i];
+			HashMap<String, Double> strucSimiMap = calculateStructureSimilarityScore(strucSims, codeIndex);
+			// SimiScore is calculated before, the used row is no longer kept
+			HashMap<String, Double> simiScoreMap = simiScoreRows.set(row, null);
+			finalScoreRows.set(row, calculateFinalScore(brList.get(row), strucSimiMap, simiScoreMap));
 		}
 		
 	}
 	
-	// Worker thread for evaluating
-	private static class FinalScoreCalculator implements Callable<List<IntegratedScore>> {
-
-		private BugReport br;
-		private HashMap<String, Double> strucSimiMap;
-		private HashMap<String, Double> simiScoreMap;
-		
-		public FinalScoreCalculator(BugReport br, HashMap<String, Double> strucSimiMap, HashMap<String, Double> simiScoreMap) {
-			this.br = br;
-			this.strucSimiMap = strucSimiMap;
-			this.simiScoreMap = simiScoreMap;
-		}
-		
-		@Override
-		public List<IntegratedScore> call() throws Exception {
-			List<IntegratedScore> integratedScores = calculateFinalScore(br, strucSimiMap, simiScoreMap);
-			return integratedScores;
+	/** rows of given size, each row is set by a row handler */
+	private static <T> List<T> newRows(int size) {
+		return new ArrayList<T>(Collections.<T>nCopies(size, null));
+	}
+	
+	/** check that a row handler has set each row, rows of a failed product worker are lost */
+	private static void checkRows(List<?> rows, List<BugReport> brList, String scoreName) {
+		for (int i = 0; i < rows.size(); i++) {
+			if (rows.get(i) == null)
+				throw new IllegalStateException(scoreName + " of bug report " + brList.get(i).getBugID()
+						+ " is not calculated");
 		}
-		
 	}
-
-	public static HashMap<String, Double> calculateStructureSimilarityScore(BugReport br, HashMap<String, SourceCode> sourceCodeMap) {
+	
+	public static HashMap<String, Double> calculateStructureSimilarityScore(BugReport br, InvertedIndex codeIndex) {
+		// BM25 weighted tokens, field similarities do not need to normalize
+		return calculateStructureSimilarityScore(codeIndex.structuralScores(br, false), codeIndex);
+	}
+	
+	/** calculate structure similarity score from structural score of each document of codeIndex */
+	public static HashMap<String, Double> calculateStructureSimilarityScore(double[] strucSims, InvertedIndex codeIndex) {
 		HashMap<String, Double> strucSimiEntry = new HashMap<String, Double>();
 		double max = Double.MIN_VALUE, min = Double.MAX_VALUE;
-		for (Entry<String, SourceCode> entry : sourceCodeMap.entrySet()) {
-			double strucSim;
-//			strucSim = sim.vsmSimilarity(br, entry.getValue()) * entry.getValue().getLengthScore();
-			strucSim = sim.BM25StructuralSimilarity(br, entry.getValue());
+		for (int doc = 0; doc < strucSims.length; doc++) {
+			double strucSim = strucSims[doc];
 			if (strucSim > max)
 				max = strucSim;
 			if (strucSim < min)
 				min = strucSim;
-			strucSimiEntry.put(entry.getKey(), strucSim);
+			strucSimiEntry.put(codeIndex.getDocument(doc).getPath(), strucSim);
 		}
 		// normalization
 		for (Entry<String, Double> entry : strucSimiEntry.entrySet()) {
@@ -223,21 +238,11 @@ public class BLUiR {
 		return strucSimiEntry;
 	}
 	
-	public static HashMap<String, Double> calculateSimiScore(BugReport br, HashMap<Integer, BugReport> bugReports) {
-		HashMap<String, Double> simiScoreMap = new HashMap<String, Double>();
-		for (Entry<Integer, BugReport> entry : bugReports.entrySet()) {
-			if (entry.getKey() == br.getBugID())
-				continue;
-			int numOfFixedFiles = entry.getValue().getFixedFiles().size();
-			double s = sim.vsmSimilarity(br, entry.getValue());
-			for (String fixedFile : entry.getValue().getFixedFiles()) {
-				if (!simiScoreMap.containsKey(fixedFile)) 
-					simiScoreMap.put(fixedFile, 0.0);
-				else {
-					simiScoreMap.put(fixedFile, simiScoreMap.get(fixedFile) + s / numOfFixedFiles);
-				}
-			}
-		}
+	public static HashMap<String, Double> calculateSimiScore(BugReport br, BugReportIndex brIndex) {
+		return normalizeSimiScore(brIndex.simiScores(br, BugReportIndex.FIRST_IN_DOCUMENT_ORDER));
+	}
+	
+	private static HashMap<String, Double> normalizeSimiScore(HashMap<String, Double> simiScoreMap) {
 		// normalization
 		double max = Double.MIN_VALUE;
 		for (Entry<String, Double> entry : simiScoreMap.entrySet()) {
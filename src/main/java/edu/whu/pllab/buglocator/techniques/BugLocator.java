@@ -1,14 +1,12 @@
 package edu.whu.pllab.buglocator.techniques;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,8 +17,10 @@ import edu.whu.pllab.buglocator.common.BugReportRepository;
 import edu.whu.pllab.buglocator.common.SourceCode;
 import edu.whu.pllab.buglocator.common.SourceCodeRepository;
 import edu.whu.pllab.buglocator.evaluation.Evaluator;
+import edu.whu.pllab.buglocator.index.BugReportIndex;
+import edu.whu.pllab.buglocator.index.CSRMatrix;
+import edu.whu.pllab.buglocator.index.InvertedIndex;
 import edu.whu.pllab.buglocator.rankingmodel.IntegratedScore;
-import edu.whu.pllab.buglocator.similarity.Similarity;
 import edu.whu.pllab.buglocator.vectorizer.BugReportTfidfVectorizer;
 import edu.whu.pllab.buglocator.vectorizer.SourceCodeTfidfVectorizer;
 
@@ -32,11 +32,12 @@ public class BugLocator {
 	private static boolean usingSimilarBugReports = true;
 	private static boolean usingRevisedVSMModels = true;  // if false, using classic VSM models (without using length score)
 	
-	private static Similarity sim = new Similarity();
 	private static String[] products = {"BugLocator_SWT", "BugLocator_AspectJ", "BugLocator_Eclipse", "BugLocator_ZXing"};
 	
 	private static HashMap<String, SourceCode> sourceCodeMap;
 	private static HashMap<Integer, BugReport> bugReports;
+	private static InvertedIndex codeIndex;
+	private static BugReportIndex brIndex;
 	
 	public static void main(String[] args) throws Exception {
 		for (String product : products) {
@@ -68,33 +69,29 @@ public class BugLocator {
 	
 	public static void execute() throws InterruptedException, ExecutionException {
 		HashMap<BugReport, List<IntegratedScore>> integratedScoreMap = new HashMap<BugReport, List<IntegratedScore>>(); 
-		HashMap<BugReport, HashMap<String, Double>> VSMScoreMap = null;
-		HashMap<BugReport, HashMap<String, Double>> simiScoreMap = null;
 		
 		// calculate source code tokens weight
 		SourceCodeTfidfVectorizer codeVectorizer = new SourceCodeTfidfVectorizer(sourceCodeMap);
 		codeVectorizer.train();
 		codeVectorizer.calculateTokensWeight(sourceCodeMap);
 		
+		// build inverted index of source code tokens
+		codeIndex = new InvertedIndex(sourceCodeMap, false);
+		
 		// calculate bug reports tokens weight using code corpus's tfidf model
 		BugReportTfidfVectorizer brVectorizer = new BugReportTfidfVectorizer(codeVectorizer.getTfidf());
 		brVectorizer.calculateTokensWeight(bugReports);
 		
-		// calculate VSMScore map
-		int count = 0;
-		VSMScoreMap = new HashMap<BugReport, HashMap<String, Double>>();
-		ExecutorService vsmES = Executors.newFixedThreadPool(Property.THREAD_COUNT);
-		for (Entry<Integer, BugReport> brEntry : bugReports.entrySet()) {
-			count++;
-			Callable<HashMap<String, Double>> vsmScoreCalculator = new VSMScoreCalculator(brEntry.getValue(), count);
-			Future<HashMap<String, Double>> future = vsmES.submit(vsmScoreCalculator);
-			VSMScoreMap.put(brEntry.getValue(), future.get());
-		}
-		vsmES.shutdown();
-		while (!vsmES.isTerminated()) {
-		}
+		// the matrix keeps the tokens weight of code corpus's tfidf model, so bug reports can be re-weighted for
+		// SimiScore later
+		List<BugReport> brList = new ArrayList<BugReport>(bugReports.values());
+		CSRMatrix brMatrix = CSRMatrix.ofBugReports(brList);
 		
-		// calculate SimiScore map if needed
+		// calculate SimiScore of all bug reports first if needed, then VSMScore and final score row by row. The two
+		// products are not overlapped: a final score task waiting for a SimiScore row would block a worker of the
+		// shared pool. The small SimiScore rows are kept until their VSMScore is calculated
+		// and stay null without similar bug reports
+		List<HashMap<String, Double>> simiScoreRows = newRows(brList.size());
 		if (usingSimilarBugReports) {
 			
 			// train bug reports' tfidf model and re-calculate bug reports' weight
@@ -102,35 +99,26 @@ public class BugLocator {
 			newBRVectorizer.train();
 			newBRVectorizer.calculateTokensWeight(bugReports);
 			
-			count = 0;
-			simiScoreMap = new HashMap<BugReport, HashMap<String, Double>>();
-			ExecutorService simiES = Executors.newFixedThreadPool(Property.THREAD_COUNT);
-			for (Entry<Integer, BugReport> brEntry : bugReports.entrySet()) {
-				count++;
-				Callable<HashMap<String, Double>> simiScoreCalculator = new SimiScoreCalculator(brEntry.getValue(), count);
-				Future<HashMap<String, Double>> future = simiES.submit(simiScoreCalculator);
-				simiScoreMap.put(brEntry.getValue(), future.get());
-			}
-			simiES.shutdown();
-			while (!simiES.isTerminated()) {
-			}
+			// build inverted index of bug reports tokens
+			brIndex = new BugReportIndex(brList);
+			
+			// calculate similarities between all bug reports by sparse matrix product
+			CSRMatrix newBRMatrix = CSRMatrix.ofBugReports(brList);
+			newBRMatrix.cosineProduct(newBRMatrix, 0, true, new SimiScoreCalculator(simiScoreRows));
+			checkRows(simiScoreRows, brList, "SimiScore");
 		}
 		
-		// calculate final score
-		ExecutorService finalES = Executors.newFixedThreadPool(Property.THREAD_COUNT);
-		for (Entry<Integer, BugReport> brEntry : bugReports.entrySet()) {
-			BugReport br = brEntry.getValue();
-			Callable<List<IntegratedScore>> finalScoreCalculator;
-			if (usingSimilarBugReports)
-				finalScoreCalculator = new FinalScoreCalculator(br, VSMScoreMap.get(br), simiScoreMap.get(br));
-			else 
-				finalScoreCalculator = new FinalScoreCalculator(br, VSMScoreMap.get(br), null);
-			Future<List<IntegratedScore>> future = finalES.submit(finalScoreCalculator);
-			integratedScoreMap.put(brEntry.getValue(), future.get());
-		}
-		finalES.shutdown();
-		while (!finalES.isTerminated()) {
-		}
+		// calculate VSMScore by product of bug reports and source code files matrices. The final score of a bug
+		// report is calculated by the row handler as soon as its VSMScore is calculated, so the VSMScore rows, each
+		// with a score of every file, are never buffered
+		CSRMatrix codeMatrix = CSRMatrix.ofSourceCodes(codeIndex.getDocuments(), InvertedIndex.CONTENT_FIELD);
+		List<List<IntegratedScore>> finalScoreRows = newRows(brList.size());
+		brMatrix.cosineProduct(codeMatrix, 0, false, new FinalScoreCalculator(brList, simiScoreRows, finalScoreRows));
+		checkRows(finalScoreRows, brList, "Final score");
+		
+		// collect final scores in bug reports order
+		for (int i = 0; i < brList.size(); i++)
+			integratedScoreMap.put(brList.get(i), finalScoreRows.get(i));
 		
 		// evaluate
 		Evaluator evaluator = new Evaluator(integratedScoreMap);
@@ -175,83 +163,95 @@ public class BugLocator {
 		return 1.0D / (1.0D + Math.exp(-len));
 	}
 	
-	// Worker thread for calculating VSMScore
-	private static class VSMScoreCalculator implements Callable<HashMap<String, Double>> {
+	// Handler of bug reports similarity matrix rows, calculating SimiScore
+	private static class SimiScoreCalculator implements CSRMatrix.RowHandler {
 
-		private BugReport br;
-		private int index;
+		private List<HashMap<String, Double>> simiScoreRows;
+		private AtomicInteger count;
 		
-		public VSMScoreCalculator(BugReport br, int index) {
-			this.br = br;
-			this.index = index;
+		public SimiScoreCalculator(List<HashMap<String, Double>> simiScoreRows) {
+			this.simiScoreRows = simiScoreRows;
+			this.count = new AtomicInteger();
 		}
 		
 		@Override
-		public HashMap<String, Double> call() throws Exception {
+		public void handle(int row, int[] columns, double[] similarities) {
+			int index = count.incrementAndGet();
 			if (index % 100 == 0) 
 				logger.info(index + " bug reports handled.");
-			HashMap<String, Double> VSMScoreMap = calculateVSMScore(br, sourceCodeMap);
-			return VSMScoreMap;
+			HashMap<String, Double> simiScores = normalizeSimiScore(
+					brIndex.simiScores(row, columns, similarities, BugReportIndex.FIRST_IN_DOCUMENT_ORDER));
+			simiScoreRows.set(row, simiScores);
 		}
 		
 	}
 	
-	// Worker thread for calculating SimiScore
-	private static class SimiScoreCalculator implements Callable<HashMap<String, Double>> {
+	// Handler of bug reports and source code files similarity matrix rows, calculating VSMScore and final score
+	private static class FinalScoreCalculator implements CSRMatrix.RowHandler {
 
-		private BugReport br;
-		private int index;
+		private List<BugReport> brList;
+		private List<HashMap<String, Double>> simiScoreRows;
+		private List<List<IntegratedScore>> finalScoreRows;
+		private AtomicInteger count;
 		
-		public SimiScoreCalculator(BugReport br, int index) {
-			this.br = br;
-			this.index = index;
+		public FinalScoreCalculator(List<BugReport> brList, List<HashMap<String, Double>> simiScoreRows,
+				List<List<IntegratedScore>> finalScoreRows) {
+			this.brList = brList;
+			this.simiScoreRows = simiScoreRows;
+			this.finalScoreRows = finalScoreRows;
+			this.count = new AtomicInteger();
 		}
 		
 		@Override
-		public HashMap<String, Double> call() throws Exception {
+		public void handle(int row, int[] columns, double[] similarities) {
+			int index = count.incrementAndGet();
 			if (index % 100 == 0) 
 				logger.info(index + " bug reports handled.");
-			HashMap<String, Double> simiScoreMap = calculateSimiScore(br, bugReports);
-			return simiScoreMap;
+			double[] vsmScores = new double[codeIndex.size()];
+			for (int i = 0; i < columns.length; i++)
+				vsmScores[columns[i]] = similarities[i];
+			HashMap<String, Double> VSMScoreMap = calculateVSMScore(vsmScores, codeIndex);
+			// SimiScore is calculated before, the used row is no longer kept
+			HashMap<String, Double> simiScoreMap = simiScoreRows.set(row, null);
+			finalScoreRows.set(row, calculateFinalScore(brList.get(row), VSMScoreMap, simiScoreMap));
 		}
 		
 	}
 	
-	// Worker thread for evaluating
-	private static class FinalScoreCalculator implements Callable<List<IntegratedScore>> {
-
-		private BugReport br;
-		private HashMap<String, Double> VSMScoreMap;
-		private HashMap<String, Double> simiScoreMap;
-		
-		public FinalScoreCalculator(BugReport br, HashMap<String, Double> VSMScoreMap, HashMap<String, Double> simiScoreMap) {
-			this.br = br;
-			this.VSMScoreMap = VSMScoreMap;
-			this.simiScoreMap = simiScoreMap;
-		}
-		
-		@Override
-		public List<IntegratedScore> call() throws Exception {
-			List<IntegratedScore> integratedScores = calculateFinalScore(br, VSMScoreMap, simiScoreMap);
-			return integratedScores;
+	/** rows of given size, each row is set by a row handler */
+	private static <T> List<T> newRows(int size) {
+		return new ArrayList<T>(Collections.<T>nCopies(size, null));
+	}
+	
+	/** check that a row handler has set each row, rows of a failed product worker are lost */
+	private static void checkRows(List<?> rows, List<BugReport> brList, String scoreName) {
+		for (int i = 0; i < rows.size(); i++) {
+			if (rows.get(i) == null)
+				throw new IllegalStateException(scoreName + " of bug report " + brList.get(i).getBugID()
+						+ " is not calculated");
 		}
-		
 	}
 	
-	public static HashMap<String, Double> calculateVSMScore(BugReport br, HashMap<String, SourceCode> sourceCodeMap) {
+	public static HashMap<String, Double> calculateVSMScore(BugReport br, InvertedIndex codeIndex) {
+		return calculateVSMScore(codeIndex.vsmScores(br), codeIndex);
+	}
+	
+	/** calculate VSMScore from vsm similarity of each document of codeIndex */
+	public static HashMap<String, Double> calculateVSMScore(double[] vsmScores, InvertedIndex codeIndex) {
 		HashMap<String, Double> VSMScoreMap = new HashMap<String, Double>();
 		double max = Double.MIN_VALUE, min = Double.MAX_VALUE;
-		for (Entry<String, SourceCode> entry : sourceCodeMap.entrySet()) {
+		for (int doc = 0; doc < vsmScores.length; doc++) {
+			SourceCode code = codeIndex.getDocument(doc);
 			double VSMScore;
 			if (usingRevisedVSMModels)
-				VSMScore = sim.vsmSimilarity(br, entry.getValue()) * entry.getValue().getLengthScore();
+				VSMScore = vsmScores[doc] * code.getLengthScore();
 			else 
-				VSMScore = sim.vsmSimilarity(br, entry.getValue());
+				VSMScore = vsmScores[doc];
 			if (VSMScore > max)
 				max = VSMScore;
 			if (VSMScore < min)
 				min = VSMScore;
-			VSMScoreMap.put(entry.getKey(), VSMScore);
+			VSMScoreMap.put(code.getPath(), VSMScore);
 		}
 		// normalization
 		for (Entry<String, Double> entry : VSMScoreMap.entrySet()) {
@@ -260,21 +260,11 @@ public class BugLocator {
 		return VSMScoreMap;
 	}
 	
-	public static HashMap<String, Double> calculateSimiScore(BugReport br, HashMap<Integer, BugReport> bugReports) {
-		HashMap<String, Double> simiScoreMap = new HashMap<String, Double>();
-		for (Entry<Integer, BugReport> entry : bugReports.entrySet()) {
-			if (entry.getKey() == br.getBugID())
-				continue;
-			int numOfFixedFiles = entry.getValue().getFixedFiles().size();
-			double s = sim.vsmSimilarity(br, entry.getValue());
-			for (String fixedFile : entry.getValue().getFixedFiles()) {
-				if (!simiScoreMap.containsKey(fixedFile)) 
-					simiScoreMap.put(fixedFile, 0.0);
-				else {
-					simiScoreMap.put(fixedFile, simiScoreMap.get(fixedFile) + s / numOfFixedFiles);
-				}
-			}
-		}
+	public static HashMap<String, Double> calculateSimiScore(BugReport br, BugReportIndex brIndex) {
+		return normalizeSimiScore(brIndex.simiScores(br, BugReportIndex.FIRST_IN_DOCUMENT_ORDER));
+	}
+	
+	private static HashMap<String, Double> normalizeSimiScore(HashMap<String, Double> simiScoreMap) {
 		// normalization
 		double max = Double.MIN_VALUE;
 		for (Entry<String, Double> entry : simiScoreMap.entrySet()) {
@@ -8,7 +8,7 @@ import java.util.TreeMap;
 import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.common.BugReport;
 import edu.whu.pllab.buglocator.common.BugReportRepository;
-import edu.whu.pllab.buglocator.common.TokenScore;
+import edu.whu.pllab.buglocator.common.SparseVector;
 import edu.whu.pllab.buglocator.vectorizer.BugReportTfidfVectorizer;
 
 public class BugReportRepositoryTest {
@@ -63,9 +63,9 @@ public class BugReportRepositoryTest {
 			builder.append("corpus: " + bugReport.getBugReportCorpus().getContent() + "\n");
 			builder.append("contentNorm: " + bugReport.getBugReportCorpus().getContentNorm() + "\n");
 			builder.append("contentTokens: ");
-			for (TokenScore tokenScore : bugReport.getBugReportCorpus().getContentTokens().values()) {
-				builder.append(String.format("%s(%f,%f,%f) ", tokenScore.getToken(), tokenScore.getTf(),
-						tokenScore.getIdf(), tokenScore.getTokenWeight()));
+			SparseVector contentTokens = bugReport.getBugReportCorpus().getContentTokens();
+			for (int i = 0; i < contentTokens.size(); i++) {
+				builder.append(String.format("%s(%f) ", contentTokens.getTerm(i), contentTokens.getWeight(i)));
 			}
 			builder.append("\nModifiedFiles: \n");
 			for (String file : bugReport.getFixedFiles()) {
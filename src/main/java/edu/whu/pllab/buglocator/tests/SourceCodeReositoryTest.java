@@ -9,7 +9,7 @@ import edu.whu.pllab.buglocator.common.BugReportRepository;
 import edu.whu.pllab.buglocator.common.Method;
 import edu.whu.pllab.buglocator.common.SourceCode;
 import edu.whu.pllab.buglocator.common.SourceCodeRepository;
-import edu.whu.pllab.buglocator.common.TokenScore;
+import edu.whu.pllab.buglocator.common.SparseVector;
 import edu.whu.pllab.buglocator.vectorizer.SourceCodeTfidfVectorizer;
 
 public class SourceCodeReositoryTest {
@@ -65,33 +65,33 @@ public class SourceCodeReositoryTest {
 			}
 			builder.append("\nContentNorm: " + sourceCode.getSourceCodeCorpus().getContentNorm() + "\n");
 			builder.append("ContentTokens: ");
-			for (TokenScore tokenScore : sourceCode.getSourceCodeCorpus().getContentTokens().values()) {
-				builder.append(String.format("%s(%f,%f,%f) ", tokenScore.getToken(), tokenScore.getTf(),
-						tokenScore.getIdf(), tokenScore.getTokenWeight()));
+			SparseVector contentTokens = sourceCode.getSourceCodeCorpus().getContentTokens();
+			for (int i = 0; i < contentTokens.size(); i++) {
+				builder.append(String.format("%s(%f) ", contentTokens.getTerm(i), contentTokens.getWeight(i)));
 			}
 			builder.append("\nClassPart: " + sourceCode.getSourceCodeCorpus().getClassPart() + "\n");
 			builder.append("ClassPartTokens: ");
-			for (TokenScore tokenScore : sourceCode.getSourceCodeCorpus().getClassPartTokens().values()) {
-				builder.append(String.format("%s(%f,%f,%f) ", tokenScore.getToken(), tokenScore.getTf(),
-						tokenScore.getIdf(), tokenScore.getTokenWeight()));
+			SparseVector classPartTokens = sourceCode.getSourceCodeCorpus().getClassPartTokens();
+			for (int i = 0; i < classPartTokens.size(); i++) {
+				builder.append(String.format("%s(%f) ", classPartTokens.getTerm(i), classPartTokens.getWeight(i)));
 			}
 			builder.append("\nMethodPart: " + sourceCode.getSourceCodeCorpus().getMethodPart() + "\n");
 			builder.append("MethodPartTokens: ");
-			for (TokenScore tokenScore : sourceCode.getSourceCodeCorpus().getMethodPartTokens().values()) {
-				builder.append(String.format("%s(%f,%f,%f) ", tokenScore.getToken(), tokenScore.getTf(),
-						tokenScore.getIdf(), tokenScore.getTokenWeight()));
+			SparseVector methodPartTokens = sourceCode.getSourceCodeCorpus().getMethodPartTokens();
+			for (int i = 0; i < methodPartTokens.size(); i++) {
+				builder.append(String.format("%s(%f) ", methodPartTokens.getTerm(i), methodPartTokens.getWeight(i)));
 			}
 			builder.append("\nVariablePart: " + sourceCode.getSourceCodeCorpus().getVariablePart() + "\n");
 			builder.append("VariablePartTokens: ");
-			for (TokenScore tokenScore : sourceCode.getSourceCodeCorpus().getVariablePartTokens().values()) {
-				builder.append(String.format("%s(%f,%f,%f) ", tokenScore.getToken(), tokenScore.getTf(),
-						tokenScore.getIdf(), tokenScore.getTokenWeight()));
+			SparseVector variablePartTokens = sourceCode.getSourceCodeCorpus().getVariablePartTokens();
+			for (int i = 0; i < variablePartTokens.size(); i++) {
+				builder.append(String.format("%s(%f) ", variablePartTokens.getTerm(i), variablePartTokens.getWeight(i)));
 			}
 			builder.append("\nCommentPart: " + sourceCode.getSourceCodeCorpus().getCommentPart() + "\n");
 			builder.append("CommentPartTokens: ");
-			for (TokenScore tokenScore : sourceCode.getSourceCodeCorpus().getCommentPartTokens().values()) {
-				builder.append(String.format("%s(%f,%f,%f) ", tokenScore.getToken(), tokenScore.getTf(),
-						tokenScore.getIdf(), tokenScore.getTokenWeight()));
+			SparseVector commentPartTokens = sourceCode.getSourceCodeCorpus().getCommentPartTokens();
+			for (int i = 0; i < commentPartTokens.size(); i++) {
+				builder.append(String.format("%s(%f) ", commentPartTokens.getTerm(i), commentPartTokens.getWeight(i)));
 			}
 			builder.append("\nMethods: " + "\n");
 			for (Method method : sourceCode.getMethodList()) {
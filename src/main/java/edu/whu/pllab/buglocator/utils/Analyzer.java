@@ -0,0 +1,201 @@
+package edu.whu.pllab.buglocator.utils;
+
+/**
+ * Text analysis pipeline splitting, lowercasing, stemming and filtering stopwords in one pass over the
+ * text. Words are collected in a reused char buffer and stemmed by the global StemCache, and each
+ * resulting token is passed to a TokenConsumer, so no String is created per word. The result is the
+ * same as the String based Splitter, Stemmer and Stopword functions for each analyzer type:
+ * <ul>
+ * <li>SOURCE_CODE: FileParser.splitContent, camel case words of letters, shorter than 2 dropped, english
+ * stopwords, java keywords and project keywords removed</li>
+ * <li>NATURE_LANGUAGE: BugReportRepository.cleanText, words of letters, digits and quotes, english
+ * stopwords removed</li>
+ * <li>IDENTIFIERS: space separated words, english stopwords, java keywords and project keywords removed</li>
+ * <li>STEM_ONLY: Stemmer.stemContent, space separated words stemmed only</li>
+ * </ul>
+ * An analyzer is not thread safe, getInstance() returns an analyzer owned by current thread.
+ */
+public class Analyzer {
+
+	public static final int SOURCE_CODE = 0;
+	public static final int NATURE_LANGUAGE = 1;
+	public static final int IDENTIFIERS = 2;
+	public static final int STEM_ONLY = 3;
+
+	private static final int INITIAL_BUFFER_SIZE = 64;
+
+	private static final ThreadLocal<Analyzer[]> analyzers = new ThreadLocal<Analyzer[]>() {
+		@Override
+		protected Analyzer[] initialValue() {
+			return new Analyzer[STEM_ONLY + 1];
+		}
+	};
+
+	private final int type;
+
+	/** characters of current word */
+	private char[] word;
+	private int wordLength;
+
+	/** lowercased part of current word to be stemmed */
+	private char[] token;
+
+	/** joins tokens for analyze(CharSequence) */
+	private final StringBuilder builder;
+	private final TokenConsumer joiner;
+
+	public Analyzer(int type) {
+		if (type < SOURCE_CODE || type > STEM_ONLY)
+			throw new IllegalArgumentException("Unknown analyzer type " + type);
+		this.type = type;
+		word = new char[INITIAL_BUFFER_SIZE];
+		token = new char[INITIAL_BUFFER_SIZE];
+		builder = new StringBuilder();
+		joiner = new TokenConsumer() {
+			@Override
+			public void accept(char[] buffer, int offset, int length) {
+				if (builder.length() > 0)
+					builder.append(' ');
+				builder.append(buffer, offset, length);
+			}
+		};
+	}
+
+	/** analyzer of given type owned by current thread */
+	public static Analyzer getInstance(int type) {
+		Analyzer[] threadAnalyzers = analyzers.get();
+		if (threadAnalyzers[type] == null)
+			threadAnalyzers[type] = new Analyzer(type);
+		return threadAnalyzers[type];
+	}
+
+	/**
+	 * analyze text and join the tokens by single space
+	 */
+	public String analyze(CharSequence text) {
+		builder.setLength(0);
+		analyze(text, joiner);
+		String result = builder.toString();
+		// don't keep the buffer of a large text
+		if (builder.capacity() > (1 << 16)) {
+			builder.setLength(0);
+			builder.trimToSize();
+		}
+		return result;
+	}
+
+	/**
+	 * analyze text, passing each token to consumer in order
+	 */
+	public void analyze(CharSequence text, TokenConsumer consumer) {
+		wordLength = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (isWordChar(c)) {
+				if (wordLength == word.length)
+					word = grow(word);
+				word[wordLength++] = c;
+			} else if (wordLength > 0) {
+				endWord(consumer);
+				wordLength = 0;
+			}
+		}
+		if (wordLength > 0)
+			endWord(consumer);
+	}
+
+	private boolean isWordChar(char c) {
+		switch (type) {
+		case SOURCE_CODE:
+			return isUpperCase(c) || isLowerCase(c);
+		case NATURE_LANGUAGE:
+			return isUpperCase(c) || isLowerCase(c) || c >= '0' && c <= '9' || c == '\'';
+		default:
+			return c != ' ';
+		}
+	}
+
+	private void endWord(TokenConsumer consumer) {
+		if (type != SOURCE_CODE) {
+			emit(0, wordLength, consumer);
+			return;
+		}
+		// split words written in CamelCase style, the same as Splitter.splitSourceCode
+		int k = 0;
+		for (int i = 0; i < wordLength - 1; i++) {
+			char first = word[i];
+			char second = word[i + 1];
+			if (isUpperCase(first) && isLowerCase(second)) {
+				emit(k, i, consumer);
+				k = i;
+			} else if (isLowerCase(first) && isUpperCase(second)) {
+				emit(k, i + 1, consumer);
+				k = i + 1;
+			}
+		}
+		emit(k, wordLength, consumer);
+	}
+
+	/** lowercase, stem and filter word[start, end) */
+	private void emit(int start, int end, TokenConsumer consumer) {
+		int length = end - start;
+		if (type == SOURCE_CODE && length < 2)
+			return;
+		int tokenLength = lowercase(start, end);
+		if (tokenLength == 0)
+			return;
+		char[] result = StemCache.getInstance().stem(token, 0, tokenLength);
+		int resultLength = result.length;
+		switch (type) {
+		case SOURCE_CODE:
+		case IDENTIFIERS:
+			if (Stopword.isSourceCodeStopword(result, 0, resultLength))
+				return;
+			break;
+		case NATURE_LANGUAGE:
+			if (Stopword.isEnglishStopword(result, 0, resultLength))
+				return;
+			break;
+		}
+		consumer.accept(result, 0, resultLength);
+	}
+
+	/**
+	 * copy lowercased word[start, end) to token buffer, non ASCII words are lowercased by String.toLowerCase
+	 * whose result may have another length
+	 * @return length of lowercased word
+	 */
+	private int lowercase(int start, int end) {
+		int length = end - start;
+		if (token.length < length)
+			token = new char[Math.max(length, token.length * 2)];
+		for (int i = 0; i < length; i++) {
+			char c = word[start + i];
+			if (c >= 128) {
+				String lower = new String(word, start, length).toLowerCase();
+				if (token.length < lower.length())
+					token = new char[lower.length()];
+				lower.getChars(0, lower.length(), token, 0);
+				return lower.length();
+			}
+			token[i] = isUpperCase(c) ? (char) (c + ('a' - 'A')) : c;
+		}
+		return length;
+	}
+
+	private static boolean isUpperCase(char c) {
+		return c >= 'A' && c <= 'Z';
+	}
+
+	private static boolean isLowerCase(char c) {
+		return c >= 'a' && c <= 'z';
+	}
+
+	private static char[] grow(char[] buffer) {
+		char[] newBuffer = new char[buffer.length * 2];
+		System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
+		return newBuffer;
+	}
+
+}
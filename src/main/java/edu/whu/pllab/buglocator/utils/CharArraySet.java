@@ -0,0 +1,57 @@
+package edu.whu.pllab.buglocator.utils;
+
+import java.util.Collection;
+
+/**
+ * Read only set of words which can be queried by a range of a char buffer without creating a String,
+ * implemented by open addressing with linear probing.
+ */
+final class CharArraySet {
+
+	private final char[][] keys;
+	private final int mask;
+
+	CharArraySet(Collection<String> words) {
+		int capacity = 16;
+		while (capacity < words.size() * 2)
+			capacity <<= 1;
+		keys = new char[capacity][];
+		mask = capacity - 1;
+		for (String word : words) {
+			char[] key = word.toCharArray();
+			int slot = hash(key, 0, key.length) & mask;
+			while (keys[slot] != null && !equals(keys[slot], key, 0, key.length))
+				slot = (slot + 1) & mask;
+			keys[slot] = key;
+		}
+	}
+
+	/** whether buffer[offset, offset + length) is in this set */
+	boolean contains(char[] buffer, int offset, int length) {
+		int slot = hash(buffer, offset, length) & mask;
+		while (keys[slot] != null) {
+			if (equals(keys[slot], buffer, offset, length))
+				return true;
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	private static int hash(char[] buffer, int offset, int length) {
+		int h = 0;
+		for (int i = offset; i < offset + length; i++)
+			h = 31 * h + buffer[i];
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean equals(char[] key, char[] buffer, int offset, int length) {
+		if (key.length != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (key[i] != buffer[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+}
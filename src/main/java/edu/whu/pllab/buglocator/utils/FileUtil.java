@@ -1,5 +1,7 @@
 package edu.whu.pllab.buglocator.utils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -12,9 +14,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 
 public class FileUtil {
+	
+	public static final String GZIP_SUFFIX = ".gz";
+	
+	private static final int STREAM_BUFFER_SIZE = 1 << 16;
 
 	/** 
      * copy single file 
@@ -302,6 +310,25 @@ public class FileUtil {
 		}
 		return result;
 	}
-
+	
+	/**
+	 * open buffered input stream of given file, files ending with .gz are decompressed
+	 */
+	public static InputStream openInputStream(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE);
+		if (file.getName().endsWith(GZIP_SUFFIX))
+			in = new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+		return in;
+	}
+	
+	/**
+	 * open buffered output stream of given file, files ending with .gz are compressed
+	 */
+	public static OutputStream openOutputStream(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		if (file.getName().endsWith(GZIP_SUFFIX))
+			out = new GZIPOutputStream(out, STREAM_BUFFER_SIZE);
+		return new BufferedOutputStream(out, STREAM_BUFFER_SIZE);
+	}
 	
 }
@@ -0,0 +1,266 @@
+package edu.whu.pllab.buglocator.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.whu.pllab.buglocator.Property;
+
+/**
+ * Process wide work-stealing scheduler. All parallel stages run their tasks on one ForkJoinPool of
+ * Property.THREAD_COUNT workers instead of creating a fixed thread pool per call, so nested stages do not
+ * oversubscribe the processors. A stage limits how many of its tasks run at the same time, further tasks wait in
+ * the stage's queue. Waiting for a stage blocks instead of spinning, and a worker of the pool waiting for a nested
+ * stage is compensated by the pool, so nested stages can not starve each other.
+ */
+public class Scheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(Scheduler.class);
+
+	private static final ForkJoinPool pool = new ForkJoinPool(Property.THREAD_COUNT,
+			new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName("scheduler-worker-" + thread.getPoolIndex());
+					return thread;
+				}
+			}, null, true);
+
+	private Scheduler() {
+	}
+
+	/** the shared pool, for fork-join tasks */
+	public static ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/** new stage running at most Property.THREAD_COUNT tasks at the same time */
+	public static Stage newStage(String name) {
+		return new Stage(name, Property.THREAD_COUNT);
+	}
+
+	/** new stage running at most given number of tasks at the same time */
+	public static Stage newStage(String name, int parallelism) {
+		return new Stage(name, parallelism);
+	}
+
+	/** statistics of the shared pool */
+	public static String getPoolStatistics() {
+		return "parallelism " + pool.getParallelism() + ", workers " + pool.getPoolSize() + ", active "
+				+ pool.getActiveThreadCount() + ", queued " + pool.getQueuedSubmissionCount() + " submissions and "
+				+ pool.getQueuedTaskCount() + " tasks, steals " + pool.getStealCount();
+	}
+
+	/**
+	 * A group of tasks run on the shared pool, like an executor service of its own. Tasks are started in the order
+	 * they are submitted. After shutdown, join waits until all submitted tasks are finished.
+	 */
+	public static class Stage extends AbstractExecutorService {
+
+		private final String name;
+		private final int parallelism;
+
+		/** tasks waiting for a free slot of this stage, guarded by this */
+		private final ArrayDeque<Task> queue;
+		/** number of running tasks, guarded by this */
+		private int running;
+		private boolean shutdown;
+
+		// queue metrics, guarded by this
+		private final long startTime;
+		private long submitted;
+		private long completed;
+		private long failed;
+		private int peakQueued;
+		private long queuedNanos;
+		private long runningNanos;
+
+		private Stage(String name, int parallelism) {
+			if (parallelism < 1)
+				throw new IllegalArgumentException("Parallelism of stage " + name + " should be positive");
+			this.name = name;
+			this.parallelism = parallelism;
+			this.queue = new ArrayDeque<Task>();
+			this.running = 0;
+			this.shutdown = false;
+			this.startTime = System.nanoTime();
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			if (command == null)
+				throw new NullPointerException();
+			Task task = new Task(command);
+			synchronized (this) {
+				if (shutdown)
+					throw new RejectedExecutionException("Stage " + name + " is shut down");
+				submitted++;
+				if (running >= parallelism) {
+					queue.add(task);
+					peakQueued = Math.max(peakQueued, queue.size());
+					return;
+				}
+				running++;
+			}
+			pool.execute(task);
+		}
+
+		/** called by a finished task, starts the next queued task in its slot */
+		private void finish(Task task, long startNanos, long endNanos, boolean success) {
+			Task next;
+			synchronized (this) {
+				completed++;
+				if (!success)
+					failed++;
+				queuedNanos += startNanos - task.submitNanos;
+				runningNanos += endNanos - startNanos;
+				next = queue.poll();
+				if (next == null) {
+					running--;
+					if (running == 0)
+						notifyAll();
+				}
+			}
+			if (next != null)
+				pool.execute(next);
+		}
+
+		@Override
+		public synchronized void shutdown() {
+			shutdown = true;
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			List<Runnable> commands = new ArrayList<Runnable>();
+			synchronized (this) {
+				shutdown = true;
+				for (Task task : queue)
+					commands.add(task.command);
+				queue.clear();
+				if (running == 0)
+					notifyAll();
+			}
+			return commands;
+		}
+
+		@Override
+		public synchronized boolean isShutdown() {
+			return shutdown;
+		}
+
+		@Override
+		public synchronized boolean isTerminated() {
+			return shutdown && running == 0;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			ForkJoinPool.managedBlock(new TerminationBlocker(unit.toNanos(timeout)));
+			return isTerminated();
+		}
+
+		/** shut down and wait until all submitted tasks are finished, interrupts are kept until then */
+		public void join() {
+			shutdown();
+			boolean interrupted = false;
+			while (true) {
+				try {
+					ForkJoinPool.managedBlock(new TerminationBlocker(Long.MAX_VALUE));
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (logger.isDebugEnabled())
+				logger.debug(getStatistics() + ", pool " + getPoolStatistics());
+		}
+
+		/** queue metrics of this stage */
+		public synchronized String getStatistics() {
+			return String.format("Stage %s: parallelism %d, submitted %d, completed %d, failed %d, peak queued %d, "
+					+ "total wait %.1fms, total run %.1fms, elapsed %.1fms", name, parallelism, submitted, completed, failed,
+					peakQueued, queuedNanos / 1e6, runningNanos / 1e6, (System.nanoTime() - startTime) / 1e6);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getParallelism() {
+			return parallelism;
+		}
+
+		/** submitted command, reports to its stage when finished */
+		private class Task implements Runnable {
+
+			private final Runnable command;
+			private final long submitNanos;
+
+			private Task(Runnable command) {
+				this.command = command;
+				this.submitNanos = System.nanoTime();
+			}
+
+			@Override
+			public void run() {
+				long startNanos = System.nanoTime();
+				boolean success = false;
+				try {
+					command.run();
+					success = true;
+				} catch (Throwable e) {
+					e.printStackTrace();
+				} finally {
+					finish(this, startNanos, System.nanoTime(), success);
+				}
+			}
+		}
+
+		/** waits for termination of the stage at most given nanoseconds, without time limit if it is too long to count */
+		private class TerminationBlocker implements ForkJoinPool.ManagedBlocker {
+
+			private final boolean timed;
+			private final long deadline;
+
+			private TerminationBlocker(long nanos) {
+				this.timed = nanos < Long.MAX_VALUE / 2;
+				this.deadline = timed ? System.nanoTime() + nanos : 0;
+			}
+
+			@Override
+			public boolean block() throws InterruptedException {
+				synchronized (Stage.this) {
+					while (!isTerminated()) {
+						if (!timed) {
+							Stage.this.wait();
+							continue;
+						}
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0)
+							break;
+						TimeUnit.NANOSECONDS.timedWait(Stage.this, remaining);
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return isTerminated() || (timed && deadline - System.nanoTime() <= 0);
+			}
+		}
+	}
+
+}
@@ -10,7 +10,7 @@ public class Splitter {
 		ArrayList<String> wordList = new ArrayList<String>();
 		StringBuffer wordBuffer = new StringBuffer();
 		char ac[] = natureLanguage.toCharArray();
-		for (int i = 0; i < natureLanguage.toCharArray().length; i++) {
+		for (int i = 0; i < ac.length; i++) {
 			char c = ac[i];
 			if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '\'') {
 				wordBuffer.append(c);
@@ -35,7 +35,7 @@ public class Splitter {
 		ArrayList<String> wordList = new ArrayList<String>();
 		StringBuffer wordBuffer = new StringBuffer();
 		char ac[] = natureLanguage.toCharArray();
-		for (int l = 0; l < natureLanguage.toCharArray().length; l++) {
+		for (int l = 0; l < ac.length; l++) {
 			char c = ac[l];
 			if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '\'') {
 				wordBuffer.append(c);
@@ -73,7 +73,7 @@ public class Splitter {
 		StringBuffer wordBuf = new StringBuffer();
 		sourceCode = (new StringBuilder(String.valueOf(sourceCode))).append("$").toString();
 		char ac[] = sourceCode.toCharArray();
-		for (int l = 0; l < sourceCode.toCharArray().length; l++) {
+		for (int l = 0; l < ac.length; l++) {
 			char c = ac[l];
 			if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
 				wordBuf.append(c); // append a character to wordBuf
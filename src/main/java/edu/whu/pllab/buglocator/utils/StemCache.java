@@ -0,0 +1,240 @@
+package edu.whu.pllab.buglocator.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Global memoizing cache of Porter stems shared by all threads, so a word occurring many times is stemmed
+ * only once. Words are looked up by ranges of char buffers without creating a String. The cache keeps at most
+ * maxSize words no longer than MAX_WORD_LENGTH, other words are stemmed every time. It can be saved and
+ * loaded, so the next run starts with the vocabulary of previous runs. The global instance is saved to the
+ * file it was loaded from once, at shutdown or when another file is loaded.
+ */
+public class StemCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(StemCache.class);
+
+	public static final int DEFAULT_MAX_SIZE = 1 << 20;
+	public static final int MAX_WORD_LENGTH = 64;
+
+	private static final StemCache instance = new StemCache(DEFAULT_MAX_SIZE);
+
+	/** path of the file loaded into global instance */
+	private static String loadedPath;
+
+	/** lookup key and stemmer of each thread */
+	private static final ThreadLocal<Lookup> lookups = new ThreadLocal<Lookup>() {
+		@Override
+		protected Lookup initialValue() {
+			return new Lookup();
+		}
+	};
+
+	private final int maxSize;
+
+	/** map word to its stem */
+	private final ConcurrentHashMap<Key, char[]> stems;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+
+	/** whether words are added since loaded or saved */
+	private volatile boolean dirty;
+
+	public StemCache(int maxSize) {
+		this.maxSize = maxSize;
+		stems = new ConcurrentHashMap<Key, char[]>();
+		hits = new LongAdder();
+		misses = new LongAdder();
+		dirty = false;
+	}
+
+	/** global stem cache */
+	public static StemCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * load words saved in given file into global stem cache, a file is loaded only once. Words are saved to
+	 * the previously loaded file first
+	 */
+	public static synchronized StemCache loadInstance(String path) {
+		if (path == null || path.equals(loadedPath))
+			return instance;
+		if (loadedPath != null)
+			instance.save(loadedPath);
+		else {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					saveInstance();
+				}
+			});
+		}
+		loadedPath = path;
+		instance.load(path);
+		return instance;
+	}
+
+	/** save global stem cache to the file it was loaded from */
+	public static synchronized void saveInstance() {
+		if (loadedPath != null)
+			instance.save(loadedPath);
+	}
+
+	/** stem of given word */
+	public String stem(String word) {
+		Lookup lookup = lookups.get();
+		int length = word.length();
+		char[] buffer = lookup.buffer(length);
+		word.getChars(0, length, buffer, 0);
+		return new String(stem(buffer, 0, length));
+	}
+
+	/**
+	 * stem of buffer[offset, offset + length)
+	 * @return chars of the stem, shared by the cache so they must not be modified
+	 */
+	public char[] stem(char[] buffer, int offset, int length) {
+		Lookup lookup = lookups.get();
+		if (length <= MAX_WORD_LENGTH) {
+			char[] stem = stems.get(lookup.key.set(buffer, offset, length));
+			if (stem != null) {
+				hits.increment();
+				return stem;
+			}
+		}
+		misses.increment();
+		PorterStemmer stemmer = lookup.stemmer;
+		stemmer.stem(buffer, offset, length);
+		char[] stem = new char[stemmer.getResultLength()];
+		System.arraycopy(stemmer.getResultBuffer(), 0, stem, 0, stem.length);
+		if (length <= MAX_WORD_LENGTH && stems.size() < maxSize) {
+			char[] word = new char[length];
+			System.arraycopy(buffer, offset, word, 0, length);
+			if (stems.putIfAbsent(new Key(word), stem) == null)
+				dirty = true;
+		}
+		return stem;
+	}
+
+	/** number of cached words */
+	public int size() {
+		return stems.size();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/** save cached words to given file if words are added */
+	public synchronized void save(String path) {
+		if (!dirty || path == null)
+			return;
+		logger.info("Saving stem cache of " + stems.size() + " words to " + path + ", hits: " + getHitCount()
+				+ ", misses: " + getMissCount() + "...");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+			out.writeInt(stems.size());
+			for (Entry<Key, char[]> entry : stems.entrySet()) {
+				out.writeUTF(new String(entry.getKey().buffer));
+				out.writeUTF(new String(entry.getValue()));
+			}
+			dirty = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void load(String path) {
+		if (!new File(path).exists())
+			return;
+		logger.info("Loading stem cache from " + path + "...");
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+			int size = in.readInt();
+			for (int i = 0; i < size && stems.size() < maxSize; i++) {
+				char[] word = in.readUTF().toCharArray();
+				char[] stem = in.readUTF().toCharArray();
+				stems.putIfAbsent(new Key(word), stem);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		logger.info("Loaded " + stems.size() + " stemmed words.");
+	}
+
+	/** word key, a lookup key refers to a range of caller's buffer and is never stored */
+	private static class Key {
+
+		private char[] buffer;
+		private int offset;
+		private int length;
+		private int hash;
+
+		private Key() {
+		}
+
+		private Key(char[] word) {
+			set(word, 0, word.length);
+		}
+
+		private Key set(char[] buffer, int offset, int length) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+			int h = 0;
+			for (int i = offset; i < offset + length; i++)
+				h = 31 * h + buffer[i];
+			hash = h;
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			if (other.length != length || other.hash != hash)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (buffer[offset + i] != other.buffer[other.offset + i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private static class Lookup {
+
+		private final Key key = new Key();
+		private final PorterStemmer stemmer = new PorterStemmer();
+		private char[] buffer = new char[MAX_WORD_LENGTH];
+
+		private char[] buffer(int length) {
+			if (buffer.length < length)
+				buffer = new char[length];
+			return buffer;
+		}
+	}
+
+}
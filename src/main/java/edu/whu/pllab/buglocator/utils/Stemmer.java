@@ -2,25 +2,19 @@ package edu.whu.pllab.buglocator.utils;
 
 public class Stemmer {
 
+	/**
+	 * stem of given word, memoized by the global StemCache
+	 */
 	public static String stem(String word) {
-		PorterStemmer stemmer = new PorterStemmer();
-		stemmer.reset();
-        stemmer.stem(word);
-        return stemmer.toString();
+		return StemCache.getInstance().stem(word);
 	}
 	
+	/**
+	 * stem space separated words, each stemmed word is followed by a space
+	 */
 	public static String stemContent(String contents) {
-		String[] contentsArray = contents.split(" ");
-		StringBuffer contentBuf = new StringBuffer();
-		for (int i = 0; i < contentsArray.length; i++) {
-			String word = contentsArray[i].toLowerCase();
-			if (word.length() > 0) {
-				String stemWord = stem(word);
-				contentBuf.append(stemWord);
-				contentBuf.append(" ");
-			}
-		}
-		return contentBuf.toString();
+		String stemmedContent = Analyzer.getInstance(Analyzer.STEM_ONLY).analyze(contents);
+		return stemmedContent.isEmpty() ? stemmedContent : stemmedContent + " ";
 	}
 	
 }
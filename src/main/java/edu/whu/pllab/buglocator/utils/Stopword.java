@@ -14,6 +14,10 @@ public class Stopword {
     private static final Set<String> PROJECT_KEYWORDS_STOP_WORD_SET;
     // For checking source file term and bug report
     private static final Set<String> ENG_STOP_WORDS_SET;
+    // The same sets, queried by ranges of char buffers
+    private static final CharArraySet JAVA_KEYWORDS_CHARS;
+    private static final CharArraySet PROJECT_KEYWORDS_CHARS;
+    private static final CharArraySet ENG_STOP_WORDS_CHARS;
 	
     public Stopword()
     {
@@ -37,6 +41,20 @@ public class Stopword {
         boolean isEnglishStopword = ENG_STOP_WORDS_SET.contains(word);
         return isEnglishStopword;
     }
+    
+    /** whether buffer[offset, offset + length) is an english stopword */
+    public static boolean isEnglishStopword(char[] buffer, int offset, int length)
+    {
+        return ENG_STOP_WORDS_CHARS.contains(buffer, offset, length);
+    }
+    
+    /** whether buffer[offset, offset + length) is an english stopword, java keyword or project keyword */
+    public static boolean isSourceCodeStopword(char[] buffer, int offset, int length)
+    {
+        return ENG_STOP_WORDS_CHARS.contains(buffer, offset, length)
+                || JAVA_KEYWORDS_CHARS.contains(buffer, offset, length)
+                || PROJECT_KEYWORDS_CHARS.contains(buffer, offset, length);
+    }
 
 
     static 
@@ -84,5 +102,9 @@ public class Stopword {
             word = Stemmer.stem(word);
             ENG_STOP_WORDS_SET.add(word);
         }
+        
+        JAVA_KEYWORDS_CHARS = new CharArraySet(JAVA_KEYWORDS_STOP_WORD_SET);
+        PROJECT_KEYWORDS_CHARS = new CharArraySet(PROJECT_KEYWORDS_STOP_WORD_SET);
+        ENG_STOP_WORDS_CHARS = new CharArraySet(ENG_STOP_WORDS_SET);
     }
 }
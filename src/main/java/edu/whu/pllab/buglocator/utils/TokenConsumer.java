@@ -0,0 +1,11 @@
+package edu.whu.pllab.buglocator.utils;
+
+/**
+ * Receiver of tokens emitted by Analyzer. The buffer is reused for the next token, so its content is only
+ * valid during the call.
+ */
+public interface TokenConsumer {
+
+	void accept(char[] buffer, int offset, int length);
+
+}
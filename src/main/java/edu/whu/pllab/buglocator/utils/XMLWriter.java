@@ -0,0 +1,123 @@
+package edu.whu.pllab.buglocator.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streaming xml writer based on StAX, elements are written to the file as soon as they are produced instead of
+ * building a whole DOM document. The output is indented by two spaces like the former Transformer output, and
+ * files ending with .gz are gzip compressed.
+ */
+public class XMLWriter implements Closeable {
+
+	private static final String ENCODING = "UTF-8";
+	private static final String INDENT = "  ";
+
+	private final OutputStream out;
+	private final XMLStreamWriter writer;
+
+	/** depth of current element */
+	private int depth;
+	/** whether current element has child elements, so its end tag is put on a new line */
+	private boolean hasChildren;
+
+	public XMLWriter(String output) throws IOException, XMLStreamException {
+		out = FileUtil.openOutputStream(new File(output));
+		writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, ENCODING);
+		writer.writeStartDocument(ENCODING, "1.0");
+		depth = 0;
+		hasChildren = false;
+	}
+
+	/** write start tag of element */
+	public void startElement(String name) throws XMLStreamException {
+		newLine();
+		writer.writeStartElement(name);
+		depth++;
+		hasChildren = false;
+	}
+
+	/** write element without content, its attributes can be written next */
+	public void emptyElement(String name) throws XMLStreamException {
+		newLine();
+		writer.writeEmptyElement(name);
+		hasChildren = true;
+	}
+
+	/** write attribute of the element just started */
+	public void attribute(String name, String value) throws XMLStreamException {
+		writer.writeAttribute(name, value == null ? "" : value);
+	}
+
+	/** write element containing text only */
+	public void textElement(String name, String text) throws XMLStreamException {
+		newLine();
+		writer.writeStartElement(name);
+		text(text);
+		writer.writeEndElement();
+		hasChildren = true;
+	}
+
+	/** write end tag of current element */
+	public void endElement() throws XMLStreamException {
+		depth--;
+		if (hasChildren)
+			newLine();
+		writer.writeEndElement();
+		hasChildren = true;
+	}
+
+	/** finish document and close the file */
+	@Override
+	public void close() throws IOException {
+		try {
+			while (depth > 0)
+				endElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void newLine() throws XMLStreamException {
+		writer.writeCharacters("\n");
+		for (int i = 0; i < depth; i++)
+			writer.writeCharacters(INDENT);
+	}
+
+	/**
+	 * write text, carriage returns are written as character references so they are read back unchanged, other
+	 * control characters are not allowed in xml 1.0 and dropped, otherwise the file could not be parsed again
+	 */
+	private void text(String text) throws XMLStreamException {
+		if (text == null)
+			return;
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < 0x20 && c != '\t' && c != '\n') {
+				if (i > start)
+					writer.writeCharacters(text.substring(start, i));
+				if (c == '\r')
+					writer.writeEntityRef("#13");
+				start = i + 1;
+			}
+		}
+		if (start == 0)
+			writer.writeCharacters(text);
+		else if (start < length)
+			writer.writeCharacters(text.substring(start));
+	}
+
+}
@@ -1,9 +1,13 @@
 package edu.whu.pllab.buglocator.vectorizer;
 
+import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,8 +16,9 @@ import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.common.Method;
 import edu.whu.pllab.buglocator.common.SourceCode;
 import edu.whu.pllab.buglocator.common.SourceCodeCorpus;
-import edu.whu.pllab.buglocator.common.TokenScore;
+import edu.whu.pllab.buglocator.common.SparseVector;
 import edu.whu.pllab.buglocator.common.TokenScore.ScoreType;
+import edu.whu.pllab.buglocator.index.MethodVectorStore;
 
 public class SourceCodeTfidfVectorizer {
 	
@@ -26,6 +31,9 @@ public class SourceCodeTfidfVectorizer {
 	private HashMap<String, SourceCode> sourceCodeMap;
 	private ScoreType tokenScoreType = ScoreType.WFIDF;
 	
+	/** content tf vector of each source code file, idf values are applied at query time by LazyTfidfScorer */
+	private ConcurrentHashMap<String, SparseVector> contentTfMap = new ConcurrentHashMap<String, SparseVector>();
+	
 	/** parameters of calculating structural information Okapi tf score*/
 	private double k1 = 1.0;
 	private double b = 0.3;
@@ -43,9 +51,12 @@ public class SourceCodeTfidfVectorizer {
 	/** fit tfidf model for given source code */
 	public void train() {
 		logger.info("Fitting tfidf model for source code corpus...");
+		Property property = Property.getInstance();
 		SentenceIterator<String> iter = new SourceCodeSentenceIterator(sourceCodeMap);
 		tfidf = new TfidfVectorizer<String>(iter, 0);
 		tfidf.fit();
+		if (property != null)
+			tfidf.getDictionary().save(property.getTermDictionaryPath());
 	}
 	
 	/** update tfidf model after git checkout */
@@ -76,11 +87,68 @@ public class SourceCodeTfidfVectorizer {
 		}
 	}
 	
+	/**
+	 * calculate tokens weight as calculateTokensWeight(sourceCodeMap), but method vectors are written to given
+	 * methodStore instead of being kept in Method, methodStore is finished and ready for reading on return
+	 */
+	public void calculateTokensWeight(HashMap<String, SourceCode> sourceCodeMap, MethodVectorStore methodStore) {
+		logger.info("Calculating tokens weight for input source code, methods tokens weight are saved to method vector store...");
+		try {
+			for (Entry<String, SourceCode> entry : sourceCodeMap.entrySet()) {
+				SourceCode sourceCode = entry.getValue();
+				calculateTokensWeight(sourceCode);
+				List<Method> methodList = sourceCode.getMethodList();
+				List<SparseVector> methodVectors = new ArrayList<SparseVector>(methodList.size());
+				double[] methodNorms = new double[methodList.size()];
+				for (int i = 0; i < methodList.size(); i++) {
+					SparseVector contentTokens = tfidf.vectorize(methodList.get(i).getContent(), tokenScoreType);
+					methodVectors.add(contentTokens);
+					methodNorms[i] = tfidf.calculateContentNorm(contentTokens);
+				}
+				methodStore.add(sourceCode, methodVectors, methodNorms);
+				
+				if (useStructuredInformation && (tokenScoreType != ScoreType.OKAPITFIDF)) {
+					calculateForStructuredInformation(sourceCode);
+				}
+			}
+			methodStore.finish();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (useStructuredInformation && (tokenScoreType == ScoreType.OKAPITFIDF)) {
+			okapiTfidfVectorizerForStrucInfo(sourceCodeMap);
+		}
+	}
+	
+	/**
+	 * calculate content tf vectors only, used by LazyTfidfScorer which applies idf values at query time
+	 */
+	public void calculateTfVectors(HashMap<String, SourceCode> sourceCodeMap) {
+		logger.info("Calculating content tf vectors for input source code...");
+		for (SourceCode sourceCode : sourceCodeMap.values()) {
+			String content = sourceCode.getSourceCodeCorpus().getContent();
+			contentTfMap.put(sourceCode.getPath(), tfidf.tfVectorize(content, tokenScoreType));
+		}
+	}
+	
+	/** update content tf vectors of changed files after update() */
+	public void updateTfVectors(HashMap<String, SourceCode> addedFiles, HashMap<String, SourceCode> modifiedFiles,
+			HashMap<String, SourceCode> deletedFiles) {
+		for (String path : deletedFiles.keySet())
+			contentTfMap.remove(path);
+		calculateTfVectors(addedFiles);
+		calculateTfVectors(modifiedFiles);
+	}
+	
+	/** content tf vector of given source code path, null if not calculated */
+	public SparseVector getContentTf(String path) {
+		return contentTfMap.get(path);
+	}
+	
 	/** calculate tokens weight for source code */
 	public void calculateTokensWeight(SourceCode sourceCode) {
 		SourceCodeCorpus sourceCodeCorpus = sourceCode.getSourceCodeCorpus();
-		HashMap<String, TokenScore> contentTokens = tfidf.vectorize(sourceCodeCorpus.getContent(),
-				tokenScoreType);
+		SparseVector contentTokens = tfidf.vectorize(sourceCodeCorpus.getContent(), tokenScoreType);
 		sourceCodeCorpus.setContentTokens(contentTokens);
 		sourceCodeCorpus.setContentNorm(tfidf.calculateContentNorm(contentTokens));
 	}
@@ -1,255 +1,313 @@
 package edu.whu.pllab.buglocator.vectorizer;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.deeplearning4j.util.MathUtils;
 
-import edu.whu.pllab.buglocator.Property;
-import edu.whu.pllab.buglocator.common.TokenScore;
+import edu.whu.pllab.buglocator.common.SparseVector;
+import edu.whu.pllab.buglocator.common.TermDictionary;
 import edu.whu.pllab.buglocator.common.TokenScore.ScoreType;
+import edu.whu.pllab.buglocator.utils.Scheduler;
+import edu.whu.pllab.buglocator.utils.Scheduler.Stage;
 
 public class TfidfVectorizer<T> {
 
-	
-	/** map doc name to terms set */
-	private ConcurrentHashMap<T, HashSet<String>> docTermsMap;
-	
+	/** global term dictionary, terms are represented by term ids */
+	private TermDictionary dictionary;
+
+	/** map doc name to its terms and term frequencies */
+	private ConcurrentHashMap<T, DocTerms> docTermsMap;
+
 	/** map doc name to docment length */
 	private ConcurrentHashMap<T, Integer> docLengthMap;
-	
-	/** <term, <doc-name, term-frequency-in-doc>> */
-	private ConcurrentHashMap<String, HashMap<T, Integer>> docTermFrequencyMap;
-	
-	/** count word occurrence count */
-	private HashMap<String, Integer> wordCounts;
-	
+
+	/** count of documents each term appeared in, indexed by term id */
+	private int[] docFrequencies;
+
+	/** count word occurrence count, indexed by term id */
+	private int[] wordCounts;
+
 	/** filter words occurring less than min-word-frequency */
 	protected int minWordFrequency;
-	
+
 	/** the total number of documents encountered in the corpus */
 	private int totalNumberOfDocs;
-	
-	/** idf value table */
-	private Hashtable<String, Double> inverseDocFrequencyTable;
-	
+
+	/** idf value table, indexed by term id */
+	private double[] inverseDocFrequencyTable;
+
+	/** whether idf value of each term changed in the last update, indexed by term id */
+	private boolean[] idfChanged;
+
+	/** increased whenever idf table is recalculated, used to invalidate values cached by idf */
+	private volatile int epoch;
+
 	private double averDocumentLength;
-	
+
 	/** iterate sentence */
 	private SentenceIterator<T> iter;
-	
+
 	/** Lemur Tfidf vectorize parameter */
 	private double k1 = 1.0;
 	private double b = 0.3;
-	
+
 	public TfidfVectorizer(SentenceIterator<T> iter) {
-		this.iter = iter;
-		this.minWordFrequency = 0;
-		this.totalNumberOfDocs = 0;
-		docTermsMap = new ConcurrentHashMap<T, HashSet<String>>();
-		docLengthMap = new ConcurrentHashMap<T, Integer>();
-		docTermFrequencyMap = new ConcurrentHashMap<String, HashMap<T, Integer>>();
-		wordCounts = new HashMap<String, Integer>();
+		this(iter, 0);
 	}
-	
+
 	public TfidfVectorizer(SentenceIterator<T> iter, int minWordFrequency) {
 		this.iter = iter;
 		this.minWordFrequency = minWordFrequency;
 		this.totalNumberOfDocs = 0;
-		docTermsMap = new ConcurrentHashMap<T, HashSet<String>>();
+		dictionary = TermDictionary.getInstance();
+		docTermsMap = new ConcurrentHashMap<T, DocTerms>();
 		docLengthMap = new ConcurrentHashMap<T, Integer>();
-		docTermFrequencyMap = new ConcurrentHashMap<String, HashMap<T, Integer>>();
-		wordCounts = new HashMap<String, Integer>();
+		docFrequencies = new int[0];
+		wordCounts = new int[0];
 	}
-	
+
 	/** train the model */
 	public void fit() {
 		totalNumberOfDocs = 0;
-		ExecutorService executor = Executors.newFixedThreadPool(Property.THREAD_COUNT);
+		Stage executor = Scheduler.newStage("Vocabulary counting");
 		while (iter.hasNext()) {
 			VocabRunnable runnable = new VocabRunnable(iter.nextEntry());
 			executor.execute(runnable);
 			totalNumberOfDocs++;
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {
-		}
-		
+		executor.join();
+
 		countWords();
-			
-		if (minWordFrequency > 0) 
+
+		if (minWordFrequency > 0)
 			filterVocab(minWordFrequency);
-		
+
 		calculateInverseDocFrequencyTable();
 	}
-	
-	
-	/** update tfidf model */
+
+
+	/**
+	 * update tfidf model in place, document frequencies and total number of documents are adjusted by the
+	 * removed and added documents only. Terms whose idf value changed are recorded, see hasIdfChanged()
+	 */
 	public void update(SentenceIterator<T> addedSentenceIter, SentenceIterator<T> modifiedSentenceIter,
 			SentenceIterator<T> deletedSentenceIter) {
-		
-		// reduce modified sentence size and add in mergeTfidf() method
-		totalNumberOfDocs -= modifiedSentenceIter.size();
-		totalNumberOfDocs -= deletedSentenceIter.size();
-		
+		if (inverseDocFrequencyTable == null)
+			calculateInverseDocFrequencyTable();
+
 		while (modifiedSentenceIter.hasNext()) {
-			Entry<T, String> modify = modifiedSentenceIter.nextEntry();
-			T label = modify.getKey();
-			// get tokens in previous labeled string
-			HashSet<String> tokens = docTermsMap.get(label);
-			// get tokens count
-			for (String token : tokens) {
-				// reduce word frequency from wordCounts
-				int count = docTermFrequencyMap.get(token).get(label);
-				wordCounts.put(token, wordCounts.get(token) - count);
-				
-				// remove label from docTermFrequencyMap
-				docTermFrequencyMap.get(token).remove(label);
-			}
-			
-			// remove label from docTermsMap
-			docTermsMap.remove(label);
-			
-			// remove label from docLenghtMap'
-			docLengthMap.remove(label);
+			// remove previous labeled document
+			removeDocument(modifiedSentenceIter.nextEntry().getKey());
 		}
-		
-		while (deletedSentenceIter.hasNext()) {
-			Entry<T, String> delete = deletedSentenceIter.nextEntry();
-			T label = delete.getKey();
-			// get tokens in previous labeled string
-			HashSet<String> tokens = docTermsMap.get(label);
-			// get tokens count
-			for (String token : tokens) {
-				// reduce word frequency from wordCounts
-				int count = docTermFrequencyMap.get(token).get(label);
-				wordCounts.put(token, wordCounts.get(token) - count);
-				
-				// remove label from docTermFrequencyMap
-				docTermFrequencyMap.get(token).remove(label);
-			}
-			
-			// remove label from docTermsMap
-			docTermsMap.remove(label);
 
-			// remove label from docLenghtMap'
-			docLengthMap.remove(label);
+		while (deletedSentenceIter.hasNext()) {
+			removeDocument(deletedSentenceIter.nextEntry().getKey());
 		}
-		
+
 		addedSentenceIter.reset();
-		TfidfVectorizer<T> addedTfidf = new TfidfVectorizer<T>(addedSentenceIter);
-		addedTfidf.fit();
-		mergeTfidf(addedTfidf);
-		
+		while (addedSentenceIter.hasNext())
+			addDocument(addedSentenceIter.nextEntry());
+
 		modifiedSentenceIter.reset();
-		TfidfVectorizer<T> modifiedTfidf = new TfidfVectorizer<T>(modifiedSentenceIter);
-		modifiedTfidf.fit();
-		mergeTfidf(modifiedTfidf);
-		
-		calculateInverseDocFrequencyTable();
+		while (modifiedSentenceIter.hasNext())
+			addDocument(modifiedSentenceIter.nextEntry());
+
+		updateInverseDocFrequencyTable();
+	}
+
+	/** add labeled document's terms to docTermsMap, docFrequencies and wordCounts */
+	private void addDocument(Entry<T, String> labeledSentence) {
+		T label = labeledSentence.getKey();
+		removeDocument(label);
+		String[] tokens = labeledSentence.getValue().split(" ");
+		DocTerms docTerms = countTerms(tokens);
+		docLengthMap.put(label, tokens.length);
+		docTermsMap.put(label, docTerms);
+		ensureCapacity(dictionary.size());
+		for (int i = 0; i < docTerms.termIds.length; i++) {
+			int termId = docTerms.termIds[i];
+			wordCounts[termId] += docTerms.counts[i];
+			docFrequencies[termId]++;
+		}
+		totalNumberOfDocs++;
 	}
-	
+
+	/** remove labeled document's terms from docTermsMap, docFrequencies and wordCounts */
+	private void removeDocument(T label) {
+		DocTerms docTerms = docTermsMap.remove(label);
+		docLengthMap.remove(label);
+		if (docTerms == null)
+			return;
+		for (int i = 0; i < docTerms.termIds.length; i++) {
+			int termId = docTerms.termIds[i];
+			wordCounts[termId] -= docTerms.counts[i];
+			docFrequencies[termId]--;
+		}
+		totalNumberOfDocs--;
+	}
+
 	/** merge given tfidf model to current one */
 	public void mergeTfidf(TfidfVectorizer<T> tfidf) {
 		// merge docTermsMap
 		docTermsMap.putAll(tfidf.docTermsMap);
 		// merge docLengthMap
 		docLengthMap.putAll(tfidf.docLengthMap);
-		//merge docTermFrequencyMap
-		for (Entry<String, HashMap<T, Integer>> entry : tfidf.docTermFrequencyMap.entrySet()) {
-			if (docTermFrequencyMap.containsKey(entry.getKey()))
-				docTermFrequencyMap.get(entry.getKey()).putAll(entry.getValue());
-			else 
-				docTermFrequencyMap.put(entry.getKey(), entry.getValue());
-		}
-		// merge wordCounts
-		for (Entry<String, Integer> entry : tfidf.wordCounts.entrySet()) {
-			if (wordCounts.containsKey(entry.getKey()))
-				wordCounts.put(entry.getKey(), wordCounts.get(entry.getKey()) + entry.getValue());
-			else 
-				wordCounts.put(entry.getKey(), entry.getValue());
+		// merge docFrequencies and wordCounts
+		ensureCapacity(tfidf.wordCounts.length);
+		for (int termId = 0; termId < tfidf.wordCounts.length; termId++) {
+			docFrequencies[termId] += tfidf.docFrequencies[termId];
+			wordCounts[termId] += tfidf.wordCounts[termId];
 		}
 		// merge totalNumberOfDocs
 		totalNumberOfDocs += tfidf.totalNumberOfDocs;
 	}
-	
-	/** count words total frequency and save to wordCounts */
+
+	/** grow docFrequencies and wordCounts to hold given number of terms */
+	private void ensureCapacity(int termCount) {
+		if (wordCounts.length >= termCount)
+			return;
+		docFrequencies = Arrays.copyOf(docFrequencies, termCount);
+		wordCounts = Arrays.copyOf(wordCounts, termCount);
+	}
+
+	/** count words total frequency and document frequency */
 	private void countWords() {
-		for (Entry<String, HashMap<T, Integer>> entry : docTermFrequencyMap.entrySet()) {
-			String token = entry.getKey();
-			int count = 0;
-			for (Entry<T, Integer> countsEntry : entry.getValue().entrySet()) {
-				count += countsEntry.getValue();
+		docFrequencies = new int[dictionary.size()];
+		wordCounts = new int[dictionary.size()];
+		for (DocTerms docTerms : docTermsMap.values()) {
+			for (int i = 0; i < docTerms.termIds.length; i++) {
+				docFrequencies[docTerms.termIds[i]]++;
+				wordCounts[docTerms.termIds[i]] += docTerms.counts[i];
 			}
-			wordCounts.put(token, count);
-		} 
+		}
 	}
-	
+
 	/** filter words occurring less than min-word-frequency */
 	public void filterVocab(int minWordFrequency) {
-		if (wordCounts.isEmpty())
-			countWords();
-		Iterator<Entry<String, Integer>> iter = wordCounts.entrySet().iterator();
-		while (iter.hasNext()) {
-			Entry<String, Integer> entry = iter.next();
-			if (entry.getValue() < minWordFrequency) {
-				// remove token from docTermFrequencyMap
-				Set<T> labels = docTermFrequencyMap.get(entry.getKey()).keySet();
-				docTermFrequencyMap.remove(entry.getKey());
-				// remove token from docTermsMap
-				for (T label : labels) {
-					docTermsMap.get(label).remove(entry.getKey());
+		for (Entry<T, DocTerms> entry : docTermsMap.entrySet()) {
+			DocTerms docTerms = entry.getValue();
+			int size = 0;
+			for (int i = 0; i < docTerms.termIds.length; i++) {
+				if (wordCounts[docTerms.termIds[i]] >= minWordFrequency)
+					size++;
+			}
+			if (size == docTerms.termIds.length)
+				continue;
+			// remove filtered terms from document
+			int[] termIds = new int[size];
+			int[] counts = new int[size];
+			size = 0;
+			for (int i = 0; i < docTerms.termIds.length; i++) {
+				if (wordCounts[docTerms.termIds[i]] >= minWordFrequency) {
+					termIds[size] = docTerms.termIds[i];
+					counts[size] = docTerms.counts[i];
+					size++;
 				}
-				// remove token from wordCounts
-				iter.remove();
 			}
+			entry.setValue(new DocTerms(termIds, counts));
+		}
+		for (int termId = 0; termId < wordCounts.length; termId++) {
+			if (wordCounts[termId] < minWordFrequency) {
+				wordCounts[termId] = 0;
+				docFrequencies[termId] = 0;
+			}
+		}
+	}
+
+	/**
+	 * recalculate idf values after document frequencies or total number of documents changed, and record
+	 * terms whose idf value differs from the previous table
+	 */
+	private void updateInverseDocFrequencyTable() {
+		double[] previousTable = inverseDocFrequencyTable;
+		calculateInverseDocFrequencyTable();
+		boolean[] changed = new boolean[inverseDocFrequencyTable.length];
+		for (int termId = 0; termId < inverseDocFrequencyTable.length; termId++) {
+			double previousIdf = termId < previousTable.length ? previousTable[termId] : 0.0;
+			if (inverseDocFrequencyTable[termId] != previousIdf) {
+				changed[termId] = true;
+			}
+		}
+		idfChanged = changed;
+	}
+
+	/**
+	 * whether idf value of any term of given vector changed in the last update, always true if the idf table
+	 * was recalculated without update
+	 */
+	public boolean hasIdfChanged(SparseVector vector) {
+		if (idfChanged == null)
+			return true;
+		for (int i = 0; i < vector.size(); i++) {
+			int termId = vector.getTermId(i);
+			if (termId < idfChanged.length && idfChanged[termId])
+				return true;
 		}
+		return false;
+	}
+
+	/** idf epoch, increased whenever idf table is recalculated */
+	public int getEpoch() {
+		return epoch;
 	}
-	
-	/** calculate idf value for all words in wordCounts */
+
+	/** calculate idf value for all words in vocab */
 	public void calculateInverseDocFrequencyTable() {
-		inverseDocFrequencyTable = new Hashtable<String, Double>();
-		for (String word : wordCounts.keySet()) {
-			double idf = Math.log(totalNumberOfDocs() / docAppearedIn(word));
-			inverseDocFrequencyTable.put(word, idf);
+		double[] idfTable = new double[docFrequencies.length];
+		for (int termId = 0; termId < docFrequencies.length; termId++) {
+			if (docFrequencies[termId] > 0)
+				idfTable[termId] = Math.log(totalNumberOfDocs / docFrequencies[termId]);
 		}
+		inverseDocFrequencyTable = idfTable;
+		idfChanged = null;
+		epoch++;
 	}
-	
+
 	/** Returns true if tfidf vocab cache contains the given word */
 	public boolean containsWord(String word) {
-		return wordCounts.containsKey(word);
-	} 
-	
+		return docAppearedIn(word) > 0;
+	}
+
 	/** Count of documents a word appeared in */
 	public int docAppearedIn(String word) {
-		if (!docTermFrequencyMap.containsKey(word))
+		return docAppearedIn(dictionary.getTermId(word));
+	}
+
+	/** Count of documents a term id appeared in */
+	public int docAppearedIn(int termId) {
+		if (termId < 0 || termId >= docFrequencies.length)
 			return 0;
-		return docTermFrequencyMap.get(word).size();
+		return docFrequencies[termId];
 	}
-	
+
 	/** Return the total of number of documents encountered in the corpus */
 	public int totalNumberOfDocs() {
 		return totalNumberOfDocs;
 	}
-	
+
 	/** Returns the number of times the word has occurred */
 	public int wordFrequency(String word) {
-		return wordCounts.get(word);
+		int termId = dictionary.getTermId(word);
+		if (termId < 0 || termId >= wordCounts.length)
+			return 0;
+		return wordCounts[termId];
 	}
-	
+
 	/** Returns all of the words in the vocab */
 	public Set<String> words() {
-		return wordCounts.keySet();
+		Set<String> words = new HashSet<String>();
+		for (int termId = 0; termId < docFrequencies.length; termId++) {
+			if (docFrequencies[termId] > 0)
+				words.add(dictionary.getTerm(termId));
+		}
+		return words;
 	}
-	
+
 	/** Returns average document length */
 	public double averageDocLength() {
 		long lengthSum = 0;
@@ -258,212 +316,253 @@ public class TfidfVectorizer<T> {
 		}
 		return (double)lengthSum / docLengthMap.size();
 	}
-	
+
 	/** idf value for given word */
 	public double idfForWord(String word) {
-		if (inverseDocFrequencyTable == null) 
+		return idfForTerm(dictionary.getTermId(word));
+	}
+
+	/** idf value for given term id */
+	public double idfForTerm(int termId) {
+		if (inverseDocFrequencyTable == null)
 			calculateInverseDocFrequencyTable();
-    	if (!inverseDocFrequencyTable.containsKey(word))
-    		return 0.0;
-    	return inverseDocFrequencyTable.get(word);
-    }
-	
+		if (termId < 0 || termId >= inverseDocFrequencyTable.length)
+			return 0.0;
+		return inverseDocFrequencyTable[termId];
+	}
+
 	protected class VocabRunnable implements Runnable {
 
 		Entry<T, String> labeledSentence;
-		
+
 		public VocabRunnable(Entry<T, String> labeledSentence) {
 			this.labeledSentence = labeledSentence;
 		}
-		
+
 		@Override
 		public void run() {
 			T label = labeledSentence.getKey();
 			String sentence = labeledSentence.getValue();
 			String[] tokens = sentence.split(" ");
-			
+
 			docLengthMap.put(label, tokens.length);
-			
-			HashMap<String, AtomicInteger> counts = new HashMap<String, AtomicInteger>();
-			for (String token : tokens) {
-				// count words
-				if (!counts.containsKey(token)) 
-					counts.put(token, new AtomicInteger(0));
-				counts.get(token).getAndIncrement();
+			docTermsMap.put(label, countTerms(tokens));
+		}
+	}
+
+	/** count term frequencies of tokens of a training document, tokens not in dictionary are added */
+	private DocTerms countTerms(String[] tokens) {
+		return countTerms(tokens, true, true);
+	}
+
+	/**
+	 * count term frequencies of given tokens, and sort by term id. Tokens not in dictionary are added to
+	 * dictionary only if addTerms is true, otherwise they get negative ids local to this document, so they
+	 * are still counted by document statistics but have no weight in this model
+	 * @param keepEmptyToken whether count empty token, only used when fitting
+	 */
+	private DocTerms countTerms(String[] tokens, boolean keepEmptyToken, boolean addTerms) {
+		int[] tokenIds = new int[tokens.length];
+		HashMap<String, Integer> unknownIds = null;
+		int length = 0;
+		for (String token : tokens) {
+			if (!keepEmptyToken && (token = token.trim()).equals(""))
+				continue;
+			if (addTerms) {
+				tokenIds[length++] = dictionary.addTerm(token);
+				continue;
 			}
-			
-			docTermsMap.put(label, new HashSet<String>(counts.keySet()));
-			
-			for (Entry<String, AtomicInteger> entry : counts.entrySet()) {
-				String token = entry.getKey();
-				Integer count = entry.getValue().get();
-				
-				// add token to docTermFrequencyMap
-				if (!docTermFrequencyMap.containsKey(token)) {
-					HashMap<T, Integer> map = new HashMap<T, Integer>();
-					docTermFrequencyMap.put(token, map);
+			int termId = dictionary.getTermId(token);
+			if (termId < 0) {
+				if (unknownIds == null)
+					unknownIds = new HashMap<String, Integer>();
+				Integer unknownId = unknownIds.get(token);
+				if (unknownId == null) {
+					unknownId = -1 - unknownIds.size();
+					unknownIds.put(token, unknownId);
 				}
-				docTermFrequencyMap.get(token).put(label, count);
+				termId = unknownId;
 			}
-			
+			tokenIds[length++] = termId;
+		}
+		Arrays.sort(tokenIds, 0, length);
+		int size = 0;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || tokenIds[i] != tokenIds[i - 1])
+				size++;
+		}
+		int[] termIds = new int[size];
+		int[] counts = new int[size];
+		int index = -1;
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || tokenIds[i] != tokenIds[i - 1])
+				termIds[++index] = tokenIds[i];
+			counts[index]++;
 		}
+		return new DocTerms(termIds, counts);
 	}
-	
+
 	/**
-	 * calculate tokens weight for each token in content 
+	 * sparse vector of given term weights, terms no document of this model contains are dropped, their idf
+	 * value is 0 so they have no tfidf weight
+	 */
+	private SparseVector knownTermsVector(int[] termIds, double[] weights) {
+		int size = 0;
+		for (int termId : termIds) {
+			if (docAppearedIn(termId) > 0)
+				size++;
+		}
+		if (size == termIds.length)
+			return new SparseVector(termIds, weights);
+		int[] knownTermIds = new int[size];
+		double[] knownWeights = new double[size];
+		size = 0;
+		for (int i = 0; i < termIds.length; i++) {
+			if (docAppearedIn(termIds[i]) > 0) {
+				knownTermIds[size] = termIds[i];
+				knownWeights[size] = weights[i];
+				size++;
+			}
+		}
+		return new SparseVector(knownTermIds, knownWeights);
+	}
+
+	/**
+	 * calculate tokens weight for each token in content
 	 * @param content input content String
 	 * @param tokenScoreType given TokenScore Type, including NTFIDF, LOGTFIDF, WFIDF and TFIDF
-	 * @return tokensScore map
+	 * @return tokens weight vector
 	 */
-	public HashMap<String, TokenScore> vectorize(String content, ScoreType tokenScoreType) {
-		HashMap<String, TokenScore> contentTokens = new HashMap<String, TokenScore>();
-		String[] tokens = content.split(" ");
-		HashMap<String, Integer> tokensCount = new HashMap<String, Integer>();
+	public SparseVector vectorize(String content, ScoreType tokenScoreType) {
+		return weight(tfVectorize(content, tokenScoreType));
+	}
+
+	/**
+	 * calculate tf value for each token in content, the tf vector can be kept to reweight tokens by
+	 * weight(tfVector) after idf values changed, without tokenizing content again
+	 * @param tokenScoreType given TokenScore Type, including NTFIDF, LOGTFIDF, WFIDF and TFIDF
+	 * @return tokens tf vector
+	 */
+	public SparseVector tfVectorize(String content, ScoreType tokenScoreType) {
+		DocTerms docTerms = countTerms(content.split(" "), false, false);
+		int[] counts = docTerms.counts;
 		int documentLength = 0;
-		// get tokens term frequency
-		for (String token : tokens) {
-			if ((token = token.trim()).equals(""))
-				continue;
-			if (!tokensCount.containsKey(token))
-				tokensCount.put(token, 1);
-			else
-				tokensCount.put(token, tokensCount.get(token) + 1);
-			documentLength++;
-		}
+		for (int count : counts)
+			documentLength += count;
 		int maxWordCount = 0;
 		double aveWordCount = 0.0;
 		if (tokenScoreType == ScoreType.NTFIDF) {
-			for (Integer count : tokensCount.values()) {
+			for (int count : counts) {
 				if (count > maxWordCount)
 					maxWordCount = count;
 			}
 		}
 		if (tokenScoreType == ScoreType.LOGTFIDF) {
 			double sumWordCount = 0.0;
-			for (Integer count : tokensCount.values())
+			for (int count : counts)
 				sumWordCount += count;
-			aveWordCount = sumWordCount / tokensCount.size();
+			aveWordCount = sumWordCount / counts.length;
 		}
-		
-		for (Entry<String, Integer> tokenEntry : tokensCount.entrySet()) {
-			String token = tokenEntry.getKey();
-			double tf;
+
+		double[] tfs = new double[counts.length];
+		for (int i = 0; i < counts.length; i++) {
 			switch (tokenScoreType) {
 			case TFIDF:
-				tf = tfForWord(tokenEntry.getValue(), documentLength);
+				tfs[i] = tfForWord(counts[i], documentLength);
 				break;
 			case NTFIDF:
-				tf = ntfForWord(tokenEntry.getValue(), maxWordCount);
+				tfs[i] = ntfForWord(counts[i], maxWordCount);
 				break;
 			case WFIDF:
-				tf = wfForWord(tokenEntry.getValue());
+				tfs[i] = wfForWord(counts[i]);
 				break;
 			case LOGTFIDF:
-				tf = logTfForWord(tokenEntry.getValue(), aveWordCount);
+				tfs[i] = logTfForWord(counts[i], aveWordCount);
 				break;
 			default : // default type: ntf-idf
-				tf = ntfForWord(tokenEntry.getValue(), maxWordCount);
+				tfs[i] = ntfForWord(counts[i], maxWordCount);
 				break;
 			}
-			double idf = idfForWord(token);
-			double tfidf = MathUtils.tfidf(tf, idf);
-			TokenScore tokenScore = new TokenScore(token, tf, idf, tfidf);
-			contentTokens.put(token, tokenScore);
-		} 
-		return contentTokens;
-	}
-	
+		}
+		return knownTermsVector(docTerms.termIds, tfs);
+	}
+
+	/** multiply tf vector by current idf values */
+	public SparseVector weight(SparseVector tfVector) {
+		double[] weights = new double[tfVector.size()];
+		for (int i = 0; i < tfVector.size(); i++)
+			weights[i] = MathUtils.tfidf(tfVector.getWeight(i), idfForTerm(tfVector.getTermId(i)));
+		return tfVector.withWeights(weights);
+	}
+
 	/** Lemur Tfidf Vectorize without given average document length */
-	public HashMap<String, TokenScore> okapiTfidfVectorize(String content) {
+	public SparseVector okapiTfidfVectorize(String content) {
 		averDocumentLength = averageDocLength();
 		return okapiTfidfVectorize(content, averDocumentLength, k1, b);
 	}
-	
+
 	/** Lemur Tfidf Vectorize with given average document length */
-	public HashMap<String, TokenScore> okapiTfidfVectorize(String content, double aveDocumentLength, double k1, double b) {
-		HashMap<String, TokenScore> contentTokens = new HashMap<String, TokenScore>();
-		String[] tokens = content.split(" ");
-		HashMap<String, Integer> tokensCount = new HashMap<String, Integer>();
+	public SparseVector okapiTfidfVectorize(String content, double aveDocumentLength, double k1, double b) {
+		DocTerms docTerms = countTerms(content.split(" "), false, true);
 		int documentLength = 0;
-		// get tokens term frequency
-		for (String token : tokens) {
-			if ((token = token.trim()).equals(""))
-				continue;
-			if (!tokensCount.containsKey(token))
-				tokensCount.put(token, 1);
-			else
-				tokensCount.put(token, tokensCount.get(token) + 1);
-			documentLength++;
-		}
-		for (Entry<String, Integer> tokenEntry : tokensCount.entrySet()) {
-			String token = tokenEntry.getKey();
-			double okapiTf = okapiTfForWord(tokenEntry.getValue(), documentLength, aveDocumentLength, k1, b);
-			double smoothedIdf = smoothedIdfForWord(token);
-			double tfidf = MathUtils.tfidf(okapiTf, smoothedIdf);
-			TokenScore tokenScore = new TokenScore(token, okapiTf, smoothedIdf, tfidf);
-			contentTokens.put(token, tokenScore);
-		}
-		return contentTokens;
+		for (int count : docTerms.counts)
+			documentLength += count;
+		return okapiTfidfVectorize(docTerms, documentLength, aveDocumentLength, k1, b);
 	}
-	
+
 	/** Lemur Tfidf Vectorize with given documentLength and average document length */
-	public HashMap<String, TokenScore> okapiTfidfVectorize(String content, long documentLength, double aveDocumentLength, double k1, double b) {
-		HashMap<String, TokenScore> contentTokens = new HashMap<String, TokenScore>();
-		String[] tokens = content.split(" ");
-		HashMap<String, Integer> tokensCount = new HashMap<String, Integer>();
-		// get tokens term frequency
-		for (String token : tokens) {
-			if ((token = token.trim()).equals(""))
-				continue;
-			if (!tokensCount.containsKey(token))
-				tokensCount.put(token, 1);
-			else
-				tokensCount.put(token, tokensCount.get(token) + 1);
-		}
-		for (Entry<String, Integer> tokenEntry : tokensCount.entrySet()) {
-			String token = tokenEntry.getKey();
-			double okapiTf = okapiTfForWord(tokenEntry.getValue(), documentLength, aveDocumentLength, k1, b);
-			double smoothedIdf = smoothedIdfForWord(token);
-			double tfidf = MathUtils.tfidf(okapiTf, smoothedIdf);
-			TokenScore tokenScore = new TokenScore(token, okapiTf, smoothedIdf, tfidf);
-			contentTokens.put(token, tokenScore);
-		}
-		return contentTokens;
-	}
-	
-	/** calculate tokens content norm for contentTokens map */
-	public double calculateContentNorm(HashMap<String, TokenScore> contentTokens) {
-		double contentNorm = 0.0;
-		for (TokenScore token : contentTokens.values()) {
-			contentNorm += token.getTokenWeight();
+	public SparseVector okapiTfidfVectorize(String content, long documentLength, double aveDocumentLength, double k1, double b) {
+		DocTerms docTerms = countTerms(content.split(" "), false, true);
+		return okapiTfidfVectorize(docTerms, documentLength, aveDocumentLength, k1, b);
+	}
+
+	/**
+	 * terms no document of this model contains keep their smoothed idf weight, so they are added to the
+	 * dictionary to get term ids
+	 */
+	private SparseVector okapiTfidfVectorize(DocTerms docTerms, long documentLength, double aveDocumentLength, double k1, double b) {
+		double[] weights = new double[docTerms.termIds.length];
+		for (int i = 0; i < docTerms.termIds.length; i++) {
+			double okapiTf = okapiTfForWord(docTerms.counts[i], documentLength, aveDocumentLength, k1, b);
+			double smoothedIdf = smoothedIdfForTerm(docTerms.termIds[i]);
+			weights[i] = MathUtils.tfidf(okapiTf, smoothedIdf);
 		}
-		return Math.sqrt(contentNorm);
+		return new SparseVector(docTerms.termIds, weights);
+	}
+
+	/** calculate tokens content norm for contentTokens vector */
+	public double calculateContentNorm(SparseVector contentTokens) {
+		return Math.sqrt(contentTokens.weightSum());
 	}
 
     public double tfForWord(long wordCount, long documentLength) {
         return (double) wordCount / (double) documentLength;
     }
-    
+
     public double ntfForWord(long wordCount, long maxWordCount) {
     	return 0.5 + 0.5 * (double) wordCount / maxWordCount;
     }
-    
+
     public double wfForWord(long wordCount) {
     	return 1 + Math.log(wordCount);
     }
-    
+
     public double logTfForWord(long wordCount, double aveWordCount) {
     	return (1 + Math.log(wordCount)) / (1 + Math.log(aveWordCount));
     }
-    
+
     public double okapiTfForWord(long wordCount, long documentLength, double aveDocumentLength, double k1, double b) {
     	if (aveDocumentLength == 0)
     		return k1 * wordCount / (wordCount + k1);
 		return (k1 * wordCount / (wordCount + k1 * (1 - b + b * documentLength / aveDocumentLength)));
     }
-    
+
     public double smoothedIdfForWord(String word) {
-    	return Math.log((totalNumberOfDocs() + 1) / (docAppearedIn(word) + 0.5));
+    	return smoothedIdfForTerm(dictionary.getTermId(word));
+    }
+
+    public double smoothedIdfForTerm(int termId) {
+    	return Math.log((totalNumberOfDocs() + 1) / (docAppearedIn(termId) + 0.5));
     }
 
 
@@ -482,6 +581,21 @@ public class TfidfVectorizer<T> {
 		}
 		return docLengthSum / docLengthMap.size();
 	}
-	
+
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/** sorted term ids and term frequencies of a document */
+	private static class DocTerms {
+
+		private final int[] termIds;
+		private final int[] counts;
+
+		public DocTerms(int[] termIds, int[] counts) {
+			this.termIds = termIds;
+			this.counts = counts;
+		}
+	}
 
 }
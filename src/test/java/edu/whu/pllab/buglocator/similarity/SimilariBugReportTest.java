@@ -27,7 +27,7 @@ import edu.whu.pllab.buglocator.Property;
 import edu.whu.pllab.buglocator.common.BugReport;
 import edu.whu.pllab.buglocator.common.BugReportRepository;
 import edu.whu.pllab.buglocator.common.SimilarBugReport;
-import edu.whu.pllab.buglocator.common.TokenScore;
+import edu.whu.pllab.buglocator.common.SparseVector;
 import edu.whu.pllab.buglocator.rankingmodel.RankBySourceCodeSimilarity;
 import edu.whu.pllab.buglocator.utils.BugReportsSplitter;
 import edu.whu.pllab.buglocator.utils.FileUtil;
@@ -293,9 +293,9 @@ public class SimilariBugReportTest {
 		builder.append("\tcorpus: " + bugReport.getBugReportCorpus().getContent() + "\n");
 		builder.append("\tcontentNorm: " + bugReport.getBugReportCorpus().getContentNorm() + "\n");
 		builder.append("\tcontentTokens: ");
-		for (TokenScore tokenScore : bugReport.getBugReportCorpus().getContentTokens().values()) {
-			builder.append(String.format("%s(%f,%f,%f) ", tokenScore.getToken(), tokenScore.getTf(),
-					tokenScore.getIdf(), tokenScore.getTokenWeight()));
+		SparseVector contentTokens = bugReport.getBugReportCorpus().getContentTokens();
+		for (int i = 0; i < contentTokens.size(); i++) {
+			builder.append(String.format("%s(%f) ", contentTokens.getTerm(i), contentTokens.getWeight(i)));
 		}
 		builder.append("\n\tModifiedFiles: \n");
 		for (String file : bugReport.getFixedFiles()) {
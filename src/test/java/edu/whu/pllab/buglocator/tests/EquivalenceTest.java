@@ -0,0 +1,510 @@
+package edu.whu.pllab.buglocator.tests;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.whu.pllab.buglocator.Property;
+import edu.whu.pllab.buglocator.common.BugReport;
+import edu.whu.pllab.buglocator.common.BugReportCorpus;
+import edu.whu.pllab.buglocator.common.BugReportRepository;
+import edu.whu.pllab.buglocator.common.SourceCode;
+import edu.whu.pllab.buglocator.common.SourceCodeCorpus;
+import edu.whu.pllab.buglocator.common.SourceCodeRepository;
+import edu.whu.pllab.buglocator.common.SparseVector;
+import edu.whu.pllab.buglocator.common.TokenScore.ScoreType;
+import edu.whu.pllab.buglocator.evaluation.TopKCollector;
+import edu.whu.pllab.buglocator.index.CSRMatrix;
+import edu.whu.pllab.buglocator.index.InvertedIndex;
+import edu.whu.pllab.buglocator.vectorizer.BugReportTfidfVectorizer;
+import edu.whu.pllab.buglocator.vectorizer.SourceCodeTfidfVectorizer;
+
+/**
+ * Checks on one product that token vectors, the inverted index, MaxScore top k and the sparse matrix products
+ * give the same vectors, scores and rankings as the original string keyed tfidf model and pair by pair
+ * similarity, which are reimplemented here by BaselineTfidf. Usage: EquivalenceTest [product] [structured],
+ * VSM of BugLocator is checked by default, BM25 structural similarity of BLUiR if structured is given. Per bug
+ * report differences are dumped to equivalence.txt in the working directory.
+ */
+public class EquivalenceTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(EquivalenceTest.class);
+
+	private static final double EPSILON = 1e-9;
+	private static final int TOP_K = 10;
+
+	/** Okapi parameters of the original source code and bug report vectorizers */
+	private static final double CODE_K1 = 1.0;
+	private static final double CODE_B = 0.3;
+	private static final double BR_K3 = 1000;
+	private static final double BR_B = 0;
+
+	private static HashMap<String, SourceCode> sourceCodeMap;
+	private static HashMap<Integer, BugReport> bugReports;
+
+	/** largest difference of each check, and number of vectors, scores or rankings differing more than EPSILON */
+	private static HashMap<String, Double> maxDiffs = new HashMap<String, Double>();
+	private static HashMap<String, Integer> mismatches = new HashMap<String, Integer>();
+
+	public static void main(String[] args) throws Exception {
+		String product = args.length > 0 ? args[0] : "BugLocator_ZXing";
+		boolean structured = args.length > 1 && args[1].equals("structured");
+		logger.info("Checking equivalence on product " + product + (structured ? " with structured information" : ""));
+
+		Property.USE_STRUCTURED_INFORMATION = structured;
+		Property property = Property.loadInstance(product);
+		if (structured) {
+			property.setCodeRepositoryXMLPath(new File(property.getWorkingDir(), "codeRepository_structured.xml").getAbsolutePath());
+			property.setCodeRepositoryBinaryPath(new File(property.getWorkingDir(), "codeRepository_structured.bin").getAbsolutePath());
+			property.setParseCachePath(new File(property.getWorkingDir(), "parseCache_structured.bin").getAbsolutePath());
+		}
+		BugReportRepository brRepo = new BugReportRepository();
+		SourceCodeRepository codeRepo = new SourceCodeRepository();
+		sourceCodeMap = codeRepo.getSourceCodeMap();
+		bugReports = brRepo.getBugReports();
+
+		BufferedWriter writer = new BufferedWriter(new FileWriter(new File(property.getWorkingDir(), "equivalence.txt")));
+		if (structured)
+			checkStructural(writer);
+		else
+			checkVSM(writer);
+		checkBugReportSimilarity();
+		writer.close();
+
+		boolean equivalent = true;
+		for (Entry<String, Double> entry : maxDiffs.entrySet()) {
+			int count = mismatches.containsKey(entry.getKey()) ? mismatches.get(entry.getKey()) : 0;
+			logger.info(String.format("%-40s max difference %.3e, %d mismatches", entry.getKey(), entry.getValue(), count));
+			if (count > 0)
+				equivalent = false;
+		}
+		logger.info(equivalent ? "All checks passed." : "Some checks failed, see equivalence.txt for details.");
+	}
+
+	/** vectors, index scores, top k and matrix product of BugLocator's VSM against the original model */
+	private static void checkVSM(BufferedWriter writer) throws Exception {
+		SourceCodeTfidfVectorizer codeVectorizer = new SourceCodeTfidfVectorizer(sourceCodeMap);
+		codeVectorizer.train();
+		codeVectorizer.calculateTokensWeight(sourceCodeMap);
+		BugReportTfidfVectorizer brVectorizer = new BugReportTfidfVectorizer(codeVectorizer.getTfidf());
+		brVectorizer.calculateTokensWeight(bugReports);
+
+		BaselineTfidf baseline = new BaselineTfidf(codeContents());
+		InvertedIndex codeIndex = new InvertedIndex(sourceCodeMap, false);
+		List<SourceCode> documents = codeIndex.getDocuments();
+
+		// original vectors of files, in document order of the index
+		final List<HashMap<String, Double>> codeVectors = new ArrayList<HashMap<String, Double>>();
+		final double[] codeNorms = new double[documents.size()];
+		for (int doc = 0; doc < documents.size(); doc++) {
+			SourceCodeCorpus corpus = documents.get(doc).getSourceCodeCorpus();
+			HashMap<String, Double> vector = baseline.vectorize(corpus.getContent(), ScoreType.WFIDF);
+			codeVectors.add(vector);
+			codeNorms[doc] = BaselineTfidf.norm(vector);
+			compareVector("code content vector", corpus.getContentTokens(), corpus.getContentNorm(), vector, codeNorms[doc]);
+		}
+
+		// original VSM scores of each bug report
+		final List<BugReport> brList = new ArrayList<BugReport>(bugReports.values());
+		final List<double[]> baselineScores = new ArrayList<double[]>();
+		for (BugReport br : brList) {
+			BugReportCorpus corpus = br.getBugReportCorpus();
+			HashMap<String, Double> vector = baseline.vectorize(corpus.getContent(), ScoreType.WFIDF);
+			double norm = BaselineTfidf.norm(vector);
+			compareVector("bug report content vector", corpus.getContentTokens(), corpus.getContentNorm(), vector, norm);
+			double[] scores = new double[documents.size()];
+			for (int doc = 0; doc < documents.size(); doc++) {
+				if (norm != 0 && codeNorms[doc] != 0)
+					scores[doc] = BaselineTfidf.dot(vector, codeVectors.get(doc)) / (norm * codeNorms[doc]);
+			}
+			baselineScores.add(scores);
+		}
+
+		for (int i = 0; i < brList.size(); i++) {
+			BugReport br = brList.get(i);
+			double[] expected = baselineScores.get(i);
+			double[] scores = codeIndex.vsmScores(br);
+			double diff = compareScores("inverted index VSM scores", scores, expected);
+
+			// MaxScore top k must be exactly the top k of full scores, and ranked as the original scores
+			TopKCollector full = new TopKCollector(TOP_K);
+			full.collectAll(scores);
+			int[] topIds = codeIndex.topVsm(br, TOP_K).topIds();
+			record("MaxScore top k against full scores", 0, !Arrays.equals(topIds, full.topIds()));
+			TopKCollector original = new TopKCollector(TOP_K);
+			original.collectAll(expected);
+			int[] originalIds = original.topIds();
+			record("top k ranking against original", 0, !sameRanking(topIds, originalIds, expected));
+			writer.write(br.getBugID() + "\t" + diff + "\t" + idsToString(topIds) + "\t" + idsToString(originalIds));
+			writer.newLine();
+		}
+
+		// batch product of bug reports and source code files
+		CSRMatrix brMatrix = CSRMatrix.ofBugReports(brList);
+		CSRMatrix codeMatrix = CSRMatrix.ofSourceCodes(documents, InvertedIndex.CONTENT_FIELD);
+		brMatrix.cosineProduct(codeMatrix, 0, false, new RowComparator("matrix product VSM scores", baselineScores, 0));
+	}
+
+	/** vectors, index scores and matrix product of BLUiR's BM25 structural similarity against the original model */
+	private static void checkStructural(BufferedWriter writer) throws Exception {
+		SourceCodeTfidfVectorizer codeVectorizer = new SourceCodeTfidfVectorizer(sourceCodeMap);
+		codeVectorizer.setTokenScoreType(ScoreType.OKAPITFIDF);
+		codeVectorizer.train();
+		codeVectorizer.calculateTokensWeight(sourceCodeMap);
+		BugReportTfidfVectorizer brVectorizer = new BugReportTfidfVectorizer(codeVectorizer.getTfidf());
+		brVectorizer.setTokenScoreType(ScoreType.OKAPITFIDF);
+		brVectorizer.calculateTokensWeight(bugReports);
+
+		BaselineTfidf baseline = new BaselineTfidf(codeContents());
+		InvertedIndex codeIndex = new InvertedIndex(sourceCodeMap, true);
+		List<SourceCode> documents = codeIndex.getDocuments();
+
+		double documentLengthSum = 0.0;
+		for (SourceCode sourceCode : documents)
+			documentLengthSum += sourceCode.getSourceCodeCorpus().getContent().split(" ").length;
+		double averDocLength = documentLengthSum / documents.size();
+
+		// original vectors of the four fields of files, in document order of the index
+		List<List<HashMap<String, Double>>> codeFields = new ArrayList<List<HashMap<String, Double>>>();
+		for (SourceCode sourceCode : documents) {
+			SourceCodeCorpus corpus = sourceCode.getSourceCodeCorpus();
+			int documentLength = corpus.getContent().split(" ").length;
+			String[] parts = { corpus.getClassPart(), corpus.getMethodPart(), corpus.getVariablePart(),
+					corpus.getCommentPart() };
+			SparseVector[] tokens = { corpus.getClassPartTokens(), corpus.getMethodPartTokens(),
+					corpus.getVariablePartTokens(), corpus.getCommentPartTokens() };
+			double[] norms = { corpus.getClassCorpusNorm(), corpus.getMethodCorpusNorm(),
+					corpus.getVariableCorpusNorm(), corpus.getCommentCorpusNorm() };
+			List<HashMap<String, Double>> fields = new ArrayList<HashMap<String, Double>>();
+			for (int j = 0; j < parts.length; j++) {
+				HashMap<String, Double> vector = baseline.okapiVectorize(parts[j], documentLength, averDocLength,
+						CODE_K1, CODE_B);
+				compareVector("code field vector", tokens[j], norms[j], vector, BaselineTfidf.norm(vector));
+				fields.add(vector);
+			}
+			codeFields.add(fields);
+		}
+
+		// original BM25 structural scores of each bug report, field similarities are not normalized
+		List<BugReport> brList = new ArrayList<BugReport>(bugReports.values());
+		List<double[]> baselineScores = new ArrayList<double[]>();
+		for (BugReport br : brList) {
+			BugReportCorpus corpus = br.getBugReportCorpus();
+			HashMap<String, Double> summary = baseline.okapiVectorize(corpus.getSummaryPart(), 0, BR_K3, BR_B);
+			HashMap<String, Double> description = baseline.okapiVectorize(corpus.getDescriptionPart(), 0, BR_K3, BR_B);
+			compareVector("bug report summary vector", corpus.getSummaryTokens(), corpus.getSummaryNorm(), summary,
+					BaselineTfidf.norm(summary));
+			compareVector("bug report description vector", corpus.getDescriptionTokens(), corpus.getDescriptionNorm(),
+					description, BaselineTfidf.norm(description));
+			List<HashMap<String, Double>> brFields = new ArrayList<HashMap<String, Double>>();
+			brFields.add(summary);
+			brFields.add(description);
+			double[] scores = new double[documents.size()];
+			for (HashMap<String, Double> brField : brFields) {
+				if (BaselineTfidf.norm(brField) == 0)
+					continue;
+				for (int doc = 0; doc < documents.size(); doc++) {
+					for (HashMap<String, Double> codeField : codeFields.get(doc)) {
+						if (BaselineTfidf.norm(codeField) != 0)
+							scores[doc] += BaselineTfidf.dot(brField, codeField);
+					}
+				}
+			}
+			baselineScores.add(scores);
+		}
+
+		for (int i = 0; i < brList.size(); i++) {
+			BugReport br = brList.get(i);
+			double[] expected = baselineScores.get(i);
+			double[] scores = codeIndex.structuralScores(br, false);
+			double diff = compareScores("inverted index structural scores", scores, expected);
+			TopKCollector top = new TopKCollector(TOP_K);
+			top.collectAll(scores);
+			TopKCollector original = new TopKCollector(TOP_K);
+			original.collectAll(expected);
+			record("top k ranking against original", 0, !sameRanking(top.topIds(), original.topIds(), expected));
+			writer.write(br.getBugID() + "\t" + diff + "\t" + idsToString(top.topIds()) + "\t"
+					+ idsToString(original.topIds()));
+			writer.newLine();
+		}
+
+		// batch sum of products of bug report fields and source code fields, in the order of BLUiR
+		int[] brFieldIds = { CSRMatrix.SUMMARY_FIELD, CSRMatrix.DESCRIPTION_FIELD };
+		int[] codeFieldIds = { InvertedIndex.CLASS_FIELD, InvertedIndex.METHOD_FIELD, InvertedIndex.VARIABLE_FIELD,
+				InvertedIndex.COMMENT_FIELD };
+		CSRMatrix[] brMatrices = new CSRMatrix[brFieldIds.length * codeFieldIds.length];
+		CSRMatrix[] codeMatrices = new CSRMatrix[brFieldIds.length * codeFieldIds.length];
+		for (int i = 0; i < brFieldIds.length; i++) {
+			for (int j = 0; j < codeFieldIds.length; j++) {
+				brMatrices[i * codeFieldIds.length + j] = CSRMatrix.ofBugReports(brList, brFieldIds[i]);
+				codeMatrices[i * codeFieldIds.length + j] = CSRMatrix.ofSourceCodes(documents, codeFieldIds[j]);
+			}
+		}
+		CSRMatrix.sumProduct(brMatrices, codeMatrices, false, 0, false,
+				new RowComparator("matrix product structural scores", baselineScores, 0));
+	}
+
+	/** all pairs bug report similarities of the matrix product, with and without top k, against the original model */
+	private static void checkBugReportSimilarity() {
+		BugReportTfidfVectorizer brVectorizer = new BugReportTfidfVectorizer(bugReports);
+		brVectorizer.train();
+		brVectorizer.calculateTokensWeight(bugReports);
+
+		List<BugReport> brList = new ArrayList<BugReport>(bugReports.values());
+		List<String> contents = new ArrayList<String>();
+		for (BugReport br : brList)
+			contents.add(br.getBugReportCorpus().getContent());
+		BaselineTfidf baseline = new BaselineTfidf(contents);
+
+		List<HashMap<String, Double>> vectors = new ArrayList<HashMap<String, Double>>();
+		double[] norms = new double[brList.size()];
+		for (int i = 0; i < brList.size(); i++) {
+			BugReportCorpus corpus = brList.get(i).getBugReportCorpus();
+			vectors.add(baseline.vectorize(corpus.getContent(), ScoreType.WFIDF));
+			norms[i] = BaselineTfidf.norm(vectors.get(i));
+			compareVector("bug report vector of report model", corpus.getContentTokens(), corpus.getContentNorm(),
+					vectors.get(i), norms[i]);
+		}
+		List<double[]> baselineScores = new ArrayList<double[]>();
+		for (int i = 0; i < brList.size(); i++) {
+			double[] scores = new double[brList.size()];
+			for (int j = 0; j < brList.size(); j++) {
+				if (i != j && norms[i] != 0 && norms[j] != 0)
+					scores[j] = BaselineTfidf.dot(vectors.get(i), vectors.get(j)) / (norms[i] * norms[j]);
+			}
+			baselineScores.add(scores);
+		}
+
+		CSRMatrix brMatrix = CSRMatrix.ofBugReports(brList);
+		brMatrix.cosineProduct(brMatrix, 0, true, new RowComparator("bug report similarities", baselineScores, 0));
+		brMatrix.cosineProduct(brMatrix, TOP_K, true,
+				new RowComparator("top k bug report similarities", baselineScores, TOP_K));
+	}
+
+	private static List<String> codeContents() {
+		List<String> contents = new ArrayList<String>();
+		for (SourceCode sourceCode : sourceCodeMap.values())
+			contents.add(sourceCode.getSourceCodeCorpus().getContent());
+		return contents;
+	}
+
+	/** compare term weights and norm of a vector with the original one, absent terms weigh 0 */
+	private static void compareVector(String check, SparseVector tokens, double norm, HashMap<String, Double> expected,
+			double expectedNorm) {
+		HashMap<String, Double> weights = new HashMap<String, Double>();
+		for (int i = 0; i < tokens.size(); i++)
+			weights.put(tokens.getTerm(i), tokens.getWeight(i));
+		HashSet<String> terms = new HashSet<String>(weights.keySet());
+		terms.addAll(expected.keySet());
+		double diff = Math.abs(norm - expectedNorm);
+		for (String term : terms) {
+			double weight = weights.containsKey(term) ? weights.get(term) : 0.0;
+			double expectedWeight = expected.containsKey(term) ? expected.get(term) : 0.0;
+			diff = Math.max(diff, Math.abs(weight - expectedWeight));
+		}
+		record(check, diff, diff > EPSILON);
+	}
+
+	/** @return largest difference of the scores */
+	private static double compareScores(String check, double[] scores, double[] expected) {
+		double diff = 0.0;
+		for (int i = 0; i < scores.length; i++)
+			diff = Math.max(diff, Math.abs(scores[i] - expected[i]));
+		record(check, diff, diff > EPSILON);
+		return diff;
+	}
+
+	/** rankings are the same if ids only differ where the original scores tie */
+	private static boolean sameRanking(int[] ids, int[] expectedIds, double[] expected) {
+		if (ids.length != expectedIds.length)
+			return false;
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] != expectedIds[i] && Math.abs(expected[ids[i]] - expected[expectedIds[i]]) > EPSILON)
+				return false;
+		}
+		return true;
+	}
+
+	private static synchronized void record(String check, double diff, boolean mismatch) {
+		if (!maxDiffs.containsKey(check) || maxDiffs.get(check) < diff)
+			maxDiffs.put(check, diff);
+		if (!mismatches.containsKey(check))
+			mismatches.put(check, 0);
+		if (mismatch)
+			mismatches.put(check, mismatches.get(check) + 1);
+	}
+
+	private static String idsToString(int[] ids) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < ids.length; i++)
+			builder.append(i == 0 ? "" : ",").append(ids[i]);
+		return builder.toString();
+	}
+
+	/**
+	 * compares rows of a product with the original scores, a column left out of a full row must have score 0, and
+	 * a column left out of a top k row must not beat the kept columns
+	 */
+	private static class RowComparator implements CSRMatrix.RowHandler {
+
+		private String check;
+		private List<double[]> baselineScores;
+		private int topK;
+
+		public RowComparator(String check, List<double[]> baselineScores, int topK) {
+			this.check = check;
+			this.baselineScores = baselineScores;
+			this.topK = topK;
+		}
+
+		@Override
+		public void handle(int row, int[] columns, double[] similarities) {
+			double[] expected = baselineScores.get(row);
+			boolean[] kept = new boolean[expected.length];
+			double minKept = Double.POSITIVE_INFINITY;
+			double diff = 0.0;
+			for (int i = 0; i < columns.length; i++) {
+				kept[columns[i]] = true;
+				minKept = Math.min(minKept, similarities[i]);
+				diff = Math.max(diff, Math.abs(similarities[i] - expected[columns[i]]));
+			}
+			boolean mismatch = false;
+			for (int column = 0; column < expected.length; column++) {
+				if (kept[column])
+					continue;
+				if (topK > 0 && columns.length == topK)
+					mismatch |= expected[column] > minKept + EPSILON;
+				else
+					diff = Math.max(diff, Math.abs(expected[column]));
+			}
+			record(check, diff, mismatch || diff > EPSILON);
+		}
+
+	}
+
+	/**
+	 * The original string keyed tfidf model: idf is log(N / df) with integer division, smoothed idf is
+	 * log((N + 1) / (df + 0.5)), terms unknown to the model get idf 0, and norm is the square root of the weights sum
+	 */
+	private static class BaselineTfidf {
+
+		private HashMap<String, Integer> docFrequency = new HashMap<String, Integer>();
+		private int totalNumberOfDocs;
+
+		public BaselineTfidf(Collection<String> contents) {
+			for (String content : contents) {
+				// training tokens are not trimmed
+				for (String token : new HashSet<String>(Arrays.asList(content.split(" ")))) {
+					Integer df = docFrequency.get(token);
+					docFrequency.put(token, df == null ? 1 : df + 1);
+				}
+				totalNumberOfDocs++;
+			}
+		}
+
+		public HashMap<String, Double> vectorize(String content, ScoreType tokenScoreType) {
+			HashMap<String, Integer> tokensCount = countTokens(content);
+			int documentLength = 0;
+			for (Integer count : tokensCount.values())
+				documentLength += count;
+			// as the original, max and average counts are only calculated by their own types
+			int maxWordCount = 0;
+			double aveWordCount = 0.0;
+			if (tokenScoreType == ScoreType.NTFIDF) {
+				for (Integer count : tokensCount.values())
+					maxWordCount = Math.max(maxWordCount, count);
+			}
+			if (tokenScoreType == ScoreType.LOGTFIDF)
+				aveWordCount = (double) documentLength / tokensCount.size();
+			HashMap<String, Double> vector = new HashMap<String, Double>();
+			for (Entry<String, Integer> entry : tokensCount.entrySet()) {
+				int count = entry.getValue();
+				double tf;
+				switch (tokenScoreType) {
+				case TFIDF:
+					tf = (double) count / documentLength;
+					break;
+				case WFIDF:
+					tf = 1 + Math.log(count);
+					break;
+				case LOGTFIDF:
+					tf = (1 + Math.log(count)) / (1 + Math.log(aveWordCount));
+					break;
+				default:
+					tf = 0.5 + 0.5 * (double) count / maxWordCount;
+					break;
+				}
+				Integer df = docFrequency.get(entry.getKey());
+				double idf = df == null ? 0.0 : Math.log(totalNumberOfDocs / df);
+				vector.put(entry.getKey(), tf * idf);
+			}
+			return vector;
+		}
+
+		/** Okapi vector with the length of given content */
+		public HashMap<String, Double> okapiVectorize(String content, double aveDocumentLength, double k1, double b) {
+			int documentLength = 0;
+			for (Integer count : countTokens(content).values())
+				documentLength += count;
+			return okapiVectorize(content, documentLength, aveDocumentLength, k1, b);
+		}
+
+		public HashMap<String, Double> okapiVectorize(String content, long documentLength, double aveDocumentLength,
+				double k1, double b) {
+			HashMap<String, Double> vector = new HashMap<String, Double>();
+			for (Entry<String, Integer> entry : countTokens(content).entrySet()) {
+				int count = entry.getValue();
+				double tf;
+				if (aveDocumentLength == 0)
+					tf = k1 * count / (count + k1);
+				else
+					tf = k1 * count / (count + k1 * (1 - b + b * documentLength / aveDocumentLength));
+				Integer df = docFrequency.get(entry.getKey());
+				double idf = Math.log((totalNumberOfDocs + 1) / ((df == null ? 0 : df) + 0.5));
+				vector.put(entry.getKey(), tf * idf);
+			}
+			return vector;
+		}
+
+		private static HashMap<String, Integer> countTokens(String content) {
+			HashMap<String, Integer> tokensCount = new HashMap<String, Integer>();
+			for (String token : content.split(" ")) {
+				if ((token = token.trim()).equals(""))
+					continue;
+				Integer count = tokensCount.get(token);
+				tokensCount.put(token, count == null ? 1 : count + 1);
+			}
+			return tokensCount;
+		}
+
+		public static double norm(HashMap<String, Double> vector) {
+			double sum = 0.0;
+			for (Double weight : vector.values())
+				sum += weight;
+			return Math.sqrt(sum);
+		}
+
+		public static double dot(HashMap<String, Double> vector1, HashMap<String, Double> vector2) {
+			if (vector1.size() > vector2.size())
+				return dot(vector2, vector1);
+			double sum = 0.0;
+			for (Entry<String, Double> entry : vector1.entrySet()) {
+				Double weight = vector2.get(entry.getKey());
+				if (weight != null)
+					sum += entry.getValue() * weight;
+			}
+			return sum;
+		}
+	}
+
+}